@@ -0,0 +1,65 @@
+package yedi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.benchmarks.beans.Gadget;
+import yedi.benchmarks.beans.Widget;
+import yedi.core.BeanContainer;
+import yedi.core.BeanHandle;
+
+/**
+ * Compares fetching beans through a handle with fetching them by name. Run with -prof gc to see
+ * that fetching a singleton through a handle allocates nothing.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanHandleBenchmark {
+
+    private BeanContainer container;
+    private BeanHandle<Gadget> gadget;
+    private BeanHandle<Widget> widget;
+
+    @Setup
+    public void setUp() {
+        container = new BeanContainer("resources/yedi-config.yaml");
+        gadget = container.handle(Gadget.class);
+        widget = container.handle("widget");
+    }
+
+    @Benchmark
+    public Gadget singletonByName() {
+        return container.getBean("gadget");
+    }
+
+    @Benchmark
+    public Gadget singletonHandle() {
+        return gadget.get();
+    }
+
+    @Benchmark
+    public Widget prototypeByName() {
+        return container.getBean("widget");
+    }
+
+    @Benchmark
+    public Widget prototypeHandle() {
+        return widget.get();
+    }
+}
@@ -0,0 +1,76 @@
+package yedi.benchmarks;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs a named group of benchmarks and writes the results as JSON into the results directory,
+ * so runs against different releases can be compared. The suites are:
+ * <ul>
+ * <li>startup - parsing, wiring, reloading and closing configurations,</li>
+ * <li>lookup - fetching singletons, prototypes and scoped beans,</li>
+ * <li>proxy - lazy proxies,</li>
+ * <li>contention - one container shared by several threads,</li>
+ * <li>all - every benchmark.</li>
+ * </ul>
+ * Every argument after the suite name is passed on to JMH, so for example
+ * {@code startup -p beans=1000 -f 3} runs the startup suite for 1000 beans with three forks.
+ *
+ * @author mnaglic
+ */
+public class BenchmarkSuites {
+
+    private static final String RESULTS_DIRECTORY = "results";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: BenchmarkSuites startup|lookup|proxy|contention|all " +
+                    "[JMH options]");
+            System.exit(1);
+        }
+
+        String suite = args[0];
+        CommandLineOptions jmhOptions = new CommandLineOptions(
+                Arrays.copyOfRange(args, 1, args.length));
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(jmhOptions);
+
+        if ("startup".equals(suite)) {
+            include(options, ConfigurationParsingBenchmark.class,
+                    DescriptorSnapshotBenchmark.class, ReferenceResolutionBenchmark.class,
+                    HotReloadBenchmark.class, LazyDescriptorLoadingBenchmark.class,
+                    ChildContainerBenchmark.class, ShutdownBenchmark.class);
+        } else if ("lookup".equals(suite)) {
+            include(options, SingletonLookupBenchmark.class, PrototypeCreationBenchmark.class,
+                    BeanHandleBenchmark.class, TypeLookupBenchmark.class, ScopeBenchmark.class,
+                    PooledScopeBenchmark.class, MetricsBenchmark.class);
+        } else if ("proxy".equals(suite)) {
+            include(options, LazyProxyBenchmark.class);
+        } else if ("contention".equals(suite)) {
+            include(options, ContentionBenchmark.class, SingletonLookupBenchmark.class,
+                    PooledScopeBenchmark.class);
+        } else if (!"all".equals(suite)) {
+            System.err.println("Unknown suite " + suite);
+            System.exit(1);
+        }
+
+        new File(RESULTS_DIRECTORY).mkdirs();
+
+        options.resultFormat(ResultFormatType.JSON)
+                .result(new File(RESULTS_DIRECTORY, suite + ".json").getPath());
+
+        new Runner(options.build()).run();
+    }
+
+    private static void include(ChainedOptionsBuilder options, Class<?>... benchmarks) {
+        for (Class<?> benchmark : benchmarks) {
+            //Anchor the pattern, so that a benchmark does not match others with longer names
+            options.include("\\." + benchmark.getSimpleName() + "\\.");
+        }
+    }
+}
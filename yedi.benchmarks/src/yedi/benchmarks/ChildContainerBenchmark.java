@@ -0,0 +1,68 @@
+package yedi.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.core.BeanContainer;
+
+/**
+ * Measures creating a container for a tenant whose configuration overrides one bean of a
+ * shared configuration, either as a child of a container for the shared configuration or as a
+ * container of its own that parses everything again. Both fetch the overridden bean.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChildContainerBenchmark {
+
+    @Param({"1000", "10000"})
+    private int beans;
+
+    private SyntheticConfiguration configuration;
+    private String childConfiguration;
+    private BeanContainer parent;
+
+    @Setup
+    public void createParent() throws IOException {
+        configuration = new SyntheticConfiguration(beans);
+        childConfiguration = configuration.writeChildConfiguration("tenant");
+        parent = new BeanContainer(configuration.getConfigurationPath());
+        //The first child builds the dependency graph of the parent
+        parent.createChild(childConfiguration);
+    }
+
+    @TearDown
+    public void deleteConfiguration() {
+        configuration.delete();
+    }
+
+    @Benchmark
+    public Object createChild() {
+        return parent.createChild(childConfiguration).getBean(
+                SyntheticConfiguration.beanName(beans - 1));
+    }
+
+    @Benchmark
+    public Object createSeparateContainer() {
+        return new BeanContainer(configuration.getConfigurationPath()).getBean(
+                SyntheticConfiguration.beanName(beans - 1));
+    }
+}
@@ -0,0 +1,63 @@
+package yedi.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.core.BeanContainer;
+
+/**
+ * Measures how parsing a large configuration split over several files scales with the number
+ * of startup threads. Beans reference beans in the file before theirs, so the aliases between
+ * files are resolved as well. All beans are lazy, so creating the container only loads the
+ * descriptors.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigurationParsingBenchmark {
+
+    @Param({"10000"})
+    private int beans;
+
+    @Param({"8"})
+    private int files;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private SyntheticConfiguration configuration;
+
+    @Setup
+    public void writeConfiguration() throws IOException {
+        configuration = new SyntheticConfiguration(beans, files, "global-loading-policy: lazy\n" +
+                "startup-threads: " + threads + "\n");
+    }
+
+    @TearDown
+    public void deleteConfiguration() {
+        configuration.delete();
+    }
+
+    @Benchmark
+    public BeanContainer parseConfiguration() {
+        return new BeanContainer(configuration.getConfigurationPath());
+    }
+}
@@ -0,0 +1,78 @@
+package yedi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.benchmarks.beans.Calculator;
+import yedi.benchmarks.beans.Gadget;
+import yedi.benchmarks.beans.Widget;
+import yedi.core.BeanContainer;
+
+/**
+ * Measures the throughput of one container shared by several threads for the operations that
+ * are not covered by {@link SingletonLookupBenchmark}: creating prototypes and calling through
+ * a shared lazy proxy. The mixed group runs singleton lookups next to a thread that keeps
+ * creating prototypes, so contention between the two paths shows up in the lookup score.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private BeanContainer container;
+    private Calculator proxy;
+    private int first = 17;
+    private int second = 25;
+
+    @Setup
+    public void setUp() {
+        container = new BeanContainer("resources/yedi-config.yaml");
+        container.getBean("gadget");
+        proxy = container.getLazyBean("calculator", Calculator.class);
+        proxy.add(first, second);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Widget prototypes() {
+        return container.getBean("widget");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int lazyProxyCalls() {
+        return proxy.add(first, second);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Gadget mixedSingletons() {
+        return container.getBean("gadget");
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Widget mixedPrototypes() {
+        return container.getBean("widget");
+    }
+}
@@ -0,0 +1,62 @@
+package yedi.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.core.BeanContainer;
+
+/**
+ * Compares loading the bean descriptors of a large configuration from YAML with loading them
+ * from a warm descriptor snapshot. All beans are lazy, so creating the container only loads
+ * and indexes the descriptors.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescriptorSnapshotBenchmark {
+
+    @Param({"10000"})
+    private int beans;
+
+    @Param({"false", "true"})
+    private boolean snapshot;
+
+    private SyntheticConfiguration configuration;
+
+    @Setup
+    public void writeConfiguration() throws IOException {
+        configuration = new SyntheticConfiguration(beans, "global-loading-policy: lazy\n" +
+                "descriptor-snapshot: " + snapshot + "\n");
+
+        //Writes the snapshot, so every measured start is a warm one
+        new BeanContainer(configuration.getConfigurationPath());
+    }
+
+    @TearDown
+    public void deleteConfiguration() {
+        configuration.delete();
+    }
+
+    @Benchmark
+    public BeanContainer loadDescriptors() {
+        return new BeanContainer(configuration.getConfigurationPath());
+    }
+}
@@ -0,0 +1,72 @@
+package yedi.benchmarks;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.core.BeanContainer;
+
+/**
+ * Compares reloading a large configuration after one of its files was edited with creating a
+ * new container from it. Only the edited file is parsed again and only the edited bean is
+ * rebuilt on reload. All beans are singletons created at startup.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotReloadBenchmark {
+
+    @Param({"10000"})
+    private int beans;
+
+    @Param({"10"})
+    private int files;
+
+    private SyntheticConfiguration configuration;
+    private BeanContainer container;
+
+    @Setup
+    public void writeConfiguration() throws IOException {
+        configuration = new SyntheticConfiguration(beans, files, "");
+        container = new BeanContainer(configuration.getConfigurationPath());
+    }
+
+    @Setup(Level.Invocation)
+    public void editConfiguration() throws IOException {
+        configuration.relabelLastBean();
+    }
+
+    @TearDown
+    public void deleteConfiguration() {
+        configuration.delete();
+    }
+
+    @Benchmark
+    public Set<String> reload() {
+        return container.reload();
+    }
+
+    @Benchmark
+    public BeanContainer restart() {
+        return new BeanContainer(configuration.getConfigurationPath());
+    }
+}
@@ -0,0 +1,60 @@
+package yedi.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.core.BeanContainer;
+
+/**
+ * Measures creating a container for a large configuration and fetching one bean that needs
+ * ten others, with every definition parsed up front and with definitions parsed on demand.
+ * All beans are lazy, so only the fetched bean and its dependencies are created.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LazyDescriptorLoadingBenchmark {
+
+    @Param({"1000", "10000"})
+    private int beans;
+
+    @Param({"false", "true"})
+    private boolean lazyDescriptorLoading;
+
+    private SyntheticConfiguration configuration;
+
+    @Setup
+    public void writeConfiguration() throws IOException {
+        configuration = new SyntheticConfiguration(beans, 4, "global-loading-policy: lazy\n" +
+                "lazy-descriptor-loading: " + lazyDescriptorLoading + "\n");
+    }
+
+    @TearDown
+    public void deleteConfiguration() {
+        configuration.delete();
+    }
+
+    @Benchmark
+    public Object startAndFetchOneBean() {
+        return new BeanContainer(configuration.getConfigurationPath()).getBean(
+                SyntheticConfiguration.beanName(10));
+    }
+}
@@ -0,0 +1,66 @@
+package yedi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.benchmarks.beans.Calculator;
+import yedi.benchmarks.beans.SimpleCalculator;
+import yedi.core.BeanContainer;
+
+/**
+ * Compares a call through a lazy proxy, once its bean is resolved, with a direct call on the
+ * bean. Both interface and class proxies are measured.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyProxyBenchmark {
+
+    private Calculator direct;
+    private Calculator interfaceProxy;
+    private SimpleCalculator classProxy;
+    private int first = 17;
+    private int second = 25;
+
+    @Setup
+    public void setUp() {
+        BeanContainer container = new BeanContainer("resources/yedi-config.yaml");
+        direct = container.getBean("calculator");
+        interfaceProxy = container.getLazyBean("calculator", Calculator.class);
+        classProxy = container.getLazyBean("calculator", SimpleCalculator.class);
+
+        //Resolve the proxies before measuring
+        interfaceProxy.add(first, second);
+        classProxy.add(first, second);
+    }
+
+    @Benchmark
+    public int directCall() {
+        return direct.add(first, second);
+    }
+
+    @Benchmark
+    public int interfaceProxyCall() {
+        return interfaceProxy.add(first, second);
+    }
+
+    @Benchmark
+    public int classProxyCall() {
+        return classProxy.add(first, second);
+    }
+}
@@ -0,0 +1,61 @@
+package yedi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.benchmarks.beans.Gadget;
+import yedi.benchmarks.beans.Widget;
+import yedi.core.BeanContainer;
+import yedi.core.InMemoryBeanMetrics;
+
+/**
+ * Measures what collecting metrics costs when fetching singletons and creating prototypes,
+ * compared to a container without a metrics listener.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    @Param({"none", "in-memory"})
+    private String listener;
+
+    private BeanContainer container;
+
+    @Setup
+    public void setUp() {
+        container = new BeanContainer("resources/yedi-config.yaml");
+
+        if ("in-memory".equals(listener)) {
+            container.setMetricsListener(new InMemoryBeanMetrics());
+        }
+
+        container.getBean("gadget");
+    }
+
+    @Benchmark
+    public Gadget singleton() {
+        return container.getBean("gadget");
+    }
+
+    @Benchmark
+    public Widget prototype() {
+        return container.getBean("widget");
+    }
+}
@@ -0,0 +1,61 @@
+package yedi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.benchmarks.beans.Codec;
+import yedi.core.BeanContainer;
+import yedi.core.PooledBean;
+
+/**
+ * Compares a pooled bean with a prototype bean that allocates a 64 KiB buffer when it is
+ * created. Four threads use the beans at the same time, so borrowing is measured under
+ * contention.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class PooledScopeBenchmark {
+
+    private BeanContainer container;
+
+    @Setup
+    public void setUp() {
+        container = new BeanContainer("resources/yedi-config.yaml");
+    }
+
+    @Benchmark
+    public int prototype() {
+        Codec codec = container.getBean("codec");
+
+        return codec.encode("benchmark");
+    }
+
+    @Benchmark
+    public int pooled() {
+        PooledBean<Codec> codec = container.borrowBean("pooledCodec");
+
+        try {
+            return codec.get().encode("benchmark");
+        } finally {
+            codec.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package yedi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.benchmarks.beans.Gadget;
+import yedi.benchmarks.beans.Widget;
+import yedi.core.BeanContainer;
+import yedi.core.BeanFactory;
+import yedi.core.BeanFactoryRegistry;
+
+/**
+ * Measures how many prototype beans per second the container can create. The widget bean is
+ * built through a constructor with two arguments and gets a setter, a field and a singleton
+ * reference injected. Both injector backends are measured, and so is the same widget
+ * registered in code next to the YAML beans, which is created by its factory without
+ * reflection.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrototypeCreationBenchmark {
+
+    @Param({"resources/yedi-config.yaml", "resources/yedi-config-reflection.yaml"})
+    private String configuration;
+
+    private BeanContainer container;
+
+    @Setup
+    public void setUp() {
+        container = new BeanContainer(configuration, new BeanFactoryRegistry() {
+
+            @Override
+            public void registerFactories(Registrar registrar) {
+                registrar.register("registeredWidget", "prototype", Widget.class,
+                        new BeanFactory<Widget>() {
+
+                    @Override
+                    public Widget create(BeanContainer container) {
+                        Widget widget = new Widget("widget", 42);
+                        widget.setDescription("A prototype bean registered in code");
+                        widget.setGadget((Gadget) container.getBean("gadget"));
+                        return widget;
+                    }
+                });
+            }
+        });
+    }
+
+    @Benchmark
+    public Widget getPrototype() {
+        return container.getBean("widget");
+    }
+
+    @Benchmark
+    public Widget getRegisteredPrototype() {
+        return container.getBean("registeredWidget");
+    }
+
+    @Benchmark
+    public Widget directConstruction() {
+        return new Widget("widget", 42);
+    }
+}
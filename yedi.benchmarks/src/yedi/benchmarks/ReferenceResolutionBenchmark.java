@@ -0,0 +1,71 @@
+package yedi.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.core.BeanContainer;
+
+/**
+ * Measures how the cost of wiring all beans of a configuration grows with the number of beans,
+ * the number of references per bean and the way the references are injected. All beans are
+ * singletons, so creating the container parses the configuration, compiles every plan, resolves
+ * every reference and creates every eager bean. The shapes are:
+ * <ul>
+ * <li>properties - every reference is injected through a setter,</li>
+ * <li>constructor - half of the references are passed to the constructor,</li>
+ * <li>lazy - a quarter of the beans are lazy and injected as proxies.</li>
+ * </ul>
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReferenceResolutionBenchmark {
+
+    @Param({"100", "1000", "4000"})
+    private int beans;
+
+    @Param({"2", "8"})
+    private int fanOut;
+
+    @Param({"properties", "constructor", "lazy"})
+    private String shape;
+
+    private SyntheticConfiguration configuration;
+
+    @Setup
+    public void writeConfiguration() throws IOException {
+        double constructorShare = "constructor".equals(shape) ? 0.5 : 0;
+        double lazyShare = "lazy".equals(shape) ? 0.25 : 0;
+
+        configuration = new SyntheticConfiguration(beans, 1, fanOut, constructorShare, lazyShare,
+                "");
+    }
+
+    @TearDown
+    public void deleteConfiguration() {
+        configuration.delete();
+    }
+
+    @Benchmark
+    public BeanContainer wireAllBeans() {
+        return new BeanContainer(configuration.getConfigurationPath());
+    }
+}
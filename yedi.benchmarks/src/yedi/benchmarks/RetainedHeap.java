@@ -0,0 +1,55 @@
+package yedi.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import yedi.core.BeanContainer;
+
+/**
+ * Prints the heap retained by a container per bean of a synthetic configuration. The used heap
+ * is measured after full collections before and after the container is created, so run it with
+ * a collector that compacts, for example {@code -XX:+UseSerialGC}.
+ * <p>
+ * The arguments are the number of beans, 50000 by default, the global loading policy, lazy
+ * by default, and whether descriptors are loaded lazily, false by default. A lazy
+ * configuration creates no beans and compiles no plans, so it shows what the descriptors cost.
+ * An eager one adds the plans, the singletons and the bean instances themselves.
+ *
+ * @author mnaglic
+ */
+public class RetainedHeap {
+
+    //Keeps the container reachable while the heap is measured
+    private static BeanContainer container;
+
+    public static void main(String[] args) throws Exception {
+        int beans = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        String loadingPolicy = args.length > 1 ? args[1] : "lazy";
+        boolean lazyDescriptorLoading = args.length > 2 && Boolean.parseBoolean(args[2]);
+        SyntheticConfiguration configuration = new SyntheticConfiguration(beans, 1, 4, 0.5,
+                0.25, "global-loading-policy: " + loadingPolicy + "\n" +
+                "lazy-descriptor-loading: " + lazyDescriptorLoading + "\n");
+
+        try {
+            long before = usedHeap();
+            container = new BeanContainer(configuration.getConfigurationPath());
+            long after = usedHeap();
+
+            System.out.println(beans + " beans, " + loadingPolicy +
+                    (lazyDescriptorLoading ? ", lazy descriptor loading" : "") + ": " +
+                    (after - before) / beans + " bytes per bean");
+        } finally {
+            configuration.delete();
+        }
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,68 @@
+package yedi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import yedi.core.BeanContainer;
+import yedi.core.ScopedContext;
+
+/**
+ * Compares fetching a bean in the registered scopes with creating it as a prototype. A request
+ * fetches the same widget four times: as a prototype it is created every time, in a scoped
+ * context once per request. Fetching a thread-scoped widget is a lookup once it exists.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScopeBenchmark {
+
+    private static final int FETCHES_PER_REQUEST = 4;
+
+    private BeanContainer container;
+
+    @Setup
+    public void setUp() {
+        container = new BeanContainer("resources/yedi-config.yaml");
+    }
+
+    @Benchmark
+    public void prototypeRequest(Blackhole blackhole) {
+        for (int i = 0; i < FETCHES_PER_REQUEST; i++) {
+            blackhole.consume(container.getBean("widget"));
+        }
+    }
+
+    @Benchmark
+    public void scopedRequest(final Blackhole blackhole) {
+        ScopedContext.run(new Runnable() {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < FETCHES_PER_REQUEST; i++) {
+                    blackhole.consume(container.getBean("requestWidget"));
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public Object threadScoped() {
+        return container.getBean("threadWidget");
+    }
+}
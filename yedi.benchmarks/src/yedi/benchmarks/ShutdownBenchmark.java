@@ -0,0 +1,68 @@
+package yedi.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.core.BeanContainer;
+import yedi.core.ShutdownReport;
+
+/**
+ * Measures closing a container whose singletons all have to be destroyed. With a fan-out of 0
+ * the singletons are independent and are destroyed in parallel, with a fan-out of 2 every
+ * singleton depends on the two before it, so they are destroyed one after another.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShutdownBenchmark {
+
+    @Param({"1000", "10000"})
+    private int beans;
+
+    @Param({"0", "2"})
+    private int fanOut;
+
+    private SyntheticConfiguration configuration;
+    private BeanContainer container;
+
+    @Setup
+    public void writeConfiguration() throws IOException {
+        configuration = new SyntheticConfiguration(beans, 1, fanOut, 0, 0, "");
+    }
+
+    @Setup(Level.Invocation)
+    public void createContainer() {
+        container = new BeanContainer(configuration.getConfigurationPath());
+    }
+
+    @TearDown
+    public void deleteConfiguration() {
+        configuration.delete();
+    }
+
+    @Benchmark
+    public ShutdownReport close() {
+        container.close();
+
+        return container.getShutdownReport();
+    }
+}
@@ -0,0 +1,65 @@
+package yedi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.benchmarks.beans.Gadget;
+import yedi.core.BeanContainer;
+
+/**
+ * Measures the throughput of fetching an existing singleton when one container is shared by a
+ * growing number of threads. Run with -t to try other thread counts.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SingletonLookupBenchmark {
+
+    private BeanContainer container;
+
+    @Setup
+    public void setUp() {
+        container = new BeanContainer("resources/yedi-config.yaml");
+        container.getBean("gadget");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Gadget oneThread() {
+        return container.getBean("gadget");
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Gadget twoThreads() {
+        return container.getBean("gadget");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Gadget fourThreads() {
+        return container.getBean("gadget");
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Gadget allProcessors() {
+        return container.getBean("gadget");
+    }
+}
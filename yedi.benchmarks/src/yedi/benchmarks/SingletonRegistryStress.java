@@ -0,0 +1,330 @@
+package yedi.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import yedi.core.BeanContainer;
+import yedi.core.BeanFactory;
+import yedi.core.BeanFactoryRegistry;
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * Races threads on the first access to the singletons of a container and checks that every
+ * singleton is created exactly once. It is not a JMH benchmark but a stress test of the
+ * singleton registry, run from the command line:
+ *
+ * <pre>
+ * java yedi.benchmarks.SingletonRegistryStress [threads] [rounds]
+ * </pre>
+ *
+ * Every round creates a fresh container from bean factories, with independent leaf singletons
+ * and a chain of singletons that each fetch the next one and a leaf while they are created.
+ * All threads are released at once and fetch every bean in their own random order. Every
+ * thread must get the same instance of each bean, and each factory must have completed once.
+ * <p>
+ * Every round also starts two threads on two singletons that need each other, which only
+ * meet once both threads hold the creation lock of their own bean. At least one of them must
+ * report the circular dependency, and neither may hang. The threads default to 8 and the
+ * rounds to 1000. Any failure is thrown from main.
+ *
+ * @author mnaglic
+ */
+public class SingletonRegistryStress {
+
+    private static final int LEAVES = 32;
+    private static final int CHAIN_LENGTH = 16;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Random random = new Random(42);
+        long start = System.nanoTime();
+
+        for (int round = 0; round < rounds; round++) {
+            raceFirstAccess(threads, random.nextLong());
+            raceCycle();
+        }
+
+        System.out.println(rounds + " rounds on " + threads + " threads passed in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    private static void raceFirstAccess(int threads, long seed) throws InterruptedException {
+        final ConcurrentMap<String, AtomicInteger> creations =
+                new ConcurrentHashMap<String, AtomicInteger>();
+        final BeanContainer container = new BeanContainer(new BeanFactoryRegistry() {
+
+            @Override
+            public void registerFactories(Registrar registrar) {
+                for (int i = 0; i < LEAVES; i++) {
+                    registrar.register("leaf" + i, "singleton", Object.class,
+                            new CountingFactory("leaf" + i, creations, null, null));
+                }
+
+                for (int i = 0; i < CHAIN_LENGTH; i++) {
+                    registrar.register("chain" + i, "singleton", Object.class,
+                            new CountingFactory("chain" + i, creations,
+                                    i + 1 < CHAIN_LENGTH ? "chain" + (i + 1) : null,
+                                    "leaf" + i % LEAVES));
+                }
+            }
+        });
+
+        final List<String> beanNames = new ArrayList<String>();
+
+        for (int i = 0; i < LEAVES; i++) {
+            beanNames.add("leaf" + i);
+        }
+
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            beanNames.add("chain" + i);
+        }
+
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final AtomicReferenceArray<Throwable> failures = new AtomicReferenceArray<Throwable>(
+                threads);
+        final List<List<Object>> instances = new ArrayList<List<Object>>();
+        List<Thread> racers = new ArrayList<Thread>();
+        Random random = new Random(seed);
+
+        for (int t = 0; t < threads; t++) {
+            final int racer = t;
+            final List<String> order = new ArrayList<String>(beanNames);
+            final List<Object> seen = new ArrayList<Object>(
+                    Collections.nCopies(beanNames.size(), null));
+            Collections.shuffle(order, random);
+            instances.add(seen);
+
+            racers.add(start(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        startGate.await();
+
+                        for (String beanName : order) {
+                            seen.set(beanNames.indexOf(beanName), container.getBean(beanName));
+                        }
+                    } catch (Throwable e) {
+                        failures.set(racer, e);
+                    }
+                }
+            }));
+        }
+
+        startGate.countDown();
+        joinAll(racers, "racing on first access");
+
+        for (int t = 0; t < threads; t++) {
+            if (failures.get(t) != null) {
+                throw new AssertionError("Thread " + t + " failed to fetch a singleton",
+                        failures.get(t));
+            }
+        }
+
+        for (int i = 0; i < beanNames.size(); i++) {
+            String beanName = beanNames.get(i);
+            Object singleton = container.getBean(beanName);
+
+            for (int t = 0; t < threads; t++) {
+                if (instances.get(t).get(i) != singleton) {
+                    throw new AssertionError("Thread " + t + " got another instance of " +
+                            beanName);
+                }
+            }
+
+            int created = creations.get(beanName).get();
+
+            if (created != 1) {
+                throw new AssertionError("Singleton " + beanName + " was created " + created +
+                        " times");
+            }
+        }
+    }
+
+    private static void raceCycle() throws InterruptedException {
+        final CountDownLatch bothCreating = new CountDownLatch(2);
+        final ConcurrentMap<String, AtomicInteger> creations =
+                new ConcurrentHashMap<String, AtomicInteger>();
+        final BeanContainer container = new BeanContainer(new BeanFactoryRegistry() {
+
+            @Override
+            public void registerFactories(Registrar registrar) {
+                registrar.register("cycleA", "singleton", Object.class,
+                        new CycleFactory("cycleA", "cycleB", bothCreating, creations));
+                registrar.register("cycleB", "singleton", Object.class,
+                        new CycleFactory("cycleB", "cycleA", bothCreating, creations));
+            }
+        });
+
+        final AtomicReferenceArray<Throwable> failures = new AtomicReferenceArray<Throwable>(2);
+        List<Thread> racers = new ArrayList<Thread>();
+        final String[] beanNames = {"cycleA", "cycleB"};
+
+        for (int t = 0; t < 2; t++) {
+            final int racer = t;
+
+            racers.add(start(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        container.getBean(beanNames[racer]);
+                    } catch (Throwable e) {
+                        failures.set(racer, e);
+                    }
+                }
+            }));
+        }
+
+        joinAll(racers, "creating singletons that need each other");
+        boolean cycleReported = false;
+
+        for (int t = 0; t < 2; t++) {
+            Throwable failure = failures.get(t);
+
+            if (failure == null) {
+                throw new AssertionError("Thread " + t + " created " + beanNames[t] +
+                        " although it needs a bean that needs it");
+            }
+
+            for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+                if (cause instanceof BeanLoadingException &&
+                        cause.getMessage().contains("Circular dependency")) {
+                    cycleReported = true;
+                }
+            }
+        }
+
+        if (!cycleReported) {
+            throw new AssertionError("The circular dependency was not reported",
+                    failures.get(0));
+        }
+
+        for (String beanName : beanNames) {
+            AtomicInteger created = creations.get(beanName);
+
+            if (created != null && created.get() > 0) {
+                throw new AssertionError("Singleton " + beanName + " of a cycle was created");
+            }
+        }
+    }
+
+    private static Thread start(Runnable runnable) {
+        Thread thread = new Thread(runnable, "yedi-stress");
+        //A deadlocked thread must not keep the JVM alive after the failure is reported
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+    private static void joinAll(List<Thread> threads, String activity)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+
+        for (Thread thread : threads) {
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+
+            if (thread.isAlive()) {
+                throw new AssertionError("Threads " + activity + " did not finish within " +
+                        TIMEOUT_SECONDS + " s, the singleton registry is deadlocked");
+            }
+        }
+    }
+
+    private static void countCreation(String beanName,
+            ConcurrentMap<String, AtomicInteger> creations) {
+        AtomicInteger count = creations.get(beanName);
+
+        if (count == null) {
+            AtomicInteger newCount = new AtomicInteger();
+            count = creations.putIfAbsent(beanName, newCount);
+
+            if (count == null) {
+                count = newCount;
+            }
+        }
+
+        count.incrementAndGet();
+    }
+
+    /**
+     * Creates a singleton after fetching the singletons it depends on, and counts how often
+     * it completed.
+     */
+    private static final class CountingFactory implements BeanFactory<Object> {
+
+        private final String beanName;
+        private final ConcurrentMap<String, AtomicInteger> creations;
+        private final String[] dependencies;
+
+        CountingFactory(String beanName, ConcurrentMap<String, AtomicInteger> creations,
+                String next, String leaf) {
+            this.beanName = beanName;
+            this.creations = creations;
+            this.dependencies = next == null && leaf == null ? new String[0] :
+                next == null ? new String[] {leaf} : new String[] {next, leaf};
+        }
+
+        @Override
+        public Object create(BeanContainer container) {
+            //Widens the window in which other threads arrive for the same singleton
+            Thread.yield();
+
+            for (String dependency : dependencies) {
+                container.getBean(dependency);
+            }
+
+            countCreation(beanName, creations);
+
+            return new Object();
+        }
+    }
+
+    /**
+     * Creates a singleton that needs another one, which it only fetches once another thread
+     * is creating that one.
+     */
+    private static final class CycleFactory implements BeanFactory<Object> {
+
+        private final String beanName;
+        private final String needed;
+        private final CountDownLatch bothCreating;
+        private final ConcurrentMap<String, AtomicInteger> creations;
+
+        CycleFactory(String beanName, String needed, CountDownLatch bothCreating,
+                ConcurrentMap<String, AtomicInteger> creations) {
+            this.beanName = beanName;
+            this.needed = needed;
+            this.bothCreating = bothCreating;
+            this.creations = creations;
+        }
+
+        @Override
+        public Object create(BeanContainer container) {
+            bothCreating.countDown();
+
+            try {
+                //The other thread may already have failed, so do not wait for it forever
+                bothCreating.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            container.getBean(needed);
+            countCreation(beanName, creations);
+
+            return new Object();
+        }
+    }
+}
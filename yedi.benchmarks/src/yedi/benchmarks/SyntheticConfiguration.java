@@ -0,0 +1,214 @@
+package yedi.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import yedi.benchmarks.beans.Node;
+
+/**
+ * SyntheticConfiguration writes Yedi configurations with an arbitrary number of beans into a
+ * temporary directory. Every bean is a {@link yedi.benchmarks.beans.Node} that references the
+ * beans defined right before it, so the number of references grows with the number of beans.
+ * <p>
+ * The shape of the configuration is configurable:
+ * <ul>
+ * <li>the fan-out is the number of beans every bean references, up to 8,</li>
+ * <li>the constructor share is the fraction of the references of a bean passed to its
+ * constructor instead of being injected as properties, for up to 4 references,</li>
+ * <li>the lazy share is the fraction of beans that are lazily loaded. Property references to
+ * them are injected as proxies.</li>
+ * </ul>
+ * Which beans are lazy is chosen by a fixed seed, so the same shape always yields the same
+ * configuration. The beans can be split over several files, in which case the first beans of
+ * every file reference beans in the file before it. The label of the last bean can be changed
+ * afterwards, to simulate an edit of the last file, or in a file for a child container.
+ *
+ * @author mnaglic
+ */
+public class SyntheticConfiguration {
+
+    private final File directory;
+    private final int beanCount;
+    private final int fileCount;
+    private final String settings;
+    private final int fanOut;
+    private final int constructorReferences;
+    private final boolean[] lazy;
+    private int revision;
+
+    public SyntheticConfiguration(int beanCount) throws IOException {
+        this(beanCount, 1, "");
+    }
+
+    public SyntheticConfiguration(int beanCount, String settings) throws IOException {
+        this(beanCount, 1, settings);
+    }
+
+    public SyntheticConfiguration(int beanCount, int fileCount, String settings)
+            throws IOException {
+        this(beanCount, fileCount, 2, 0, 0, settings);
+    }
+
+    /**
+     * @param beanCount The number of beans.
+     * @param fileCount The number of bean configuration files the beans are split over.
+     * @param fanOut The number of beans every bean references.
+     * @param constructorShare The fraction of references passed to constructors.
+     * @param lazyShare The fraction of beans that are lazily loaded.
+     * @param settings Additional lines for the Yedi configuration file.
+     */
+    public SyntheticConfiguration(int beanCount, int fileCount, int fanOut,
+            double constructorShare, double lazyShare, String settings) throws IOException {
+        if (fanOut < 0 || fanOut > Node.MAX_REFERENCES) {
+            throw new IllegalArgumentException("The fan-out must be between 0 and " +
+                    Node.MAX_REFERENCES);
+        }
+
+        this.beanCount = beanCount;
+        this.fileCount = fileCount;
+        this.settings = settings;
+        this.fanOut = fanOut;
+        this.constructorReferences = Math.min(Node.MAX_CONSTRUCTOR_REFERENCES,
+                (int) Math.round(fanOut * constructorShare));
+        this.lazy = new boolean[beanCount];
+
+        Random random = new Random(42);
+
+        for (int i = 0; i < beanCount; i++) {
+            lazy[i] = random.nextDouble() < lazyShare;
+        }
+
+        this.directory = File.createTempFile("yedi-benchmark", "");
+
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        write();
+    }
+
+    public String getConfigurationPath() {
+        return new File(directory, "yedi-config.yaml").getPath();
+    }
+
+    public int getBeanCount() {
+        return beanCount;
+    }
+
+    public static String beanName(int index) {
+        return "node" + index;
+    }
+
+    /**
+     * Rewrites the last bean configuration file with a new label for the last bean. No other
+     * bean references the last bean, so only that bean is affected by the change.
+     */
+    public void relabelLastBean() throws IOException {
+        revision++;
+        writeBeans(fileCount - 1);
+    }
+
+    /**
+     * Writes a bean configuration file for a child container, which defines the last bean
+     * again with another label. The new definition references the bean before it through
+     * its alias in the parent configuration.
+     *
+     * @param name The name of the file, without the extension.
+     * @return The path of the file.
+     */
+    public String writeChildConfiguration(String name) throws IOException {
+        File childFile = new File(directory, name + ".yaml");
+        int last = beanCount - 1;
+
+        writeFile(childFile, "beans:\n\n " + beanName(last) + ":\n" +
+                "  type: yedi.benchmarks.beans.Node\n" +
+                "  properties:\n" +
+                "   label: " + name + "\n" +
+                "   ref1: *" + beanName(last - 1) + "\n");
+
+        return childFile.getPath();
+    }
+
+    public void delete() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+
+        directory.delete();
+    }
+
+    private void write() throws IOException {
+        StringBuilder locations = new StringBuilder("bean-configuration-locations:\n");
+
+        for (int file = 0; file < fileCount; file++) {
+            locations.append(" - ").append(writeBeans(file).getPath()).append("\n");
+        }
+
+        writeFile(new File(getConfigurationPath()), locations + settings);
+    }
+
+    private File writeBeans(int file) throws IOException {
+        File beansFile = new File(directory, "beans" + file + ".yaml");
+        StringBuilder beans = new StringBuilder("beans:\n");
+        int beansPerFile = (beanCount + fileCount - 1) / fileCount;
+        int end = Math.min(beanCount, (file + 1) * beansPerFile);
+
+        for (int i = file * beansPerFile; i < end; i++) {
+            String label = beanName(i);
+
+            if (i == beanCount - 1 && revision > 0) {
+                label += "-" + revision;
+            }
+
+            int references = Math.min(fanOut, i);
+            int constructorArguments = Math.min(constructorReferences, references);
+
+            beans.append("\n ").append(beanName(i)).append(": &").append(beanName(i))
+                    .append("\n")
+                    .append("  type: yedi.benchmarks.beans.Node\n");
+
+            if (lazy[i]) {
+                beans.append("  loadingPolicy: lazy\n");
+            }
+
+            if (constructorArguments > 0) {
+                beans.append("  constructor:\n")
+                        .append("   - ").append(label).append("\n");
+
+                for (int reference = 1; reference <= constructorArguments; reference++) {
+                    beans.append("   - *").append(beanName(i - reference)).append("\n");
+                }
+            }
+
+            beans.append("  properties:\n");
+
+            if (constructorArguments == 0) {
+                beans.append("   label: ").append(label).append("\n");
+            }
+
+            for (int reference = constructorArguments + 1; reference <= references;
+                    reference++) {
+                beans.append("   ref").append(reference).append(": *")
+                        .append(beanName(i - reference)).append("\n");
+            }
+        }
+
+        writeFile(beansFile, beans.toString());
+
+        return beansFile;
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
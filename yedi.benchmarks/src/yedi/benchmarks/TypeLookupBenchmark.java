@@ -0,0 +1,56 @@
+package yedi.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import yedi.benchmarks.beans.Calculator;
+import yedi.benchmarks.beans.Gadget;
+import yedi.core.BeanContainer;
+
+/**
+ * Compares fetching an existing singleton by its type with fetching it by name. Both go through
+ * a single map lookup; the type index only adds the lookup of the bean name.
+ *
+ * @author mnaglic
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeLookupBenchmark {
+
+    private BeanContainer container;
+
+    @Setup
+    public void setUp() {
+        container = new BeanContainer("resources/yedi-config.yaml");
+    }
+
+    @Benchmark
+    public Gadget byName() {
+        return container.getBean("gadget");
+    }
+
+    @Benchmark
+    public Gadget byType() {
+        return container.getBean(Gadget.class);
+    }
+
+    @Benchmark
+    public Map<String, Calculator> allOfType() {
+        return container.getBeansOfType(Calculator.class);
+    }
+}
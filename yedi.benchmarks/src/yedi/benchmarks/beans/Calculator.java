@@ -0,0 +1,6 @@
+package yedi.benchmarks.beans;
+
+public interface Calculator {
+
+    int add(int first, int second);
+}
@@ -0,0 +1,20 @@
+package yedi.benchmarks.beans;
+
+public class Codec {
+
+    private final byte[] buffer;
+
+    public Codec(int bufferSize) {
+        buffer = new byte[bufferSize];
+    }
+
+    public int encode(String text) {
+        int length = Math.min(text.length(), buffer.length);
+
+        for (int i = 0; i < length; i++) {
+            buffer[i] = (byte) text.charAt(i);
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,10 @@
+package yedi.benchmarks.beans;
+
+public class Gadget {
+
+    private String name;
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,112 @@
+package yedi.benchmarks.beans;
+
+public class Node implements AutoCloseable {
+
+    public static final int MAX_REFERENCES = 8;
+    public static final int MAX_CONSTRUCTOR_REFERENCES = 4;
+
+    private String label;
+    private Node ref1;
+    private Node ref2;
+    private Node ref3;
+    private Node ref4;
+    private Node ref5;
+    private Node ref6;
+    private Node ref7;
+    private Node ref8;
+    private volatile boolean closed;
+
+    public Node() {
+    }
+
+    public Node(String label) {
+        this.label = label;
+    }
+
+    public Node(String label, Node ref1) {
+        this(label);
+        this.ref1 = ref1;
+    }
+
+    public Node(String label, Node ref1, Node ref2) {
+        this(label, ref1);
+        this.ref2 = ref2;
+    }
+
+    public Node(String label, Node ref1, Node ref2, Node ref3) {
+        this(label, ref1, ref2);
+        this.ref3 = ref3;
+    }
+
+    public Node(String label, Node ref1, Node ref2, Node ref3, Node ref4) {
+        this(label, ref1, ref2, ref3);
+        this.ref4 = ref4;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public void setRef1(Node ref1) {
+        this.ref1 = ref1;
+    }
+
+    public void setRef2(Node ref2) {
+        this.ref2 = ref2;
+    }
+
+    public void setRef3(Node ref3) {
+        this.ref3 = ref3;
+    }
+
+    public void setRef4(Node ref4) {
+        this.ref4 = ref4;
+    }
+
+    public void setRef5(Node ref5) {
+        this.ref5 = ref5;
+    }
+
+    public void setRef6(Node ref6) {
+        this.ref6 = ref6;
+    }
+
+    public void setRef7(Node ref7) {
+        this.ref7 = ref7;
+    }
+
+    public void setRef8(Node ref8) {
+        this.ref8 = ref8;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @param index The index of a reference, starting at 1.
+     * @return The referenced node, or null if there is none.
+     */
+    public Node getRef(int index) {
+        switch (index) {
+        case 1: return ref1;
+        case 2: return ref2;
+        case 3: return ref3;
+        case 4: return ref4;
+        case 5: return ref5;
+        case 6: return ref6;
+        case 7: return ref7;
+        case 8: return ref8;
+        default: return null;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package yedi.benchmarks.beans;
+
+public class SimpleCalculator implements Calculator {
+
+    @Override
+    public int add(int first, int second) {
+        return first + second;
+    }
+}
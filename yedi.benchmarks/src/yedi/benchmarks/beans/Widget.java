@@ -0,0 +1,43 @@
+package yedi.benchmarks.beans;
+
+public class Widget {
+
+    private String id;
+    private int size;
+    private String description;
+    private int weight;
+    private Gadget gadget;
+
+    public Widget(String id, int size) {
+        this.id = id;
+        this.size = size;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public void setGadget(Gadget gadget) {
+        this.gadget = gadget;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public Gadget getGadget() {
+        return gadget;
+    }
+}
@@ -1,14 +1,14 @@
-package yedi.examples.greeter;
-
-/**
- * @author mnaglic
- *
- */
-public interface Forecast {
-
-    public String getWindSpeed();
-
-    public String getTemperature();
-
-    public String getDescription();
-}
+package yedi.examples.greeter;
+
+/**
+ * @author mnaglic
+ *
+ */
+public interface Forecast {
+
+    public String getWindSpeed();
+
+    public String getTemperature();
+
+    public String getDescription();
+}
@@ -1,10 +1,10 @@
-package yedi.examples.greeter;
-
-public class Hello {
-
-    private String message;
-
-    public String sayHello() {
-        return message;
-    }
-}
+package yedi.examples.greeter;
+
+public class Hello {
+
+    private String message;
+
+    public String sayHello() {
+        return message;
+    }
+}
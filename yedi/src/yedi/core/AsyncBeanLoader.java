@@ -0,0 +1,224 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * AsyncBeanLoader creates beans in the background for
+ * {@link BeanContainer#getBeanAsync(String)}. Before a bean is created, every singleton it
+ * depends on is requested asynchronously as well, so independent parts of the dependency graph
+ * are created concurrently, and the bean itself is created once the last of them exists. No
+ * thread waits for a dependency: a bean is only handed to the executor when it can be created.
+ * <p>
+ * Concurrent requests for a singleton that does not exist yet share one future, which is
+ * dropped once it completes, since from then on the singleton is found in the container.
+ * <p>
+ * Beans are created on virtual threads if the Java runtime has them, and on a pool of daemon
+ * threads that grows as needed otherwise, so beans doing blocking I/O do not hold up each
+ * other. Another executor can be set on the container.
+ * 
+ * @author mnaglic
+ */
+final class AsyncBeanLoader {
+
+    private final BeanContainer container;
+    private final ConcurrentMap<BeanPlan, CompletableFuture<Object>> pendingSingletons =
+            new ConcurrentHashMap<BeanPlan, CompletableFuture<Object>>();
+    private volatile Executor executor;
+
+    AsyncBeanLoader(BeanContainer container) {
+        this.container = container;
+    }
+
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param plan The plan of the bean.
+     * @return A future completed with the bean once it and its dependencies are created.
+     */
+    CompletableFuture<Object> load(BeanPlan plan) {
+        if (plan.getScope() != BeanScope.SINGLETON) {
+            CompletableFuture<Object> future = new CompletableFuture<Object>();
+            schedule(plan, future);
+
+            return future;
+        }
+
+        Object singleton = container.getSingleton(plan);
+
+        if (singleton != null) {
+            return CompletableFuture.completedFuture(singleton);
+        }
+
+        CompletableFuture<Object> future = pendingSingletons.get(plan);
+
+        if (future == null) {
+            final CompletableFuture<Object> newFuture = new CompletableFuture<Object>();
+            future = pendingSingletons.putIfAbsent(plan, newFuture);
+
+            if (future == null) {
+                future = newFuture;
+                final BeanPlan singletonPlan = plan;
+
+                newFuture.whenComplete(new BiConsumer<Object, Throwable>() {
+
+                    @Override
+                    public void accept(Object bean, Throwable failure) {
+                        pendingSingletons.remove(singletonPlan, newFuture);
+                    }
+                });
+                schedule(plan, newFuture);
+            }
+        }
+
+        return future;
+    }
+
+    /**
+     * Requests the singleton dependencies of a bean on the executor, then creates the bean once
+     * they exist. Only one level of dependencies is requested per task, so long chains of
+     * dependencies do not grow the stack.
+     */
+    private void schedule(final BeanPlan plan, final CompletableFuture<Object> future) {
+        execute(future, new Runnable() {
+
+            @Override
+            public void run() {
+                List<CompletableFuture<Object>> dependencies =
+                        new ArrayList<CompletableFuture<Object>>();
+
+                for (String dependency : container.getSingletonDependencies(
+                        plan.getBeanName())) {
+                    dependencies.add(load(container.getPlan(dependency)));
+                }
+
+                CompletableFuture.allOf(dependencies.toArray(
+                        new CompletableFuture<?>[dependencies.size()]))
+                        .whenComplete(new BiConsumer<Void, Throwable>() {
+
+                            @Override
+                            public void accept(Void result, Throwable failure) {
+                                if (failure != null) {
+                                    future.completeExceptionally(unwrap(failure));
+                                } else {
+                                    create(plan, future);
+                                }
+                            }
+                        });
+            }
+        });
+    }
+
+    private void create(final BeanPlan plan, final CompletableFuture<Object> future) {
+        execute(future, new Runnable() {
+
+            @Override
+            public void run() {
+                future.complete(container.getBean(plan));
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the executor. If the task or the executor fails, so does the future.
+     */
+    private void execute(final CompletableFuture<Object> future, final Runnable task) {
+        Runnable guardedTask = new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+        };
+
+        try {
+            executor().execute(guardedTask);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private Executor executor() {
+        Executor currentExecutor = executor;
+
+        return currentExecutor != null ? currentExecutor : DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     * @return The failure of a dependency, without the wrapping added by allOf.
+     */
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException &&
+                failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    /**
+     * Holds the executor used by containers that were not given one. It is only created when
+     * a bean is first requested asynchronously.
+     */
+    private static final class DefaultExecutor {
+
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (NoSuchMethodException e) {
+                //Virtual threads need Java 21
+            } catch (IllegalAccessException e) {
+                //Fall back to platform threads
+            } catch (InvocationTargetException e) {
+                //Virtual threads are a preview feature that is not enabled
+            }
+
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "yedi-async-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+}
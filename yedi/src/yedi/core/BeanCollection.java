@@ -0,0 +1,80 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * BeanCollection stands for all beans of a type in a bean descriptor. It is written in YAML as
+ * <code>!yedi/list com.example.Handler</code>, which injects a list of the beans, or as
+ * <code>!yedi/map com.example.Handler</code>, which injects a map from bean names to beans. The
+ * bean the collection is injected into is never part of it.
+ * <p>
+ * Pooled beans have to be borrowed and are left out, like in
+ * {@link BeanContainer#getBeansOfType(Class)}. Beans of a registered scope are fetched through
+ * their scope every time the collection is injected, so a collection injected where the scope
+ * cannot supply its bean, such as a 'scoped' bean outside a {@link ScopedContext}, fails the
+ * same way a reference to that bean would.
+ * 
+ * @author mnaglic
+ * @see TypeIndex
+ */
+final class BeanCollection {
+
+    private final String type;
+    private final boolean map;
+
+    BeanCollection(String type, boolean map) {
+        this.type = type;
+        this.map = map;
+    }
+
+    /**
+     * @return The name of the class or interface of the beans.
+     */
+    String getType() {
+        return type;
+    }
+
+    /**
+     * @return Whether the beans are injected as a map from bean names to beans.
+     */
+    boolean isMap() {
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof BeanCollection)) {
+            return false;
+        }
+
+        BeanCollection other = (BeanCollection) object;
+
+        return type.equals(other.type) && map == other.map;
+    }
+
+    @Override
+    public int hashCode() {
+        return type.hashCode() * 31 + (map ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return (map ? "!yedi/map " : "!yedi/list ") + type;
+    }
+}
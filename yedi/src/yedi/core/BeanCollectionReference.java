@@ -0,0 +1,82 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BeanCollectionReference is the resolved form of a {@link BeanCollection} in a creation plan.
+ * The beans of the collection are looked up in the type index when the plan is compiled, so
+ * executing the plan only fetches them.
+ * 
+ * @author mnaglic
+ * @see BeanPlan
+ */
+final class BeanCollectionReference {
+
+    private final List<String> beanNames;
+    private final boolean map;
+
+    BeanCollectionReference(List<String> beanNames, boolean map) {
+        this.beanNames = beanNames;
+        this.map = map;
+    }
+
+    List<String> getBeanNames() {
+        return beanNames;
+    }
+
+    boolean isMap() {
+        return map;
+    }
+
+    /**
+     * @return The type of the injected collection, List or Map.
+     */
+    Class<?> getCollectionType() {
+        return map ? Map.class : List.class;
+    }
+
+    /**
+     * @param container The container to fetch the beans from.
+     * @return A new list of the beans, or a new map from bean names to beans.
+     */
+    Object resolve(BeanContainer container) {
+        if (map) {
+            Map<String, Object> beans = new LinkedHashMap<String, Object>(2 * beanNames.size());
+
+            for (String beanName : beanNames) {
+                beans.put(beanName, container.getBean(beanName));
+            }
+
+            return beans;
+        }
+
+        List<Object> beans = new ArrayList<Object>(beanNames.size());
+
+        for (String beanName : beanNames) {
+            beans.add(container.getBean(beanName));
+        }
+
+        return beans;
+    }
+}
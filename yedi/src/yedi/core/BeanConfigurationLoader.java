@@ -0,0 +1,644 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.yaml.snakeyaml.TypeDescription;
+import org.yaml.snakeyaml.composer.Composer;
+import org.yaml.snakeyaml.constructor.AbstractConstruct;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ImplicitTuple;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * BeanConfigurationLoader parses bean configuration files independently of each other, in
+ * parallel if there are several, and merges their descriptors.
+ * <p>
+ * A bean may reference a bean defined in another file through the YAML alias of that bean,
+ * in either direction. While a file is parsed, aliases whose anchor is not defined in the file
+ * are replaced by placeholders. Once all files are parsed, the placeholders are resolved
+ * through the anchors of the beans of all files. An alias is resolved across files only if it
+ * names the anchor of a bean, and only if exactly one bean uses that anchor.
+ * <p>
+ * The files of a child container may also use the alias of a bean of the parent container, as
+ * long as no bean of the child's files uses that anchor. The anchor is then the name of the
+ * bean in the parent container.
+ * <p>
+ * A bean name may only be defined once, unless bean overriding is allowed. In that case the
+ * definition from the file listed last wins. References are resolved by the name of the
+ * referenced bean, so every reference to the bean, including the aliases in the file of the
+ * overridden definition, gets the winning definition.
+ * <p>
+ * Beans registered in code are merged after all files and always win over the definitions of
+ * the files. Like the beans of a parent container, they are also found by aliases that name
+ * no anchor of the files.
+ * <p>
+ * The loader keeps the parsed files, so a reload only parses the files that changed. A
+ * container that does not reload on its own releases them once it is loaded, and then a
+ * reload parses every file again.
+ * 
+ * @author mnaglic
+ */
+final class BeanConfigurationLoader {
+
+    private static final Tag REFERENCE_TAG = new Tag("!yedi/ref");
+    private static final Tag LIST_TAG = new Tag("!yedi/list");
+    private static final Tag MAP_TAG = new Tag("!yedi/map");
+
+    private final List<String> locations;
+    private final int threads;
+    private final boolean allowBeanOverriding;
+    private final Map<String, BeanDescriptor> registeredBeans;
+    private List<byte[]> contents;
+    private List<ParsedFile> files;
+
+    /**
+     * @param locations The locations of the files, used in error messages.
+     * @param threads The maximum number of files parsed at the same time.
+     * @param allowBeanOverriding Whether a bean may be defined in several files.
+     */
+    BeanConfigurationLoader(List<String> locations, int threads, boolean allowBeanOverriding) {
+        this(locations, threads, allowBeanOverriding,
+                Collections.<String, BeanDescriptor>emptyMap());
+    }
+
+    /**
+     * @param locations The locations of the files, used in error messages.
+     * @param threads The maximum number of files parsed at the same time.
+     * @param allowBeanOverriding Whether a bean may be defined in several files.
+     * @param registeredBeans The descriptors of the beans registered in code, by bean name.
+     */
+    BeanConfigurationLoader(List<String> locations, int threads, boolean allowBeanOverriding,
+            Map<String, BeanDescriptor> registeredBeans) {
+        this.locations = locations;
+        this.threads = threads;
+        this.allowBeanOverriding = allowBeanOverriding;
+        this.registeredBeans = registeredBeans;
+    }
+
+    /**
+     * Parses and merges the bean configuration files.
+     * 
+     * @param contents The contents of the files.
+     * @param listener The listener told how long each file took to parse, or null.
+     * @return The merged descriptors.
+     */
+    BeanDescriptorContainer load(List<byte[]> contents, BeanMetricsListener listener) {
+        List<ParsedFile> parsedFiles = parseAll(locations, contents, listener);
+        BeanDescriptorContainer descriptorContainer = merge(parsedFiles, parsedFiles, null);
+
+        this.contents = contents;
+        this.files = parsedFiles;
+
+        return descriptorContainer;
+    }
+
+    /**
+     * Parses and merges the bean configuration files of a child container. The files are not
+     * kept, since child containers are not reloaded.
+     * 
+     * @param contents The contents of the files.
+     * @param listener The listener told how long each file took to parse, or null.
+     * @param parentBeans The descriptors of the parent container by bean name, which aliases
+     * that name no anchor of the files are resolved against.
+     * @return The merged descriptors.
+     */
+    BeanDescriptorContainer loadChild(List<byte[]> contents, BeanMetricsListener listener,
+            Map<String, BeanDescriptor> parentBeans) {
+        List<ParsedFile> parsedFiles = parseAll(locations, contents, listener);
+
+        return merge(parsedFiles, parsedFiles, parentBeans);
+    }
+
+    /**
+     * Parses the files whose contents changed since they were last loaded, and merges them
+     * with the descriptors of the unchanged files. Aliases from unchanged files to beans of a
+     * changed file still hold the old descriptors, which name the same beans.
+     * 
+     * @param newContents The current contents of the files.
+     * @param listener The listener told how long each file took to parse, or null.
+     * @return The merged descriptors, or null if no file changed.
+     */
+    BeanDescriptorContainer reload(List<byte[]> newContents, BeanMetricsListener listener) {
+        if (files == null) {
+            //The descriptors came from somewhere else, such as a snapshot
+            return load(newContents, listener);
+        }
+
+        List<String> changedLocations = new ArrayList<String>();
+        List<byte[]> changedContents = new ArrayList<byte[]>();
+        List<Integer> changedFiles = new ArrayList<Integer>();
+
+        for (int i = 0; i < locations.size(); i++) {
+            if (!Arrays.equals(contents.get(i), newContents.get(i))) {
+                changedLocations.add(locations.get(i));
+                changedContents.add(newContents.get(i));
+                changedFiles.add(i);
+            }
+        }
+
+        if (changedFiles.isEmpty()) {
+            return null;
+        }
+
+        List<ParsedFile> reparsedFiles = parseAll(changedLocations, changedContents,
+                listener);
+        List<ParsedFile> parsedFiles = new ArrayList<ParsedFile>(files);
+
+        for (int i = 0; i < changedFiles.size(); i++) {
+            parsedFiles.set(changedFiles.get(i), reparsedFiles.get(i));
+        }
+
+        BeanDescriptorContainer descriptorContainer = merge(parsedFiles, reparsedFiles, null);
+
+        this.contents = newContents;
+        this.files = parsedFiles;
+
+        return descriptorContainer;
+    }
+
+    /**
+     * Drops the parsed files and their contents, which are only needed to find the files that
+     * changed. The next reload parses every file again.
+     */
+    void releaseFiles() {
+        contents = null;
+        files = null;
+    }
+
+    /**
+     * Merges the descriptors of all files and resolves the aliases between files.
+     * 
+     * @param parsedFiles All files, in the order they are listed in.
+     * @param unresolvedFiles The files whose aliases to other files are not resolved yet.
+     * @param parentBeans The descriptors of the parent container, or null.
+     */
+    private BeanDescriptorContainer merge(List<ParsedFile> parsedFiles,
+            List<ParsedFile> unresolvedFiles, Map<String, BeanDescriptor> parentBeans) {
+        Map<String, BeanDescriptor> beans = new LinkedHashMap<String, BeanDescriptor>();
+        Map<String, String> beanLocations = new HashMap<String, String>();
+        Map<String, String> anchoredBeans = new HashMap<String, String>();
+        Set<String> ambiguousAnchors = new HashSet<String>();
+
+        for (ParsedFile file : parsedFiles) {
+            for (Entry<String, BeanDescriptor> bean : file.beans.entrySet()) {
+                String beanName = bean.getKey();
+
+                if (beans.put(beanName, bean.getValue()) != null && !allowBeanOverriding) {
+                    throw new ConfigurationException("Bean " + beanName + " is defined in " +
+                            beanLocations.get(beanName) + " and in " + file.location +
+                            ". Set allow-bean-overriding to true to let the definition " +
+                            "listed last win");
+                }
+
+                beanLocations.put(beanName, file.location);
+            }
+
+            for (Entry<String, String> anchor : file.beanAnchors.entrySet()) {
+                String beanName = anchoredBeans.put(anchor.getKey(), anchor.getValue());
+
+                if (beanName != null && !beanName.equals(anchor.getValue())) {
+                    ambiguousAnchors.add(anchor.getKey());
+                }
+            }
+        }
+
+        beans.putAll(registeredBeans);
+
+        ReferenceResolver resolver = new ReferenceResolver(beans, anchoredBeans,
+                ambiguousAnchors, parentBeans != null ? parentBeans : registeredBeans);
+
+        for (ParsedFile file : unresolvedFiles) {
+            if (file.unresolvedAliases) {
+                resolver.resolve(file, null);
+            }
+        }
+
+        for (ParsedFile file : unresolvedFiles) {
+            for (BeanDescriptor descriptor : file.beans.values()) {
+                if (descriptor != null) {
+                    descriptor.compact();
+                }
+            }
+        }
+
+        //Registers every descriptor under the name that wins, so a reference to an
+        //overridden definition names the bean that overrides it
+        BeanDescriptorContainer descriptorContainer = new BeanDescriptorContainer();
+        descriptorContainer.setBeans(beans);
+
+        return descriptorContainer;
+    }
+
+    private List<ParsedFile> parseAll(final List<String> locations, final List<byte[]> contents,
+            final BeanMetricsListener listener) {
+        int poolSize = Math.min(threads, locations.size());
+        List<ParsedFile> files = new ArrayList<ParsedFile>(locations.size());
+
+        if (poolSize <= 1) {
+            for (int i = 0; i < locations.size(); i++) {
+                files.add(parse(locations.get(i), contents.get(i), listener));
+            }
+
+            return files;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                        "yedi-config-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            List<Future<ParsedFile>> parsedFiles = new ArrayList<Future<ParsedFile>>();
+
+            for (int i = 0; i < locations.size(); i++) {
+                final int file = i;
+
+                parsedFiles.add(executor.submit(new Callable<ParsedFile>() {
+
+                    @Override
+                    public ParsedFile call() {
+                        return parse(locations.get(file), contents.get(file), listener);
+                    }
+                }));
+            }
+
+            for (Future<ParsedFile> parsedFile : parsedFiles) {
+                files.add(parsedFile.get());
+            }
+
+            return files;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigurationException("Interrupted while parsing bean configurations", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new ConfigurationException("Could not parse bean configurations", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses a file, telling the listener and the flight recorder how long it took.
+     */
+    static ParsedFile parse(String location, byte[] content,
+            BeanMetricsListener listener) {
+        FlightRecorderEvents.ConfigurationParse event =
+                new FlightRecorderEvents.ConfigurationParse();
+
+        if (listener == null && !event.isEnabled()) {
+            return parse(location, content);
+        }
+
+        event.begin();
+        long start = System.nanoTime();
+        ParsedFile parsedFile = parse(location, content);
+
+        if (listener != null) {
+            listener.configurationParsed(location, System.nanoTime() - start);
+        }
+
+        if (event.shouldCommit()) {
+            event.location = location;
+            event.beans = parsedFile.beans.size();
+            event.commit();
+        }
+
+        return parsedFile;
+    }
+
+    private static ParsedFile parse(String location, byte[] content) {
+        Constructor yediConstructor = new Constructor(BeanDescriptorContainer.class) {
+
+            {
+                yamlConstructors.put(REFERENCE_TAG, new AbstractConstruct() {
+
+                    @Override
+                    public Object construct(Node node) {
+                        return new UnresolvedReference(((ScalarNode) node).getValue());
+                    }
+                });
+                yamlConstructors.put(LIST_TAG, new AbstractConstruct() {
+
+                    @Override
+                    public Object construct(Node node) {
+                        return new BeanCollection(((ScalarNode) node).getValue().trim(), false);
+                    }
+                });
+                yamlConstructors.put(MAP_TAG, new AbstractConstruct() {
+
+                    @Override
+                    public Object construct(Node node) {
+                        return new BeanCollection(((ScalarNode) node).getValue().trim(), true);
+                    }
+                });
+            }
+        };
+        yediConstructor.addTypeDescription(new TypeDescription(BeanDescriptorContainer.class));
+
+        ReferenceParser parser = new ReferenceParser(new ParserImpl(new StreamReader(
+                new UnicodeReader(new ByteArrayInputStream(content)))));
+        yediConstructor.setComposer(new Composer(parser, new Resolver()));
+
+        BeanDescriptorContainer descriptorContainer;
+
+        try {
+            descriptorContainer = (BeanDescriptorContainer) yediConstructor
+                    .getSingleData(BeanDescriptorContainer.class);
+        } catch (YAMLException e) {
+            throw new ConfigurationException("Could not parse bean configuration on path " +
+                    location + ": " + e.getMessage(), e);
+        }
+
+        Map<String, BeanDescriptor> beans = descriptorContainer == null ? null :
+                descriptorContainer.getBeans();
+
+        return new ParsedFile(location,
+                beans == null ? new LinkedHashMap<String, BeanDescriptor>() : beans,
+                parser.beanAnchors, parser.unresolvedAliases);
+    }
+
+    /**
+     * The descriptors of one file, with the anchors of its beans.
+     */
+    static final class ParsedFile {
+
+        final String location;
+        final Map<String, BeanDescriptor> beans;
+        final Map<String, String> beanAnchors;
+        final boolean unresolvedAliases;
+
+        ParsedFile(String location, Map<String, BeanDescriptor> beans,
+                Map<String, String> beanAnchors, boolean unresolvedAliases) {
+            this.location = location;
+            this.beans = beans;
+            this.beanAnchors = beanAnchors;
+            this.unresolvedAliases = unresolvedAliases;
+        }
+    }
+
+    /**
+     * Stands in for an alias whose anchor is defined in another file.
+     */
+    static final class UnresolvedReference {
+
+        final String anchor;
+
+        UnresolvedReference(String anchor) {
+            this.anchor = anchor;
+        }
+    }
+
+    /**
+     * Passes the events of a file on to the composer, but replaces aliases of anchors that are
+     * not defined in the file with !yedi/ref scalars holding the anchor. It also records the
+     * anchor of every bean, which is the anchor of a mapping two levels deep.
+     */
+    private static final class ReferenceParser implements Parser {
+
+        private final Parser parser;
+        private final Set<String> anchors = new HashSet<String>();
+        final Map<String, String> beanAnchors = new HashMap<String, String>();
+        boolean unresolvedAliases;
+        private int depth;
+        private String lastBeanLevelScalar;
+
+        ReferenceParser(Parser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean checkEvent(Event.ID choice) {
+            Event event = peekEvent();
+
+            return event != null && event.is(choice);
+        }
+
+        @Override
+        public Event peekEvent() {
+            return replace(parser.peekEvent());
+        }
+
+        @Override
+        public Event getEvent() {
+            Event event = replace(parser.getEvent());
+
+            if (event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null) {
+                String anchor = ((NodeEvent) event).getAnchor();
+
+                if (!(event instanceof AliasEvent)) {
+                    anchors.add(anchor);
+                }
+
+                if (depth == 2 && event.is(Event.ID.MappingStart) &&
+                        lastBeanLevelScalar != null) {
+                    beanAnchors.put(anchor, lastBeanLevelScalar);
+                }
+            }
+
+            if (event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart)) {
+                depth++;
+            } else if (event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd)) {
+                depth--;
+            } else if (depth == 2 && event.is(Event.ID.Scalar)) {
+                lastBeanLevelScalar = ((ScalarEvent) event).getValue();
+            }
+
+            if (event.is(Event.ID.Scalar) &&
+                    REFERENCE_TAG.getValue().equals(((ScalarEvent) event).getTag())) {
+                unresolvedAliases = true;
+            }
+
+            return event;
+        }
+
+        private Event replace(Event event) {
+            if (!(event instanceof AliasEvent)) {
+                return event;
+            }
+
+            String anchor = ((AliasEvent) event).getAnchor();
+
+            if (anchors.contains(anchor)) {
+                return event;
+            }
+
+            return new ScalarEvent(null, REFERENCE_TAG.getValue(), new ImplicitTuple(false, false),
+                    anchor, event.getStartMark(), event.getEndMark(), null);
+        }
+    }
+
+    /**
+     * Replaces placeholders with the descriptors of the beans they reference.
+     */
+    static final class ReferenceResolver {
+
+        private final Map<String, BeanDescriptor> beans;
+        private final Map<String, String> anchoredBeans;
+        private final Set<String> ambiguousAnchors;
+        private final Map<String, BeanDescriptor> parentBeans;
+        private final Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+        private String location;
+        private Map<String, String> localAnchors;
+
+        ReferenceResolver(Map<String, BeanDescriptor> beans, Map<String, String> anchoredBeans,
+                Set<String> ambiguousAnchors) {
+            this(beans, anchoredBeans, ambiguousAnchors, null);
+        }
+
+        /**
+         * @param parentBeans The descriptors of the parent container or of the beans registered
+         * in code, by bean name, used for anchors that no bean uses, or null.
+         */
+        ReferenceResolver(Map<String, BeanDescriptor> beans, Map<String, String> anchoredBeans,
+                Set<String> ambiguousAnchors, Map<String, BeanDescriptor> parentBeans) {
+            this.beans = beans;
+            this.anchoredBeans = anchoredBeans;
+            this.ambiguousAnchors = ambiguousAnchors;
+            this.parentBeans = parentBeans;
+        }
+
+        /**
+         * @param file A parsed file.
+         * @param localAnchors The anchors of the beans of the file, which are looked up before
+         * the anchors of all files, or null if the parser already resolved them.
+         */
+        @SuppressWarnings("unchecked")
+        void resolve(ParsedFile file, Map<String, String> localAnchors) {
+            location = file.location;
+            this.localAnchors = localAnchors;
+
+            for (BeanDescriptor descriptor : file.beans.values()) {
+                if (visited.put(descriptor, descriptor) == null) {
+                    Object constructorParameters = resolve(descriptor.getConstructorParameters());
+                    descriptor.setConstructor((List<?>) constructorParameters);
+                    descriptor.setProperties((Map<String, ?>) resolve(descriptor.getProperties()));
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object resolve(Object value) {
+            if (value instanceof UnresolvedReference) {
+                String anchor = ((UnresolvedReference) value).anchor;
+
+                if (localAnchors != null && localAnchors.containsKey(anchor)) {
+                    return beans.get(localAnchors.get(anchor));
+                }
+
+                if (ambiguousAnchors.contains(anchor)) {
+                    throw new ConfigurationException("Alias *" + anchor + " in " + location +
+                            " is ambiguous, since several beans in other files use the anchor &" +
+                            anchor);
+                }
+
+                String beanName = anchoredBeans.get(anchor);
+
+                if (beanName == null && parentBeans != null && parentBeans.get(anchor) != null) {
+                    return parentBeans.get(anchor);
+                }
+
+                if (beanName == null) {
+                    throw new ConfigurationException("Alias *" + anchor + " in " + location +
+                            " does not name the anchor of a bean in any configuration file");
+                }
+
+                return beans.get(beanName);
+            } else if (value instanceof Collection || value instanceof Map) {
+                //Aliased collections are shared, and may even contain themselves
+                if (visited.put(value, value) != null) {
+                    return value;
+                }
+            }
+
+            if (value instanceof List) {
+                for (ListIterator<Object> elements = ((List<Object>) value).listIterator();
+                        elements.hasNext();) {
+                    elements.set(resolve(elements.next()));
+                }
+            } else if (value instanceof Set) {
+                Set<Object> set = (Set<Object>) value;
+                Set<Object> resolvedSet = new LinkedHashSet<Object>();
+
+                for (Object element : set) {
+                    resolvedSet.add(resolve(element));
+                }
+
+                set.clear();
+                set.addAll(resolvedSet);
+            } else if (value instanceof Map) {
+                for (Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                    entry.setValue(resolve(entry.getValue()));
+                }
+            }
+
+            return value;
+        }
+    }
+}
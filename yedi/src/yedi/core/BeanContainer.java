@@ -1,482 +1,1468 @@
-/**
- Copyright 2012 Matej Nagli
-
-    This file is part of Yedi.
-
-    Yedi is free software: you can redistribute it and/or modify
-    it under the terms of the GNU Lesser General Public License as published by
-    the Free Software Foundation, either version 3 of the License, or
-    (at your option) any later version.
-
-    Yedi is distributed in the hope that it will be useful,
-    but WITHOUT ANY WARRANTY; without even the implied warranty of
-    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-    GNU Lesser General Public License for more details.
-
-    You should have received a copy of the GNU Lesser General Public License
-    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
- */
-package yedi.core;
-
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.SequenceInputStream;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.Proxy;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-
-import org.yaml.snakeyaml.TypeDescription;
-import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.constructor.Constructor;
-
-import yedi.exceptions.BeanLoadingException;
-import yedi.exceptions.ConfigurationException;
-
-/**
- * BeanContainer is the central point of Yedi. It holds a Map of beans, which can be fetched
- * using getBean(String beanName). 
- * 
- * @author mnaglic
- *
- */
-public class BeanContainer {
-
-	private BeanDescriptorContainer descriptorContainer;
-	private Map<String, Object> beans;
-	private LoadingPolicy globalLoadingPolicy = LoadingPolicy.EAGER;
-	private List<String> allowedLoadingPolicies =
-			Arrays.asList(LoadingPolicy.EAGER.toString(), LoadingPolicy.LAZY.toString());
-
-	public BeanContainer(String yediConfigurationPath) {
-		InputStream configurationStream;
-
-		try {
-			configurationStream = new FileInputStream(yediConfigurationPath);
-		} catch (FileNotFoundException e) {
-			throw new ConfigurationException("No Yedi configuration found on path " +
-					yediConfigurationPath, e);
-		}
-
-		Yaml yaml = new Yaml();
-
-		@SuppressWarnings("rawtypes")
-		Map yediConfiguration = (Map) yaml.load(configurationStream);
-
-		String loadingPolicy = (String) yediConfiguration.get("global-loading-policy");
-
-		if (loadingPolicy != null) {
-			if (!allowedLoadingPolicies.contains(loadingPolicy)) {
-				throw new ConfigurationException("Illegal value for global loading policy: " +
-						loadingPolicy);
-			} else if (loadingPolicy.equals(LoadingPolicy.LAZY.toString())) {
-				globalLoadingPolicy = LoadingPolicy.LAZY;
-			}
-		}
-
-		@SuppressWarnings("unchecked")
-		List<String> beanConfigLocations =
-		(List<String>) yediConfiguration.get("bean-configuration-locations");
-
-		if (beanConfigLocations == null || beanConfigLocations.isEmpty()) {
-			throw new ConfigurationException(
-					"No defined bean configuration locations found in Yedi configuration file");
-		}
-
-		InputStream beanConfigLocationStream;
-
-		try {
-			beanConfigLocationStream = new FileInputStream(beanConfigLocations.get(0));
-		} catch (FileNotFoundException e) {
-			throw new ConfigurationException("Could not find bean configuration on path " +
-					beanConfigLocations.get(0), e);
-		}
-
-		if (beanConfigLocations.size() > 1) {
-			for (int i = 1; i < beanConfigLocations.size(); i++) {
-				try {
-					FileInputStream fis = new FileInputStream(beanConfigLocations.get(i));
-					fis.skip(7);
-					beanConfigLocationStream =
-							new SequenceInputStream(beanConfigLocationStream, fis);
-				} catch (FileNotFoundException e) {
-					throw new ConfigurationException("Could not find bean configuration on path " +
-							beanConfigLocations.get(i), e);
-				} catch (IOException e) {
-					throw new ConfigurationException("Could not read bean configuration on path " +
-							beanConfigLocations.get(i), e);
-				}
-			}
-		}
-
-		Constructor yediConstructor = new Constructor(BeanDescriptorContainer.class);
-		TypeDescription yediTypeDescription = new TypeDescription(BeanDescriptorContainer.class);
-		yediConstructor.addTypeDescription(yediTypeDescription);
-
-		yaml = new Yaml(yediConstructor);
-
-		descriptorContainer = (BeanDescriptorContainer) yaml.load(beanConfigLocationStream);
-		beans = new HashMap<String, Object>();
-	}
-
-	/**
-	 * Fetches a bean from the container. The bean will have its fields injected according to the
-	 * configuration.
-	 * 
-	 * @param beanName The name of the bean to fetch.
-	 * @return An object with fields populated according to bean configuration.
-	 */
-	@SuppressWarnings("unchecked")
-	public <T> T getBean(String beanName) {
-		String exceptionMessagePrefix = "Could not load bean " + beanName + ": ";
-		T bean = null;
-		Map<String, BeanDescriptor> descriptorMap = descriptorContainer.getBeans();
-		BeanDescriptor descriptor = descriptorMap.get(beanName);
-
-		if (descriptor == null) {
-			throw new BeanLoadingException(exceptionMessagePrefix + "Definition for bean " +
-					beanName + " was not found in any of the configuration files.");
-		}
-
-		//If the scope of the bean is "singleton" try to fetch it from the internal beans list.
-		if (descriptor.getScope().equals(BeanScope.SINGLETON.toString())) {
-			bean = (T) beans.get(beanName);
-		}
-
-		if (bean == null) {
-			//The bean wasn't found in the internal bean list, or it's scope is 'prototype'.
-			//A new instance needs to be created.
-			try {
-				Class<?> beanClass = Class.forName(descriptor.getType());
-
-				//Try to inject properties through a suitable constructor first
-				List<?> descriptorConstructorParameters = descriptor.getConstructorParameters();
-
-				if (descriptorConstructorParameters != null &&
-						!descriptorConstructorParameters.isEmpty()) {
-					bean = injectThroughConstructor(bean, descriptorMap, beanClass,
-							descriptorConstructorParameters);
-				}
-
-
-				//if no suitable constructor was found, use a default one and continue;
-				java.lang.reflect.Constructor<?>[] constructors = 
-						beanClass.getDeclaredConstructors();
-
-				for (java.lang.reflect.Constructor<?> constructor : constructors) {
-					if (constructor.getParameterTypes().length == 0) {
-						if (!Modifier.isPublic(beanClass.getModifiers())) {
-							constructor.setAccessible(true);
-						}
-						
-						if (bean == null) bean = (T) constructor.newInstance();
-					}
-				}
-
-				Map<String, ?> properties = descriptor.getProperties();
-
-				if (properties != null && !properties.isEmpty()) {
-					injectInFields(bean, descriptorMap, properties);
-				}
-			} catch (ClassNotFoundException e) {
-				throw new BeanLoadingException(exceptionMessagePrefix + "Cannot find class " +
-						descriptor.getType(), e);
-			} catch (IllegalAccessException e) {
-				throw new BeanLoadingException(exceptionMessagePrefix + "No access rights", e);
-			} catch (InstantiationException e) {
-				throw new BeanLoadingException(exceptionMessagePrefix +
-						"Cannot create new instance of class " + descriptor.getType() +
-						". Did you provide proper parameters for the constructor or a " +
-						"default constructor?", e);
-			} catch (IllegalArgumentException e) {
-				throw new BeanLoadingException(exceptionMessagePrefix +
-						"see cause exception for more information", e);
-			} catch (InvocationTargetException e) {
-				throw new BeanLoadingException(exceptionMessagePrefix +
-						"Could not invoke setter for a property", e);
-			} catch (NoSuchFieldException nsfe) {
-				throw new BeanLoadingException(exceptionMessagePrefix +
-						"Cannot find declared field of class " +
-						descriptor.getType(), nsfe);
-			} catch (SecurityException e) {
-				throw new BeanLoadingException(exceptionMessagePrefix +
-						"SecurityManager prevented creation of bean.", e);
-			}
-
-			if (!descriptor.getScope().equals(BeanScope.PROTOTYPE.toString())) {
-				beans.put(beanName, bean);
-			}
-		}
-
-		return bean;
-	}
-
-	private <T> Object createProxy(final Field field, final Object bean,
-			final String proxiedBeanName, Map<String, BeanDescriptor> descriptorMap)
-					throws ClassNotFoundException {
-		BeanDescriptor proxiedBeanDescriptor = descriptorMap.get(proxiedBeanName);
-
-		if (!field.getType().isInterface()) {
-			throw new BeanLoadingException("Bean " + proxiedBeanName +
-					" is configured to load lazily and be injected into field " + field.getName() +
-					" but the type of field is not an interface.");
-		}
-
-		InvocationHandler handler = new InvocationHandler() {
-
-			@Override
-			public Object invoke(Object proxy, Method method, Object[] args)
-					throws Throwable {
-				//Set the real object instead of proxy
-				if (!Modifier.isPublic(field.getModifiers())) {
-					field.setAccessible(true);
-				}
-
-				T proxiedBean = getBean(proxiedBeanName);
-				field.set(bean, proxiedBean);
-
-				//Invoke real method
-				Class<?> parameterTypes[] = null;
-
-				if (args != null) {
-					parameterTypes = new Class<?>[args.length];
-
-					for (int i = 0; i < args.length; i++) {
-						parameterTypes[i] = args[i].getClass();
-					}
-				}
-
-				Method realMethod = proxiedBean.getClass().getMethod(method.getName(),
-						parameterTypes);				
-
-				return realMethod.invoke(proxiedBean, args);
-			}
-		};
-
-		ClassLoader loader = Class.forName(proxiedBeanDescriptor.getType()).getClassLoader();
-		Object proxy = Proxy.newProxyInstance(loader, new Class[] {field.getType()},
-				handler);
-
-		return proxy;
-	}
-
-	/**
-	 * @param <T>
-	 * @param bean
-	 * @param descriptorMap
-	 * @param properties
-	 * @throws IllegalAccessException
-	 * @throws InvocationTargetException
-	 * @throws NoSuchFieldException
-	 * @throws ClassNotFoundException
-	 */
-	private <T> void injectInFields(T bean, Map<String, BeanDescriptor> descriptorMap,
-			Map<String, ?> properties) throws IllegalAccessException, InvocationTargetException,
-			NoSuchFieldException {
-		for (String propertyName : properties.keySet()) {
-			Object value = properties.get(propertyName);
-
-			if (value instanceof BeanDescriptor) {
-				value = (BeanDescriptor) value;
-
-				for (Entry<String, BeanDescriptor> descriptorEntry : descriptorMap.entrySet()) {
-					BeanDescriptor descriptor = descriptorEntry.getValue();
-
-					if (descriptor.equals(value)) {
-
-						if ((descriptor.getLoadingPolicy() == null &&
-								globalLoadingPolicy.equals(LoadingPolicy.LAZY)) ||
-								LoadingPolicy.LAZY.toString().equals(
-										descriptor.getLoadingPolicy())) {
-							Field property = bean.getClass().getDeclaredField(propertyName);
-							String proxiedBeanName = descriptorEntry.getKey();
-							try {
-								value = createProxy(property, bean, proxiedBeanName, descriptorMap);
-							} catch (ClassNotFoundException e) {
-								throw new BeanLoadingException("Could not create lazy bean " +
-										proxiedBeanName + ". See cause for more information.");
-							}
-						} else {
-							value = getBean(descriptorEntry.getKey());
-						}
-					}
-				}
-			}
-
-			boolean injectionCompleted = false;
-
-			//Use the setter instead of injecting the bean directly into the field,
-			//if it exists
-			Method[] methods = bean.getClass().getDeclaredMethods();
-
-			for (int i = 0; i < methods.length; i++) {
-				Method method = methods[i];
-
-				if (method.getName().equals("set" +
-						Character.toUpperCase(propertyName.charAt(0)) +
-						propertyName.substring(1)) &&
-						method.getParameterTypes().length == 1 &&
-						method.getParameterTypes()[0].equals(value.getClass())) {
-
-					if (!Modifier.isPublic(method.getModifiers()) ||
-							!!Modifier.isPublic(method.getClass().getModifiers())) {
-						method.setAccessible(true);
-					}
-
-					method.invoke(bean, value);
-					injectionCompleted = true;
-					break;
-				}
-			}
-
-			if (injectionCompleted) continue;
-
-			//If no other way of setting the value is possible, try to set it directly
-			Field property = bean.getClass().getDeclaredField(propertyName);
-
-			if (!Modifier.isPublic(property.getModifiers())) {
-				property.setAccessible(true);
-			}
-
-			property.set(bean, value);
-		}
-	}
-
-	/**
-	 * @param <T>
-	 * @param bean
-	 * @param descriptorMap
-	 * @param beanClass
-	 * @param descriptorConstructorParameters
-	 * @return
-	 * @throws InstantiationException
-	 * @throws IllegalAccessException
-	 * @throws InvocationTargetException
-	 */
-	@SuppressWarnings("unchecked")
-	private <T> T injectThroughConstructor(T bean, Map<String, BeanDescriptor> descriptorMap,
-			Class<?> beanClass, List<?> descriptorConstructorParameters)
-					throws InstantiationException, IllegalAccessException, InvocationTargetException {
-		Class<?>[] descriptorConstructorParameterTypes =
-				new Class<?>[descriptorConstructorParameters.size()];
-
-		for (int i = 0; i < descriptorConstructorParameters.size(); i++) {
-			descriptorConstructorParameterTypes[i] =
-					descriptorConstructorParameters.get(i).getClass();
-		}
-
-		java.lang.reflect.Constructor<?>[] constructors = beanClass.getDeclaredConstructors();
-
-		for (java.lang.reflect.Constructor<?> constructor : constructors) {
-			Class<?>[] constructorParameterTypes = constructor.getParameterTypes();
-
-			//Try and see if we're lucky and there are no primitives in the constructor,
-			//no bean references, and everything matches perfectly
-			if (Arrays.equals(constructor.getParameterTypes(),
-					descriptorConstructorParameterTypes)) {
-
-				if (!Modifier.isPublic(constructor.getModifiers()) ||
-						!!Modifier.isPublic(constructor.getClass().getModifiers())) {
-					constructor.setAccessible(true);
-				}
-
-				bean = (T) constructor.newInstance(descriptorConstructorParameters.toArray());
-				break;
-			}
-
-			//We're not lucky.
-			if (constructorParameterTypes.length != descriptorConstructorParameterTypes.length) {
-				//This is not the right constructor, continue.
-				continue;
-			}
-
-			Object[] objectsToInject = new Object[descriptorConstructorParameters.size()];
-
-			boolean wrongConstructor = false;
-
-			for (int i = 0; i < constructorParameterTypes.length; i++) {
-				Class<?> constructorParameterType = constructorParameterTypes[i];
-
-				if (constructorParameterType.isAssignableFrom(
-						descriptorConstructorParameterTypes[i])) {
-					objectsToInject[i] = descriptorConstructorParameters.get(i);
-				} else if (descriptorConstructorParameterTypes[i].equals(BeanDescriptor.class)) {
-					Object parameterBean = null;
-
-					for (Entry<String, BeanDescriptor> descriptorEntry : descriptorMap.entrySet()) {
-						if (descriptorEntry.getValue().equals(
-								descriptorConstructorParameters.get(i))) {
-							parameterBean = getBean(descriptorEntry.getKey());
-						}
-					}
-
-					if (constructorParameterType.isAssignableFrom(parameterBean.getClass())) {
-						objectsToInject[i] = parameterBean;
-					}
-				} else if(constructorParameterType.isPrimitive()) {
-					if (constructorParameterType.equals(Boolean.TYPE) &&
-							descriptorConstructorParameterTypes[i].equals(Boolean.class)){
-						objectsToInject[i] =
-								((Boolean) descriptorConstructorParameters.get(i)).booleanValue();
-					} else if (constructorParameterType.equals(Character.TYPE) &&
-							descriptorConstructorParameterTypes[i].equals(Character.class)){
-						objectsToInject[i] =
-								((Character) descriptorConstructorParameters.get(i)).charValue();
-					} else if (constructorParameterType.equals(Byte.TYPE) &&
-							descriptorConstructorParameterTypes[i].equals(Byte.class)){
-						objectsToInject[i] =
-								((Byte) descriptorConstructorParameters.get(i)).byteValue();
-					} else if (constructorParameterType.equals(Short.TYPE) &&
-							descriptorConstructorParameterTypes[i].equals(Short.class)){
-						objectsToInject[i] =
-								((Short) descriptorConstructorParameters.get(i)).shortValue();
-					} else if (constructorParameterType.equals(Integer.TYPE) &&
-							descriptorConstructorParameterTypes[i].equals(Integer.class)){
-						objectsToInject[i] =
-								((Integer) descriptorConstructorParameters.get(i)).intValue();
-					} else if (constructorParameterType.equals(Long.TYPE) &&
-							descriptorConstructorParameterTypes[i].equals(Long.class)){
-						objectsToInject[i] =
-								((Long) descriptorConstructorParameters.get(i)).longValue();
-					} else if (constructorParameterType.equals(Float.TYPE) &&
-							descriptorConstructorParameterTypes[i].equals(Float.class)){
-						objectsToInject[i] =
-								((Float) descriptorConstructorParameters.get(i)).floatValue();
-					} else if (constructorParameterType.equals(Double.TYPE) &&
-							descriptorConstructorParameterTypes[i].equals(Double.class)){
-						objectsToInject[i] =
-								((Double) descriptorConstructorParameters.get(i)).doubleValue();
-					} else {
-						wrongConstructor = true;
-					}
-				} else {
-					wrongConstructor = true;
-				}
-
-				if (wrongConstructor) break;
-			}
-
-			if (wrongConstructor) {
-				continue;
-			} else {
-
-				if (!Modifier.isPublic(constructor.getModifiers())) {
-					constructor.setAccessible(true);
-				}
-
-				bean = (T) constructor.newInstance(objectsToInject);
-				break;
-			}
-		}
-		return bean;
-	}
-}
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.yaml.snakeyaml.Yaml;
+
+import yedi.exceptions.BeanLoadingException;
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * BeanContainer is the central point of Yedi. It holds a Map of beans, which can be fetched
+ * using getBean(String beanName). A container can be shared between threads: each singleton is
+ * created exactly once, and fetching an existing singleton does not lock.
+ * <p>
+ * Closing a container destroys its singletons and the idle instances of its pooled beans, see
+ * {@link #close()}.
+ * 
+ * @author mnaglic
+ *
+ */
+public class BeanContainer implements AutoCloseable {
+
+	private volatile State state;
+	private BeanContainer parent;
+	private SingletonRegistry singletons;
+	private final ConcurrentMap<BeanPlan, BeanPool> pools =
+			new ConcurrentHashMap<BeanPlan, BeanPool>();
+	private final ConcurrentMap<String, BeanHandle<?>> handles =
+			new ConcurrentHashMap<String, BeanHandle<?>>();
+	private List<String> beanConfigLocations;
+	private BeanConfigurationLoader configurationLoader;
+	private final ReentrantLock reloadLock = new ReentrantLock();
+	private LoadingPolicy globalLoadingPolicy = LoadingPolicy.EAGER;
+	private List<String> allowedLoadingPolicies =
+			Arrays.asList(LoadingPolicy.EAGER.toString(), LoadingPolicy.LAZY.toString());
+	private InjectorBackend injectorBackend = InjectorBackend.METHOD_HANDLES;
+	private int startupThreads = Runtime.getRuntime().availableProcessors();
+	private StartupReport startupReport;
+	private long destroyTimeout = TimeUnit.SECONDS.toNanos(10);
+	private ConfigurationWatcher watcher;
+	private volatile boolean closed;
+	private ShutdownReport shutdownReport;
+	private Map<String, BeanPlan> registeredPlans = Collections.emptyMap();
+	private volatile BeanMetricsListener metricsListener;
+	private final AsyncBeanLoader asyncLoader = new AsyncBeanLoader(this);
+	private List<String> allowedInjectorBackends = Arrays.asList(
+			InjectorBackend.METHOD_HANDLES.toString(), InjectorBackend.REFLECTION.toString());
+
+	/**
+	 * Creates a container from a Yedi configuration file and the bean configuration files it
+	 * lists.
+	 * 
+	 * @param yediConfigurationPath The path of the Yedi configuration file.
+	 */
+	public BeanContainer(String yediConfigurationPath) {
+		this(yediConfigurationPath, null, true);
+	}
+
+	/**
+	 * Creates a container from a Yedi configuration file, together with beans registered in
+	 * code. Registered beans are created by their factories, without reflection, and are
+	 * defined alongside the beans of the bean configuration files. A registered bean replaces
+	 * the bean of the same name defined in YAML, and YAML beans reference it through its name
+	 * or through the alias of its name, unless a bean of the files uses that anchor. For
+	 * example, a registry
+	 * <pre>
+	 * registrar -&gt; registrar.register("codec", "prototype", Codec.class,
+	 *         container -&gt; new Codec((Buffers) container.getBean("buffers")))
+	 * </pre>
+	 * defines a bean codec that YAML beans inject as *codec.
+	 * <p>
+	 * The dependencies of registered beans are not known to the container. Registered eager
+	 * singletons are created along with the other eager singletons, and registered singletons
+	 * are destroyed before every singleton that was created before them. Registered beans
+	 * cannot be combined with lazy descriptor loading or descriptor snapshots.
+	 * 
+	 * @param yediConfigurationPath The path of the Yedi configuration file.
+	 * @param registry The registry listing the factories of the registered beans.
+	 */
+	public BeanContainer(String yediConfigurationPath, BeanFactoryRegistry registry) {
+		this(yediConfigurationPath, registry, true);
+	}
+
+	/**
+	 * @param yediConfigurationPath The path of the Yedi configuration file.
+	 * @param startEagerly Whether the eagerly loaded singletons should be created. Tools that
+	 * only inspect the configuration pass false.
+	 */
+	BeanContainer(String yediConfigurationPath, boolean startEagerly) {
+		this(yediConfigurationPath, null, startEagerly);
+	}
+
+	/**
+	 * @param yediConfigurationPath The path of the Yedi configuration file.
+	 * @param registry The registry of the beans registered in code, or null.
+	 * @param startEagerly Whether the eagerly loaded singletons should be created.
+	 */
+	private BeanContainer(String yediConfigurationPath, BeanFactoryRegistry registry,
+			boolean startEagerly) {
+		InputStream configurationStream;
+
+		try {
+			configurationStream = new FileInputStream(yediConfigurationPath);
+		} catch (FileNotFoundException e) {
+			throw new ConfigurationException("No Yedi configuration found on path " +
+					yediConfigurationPath, e);
+		}
+
+		Yaml yaml = new Yaml();
+
+		@SuppressWarnings("rawtypes")
+		Map yediConfiguration = (Map) yaml.load(configurationStream);
+
+		String loadingPolicy = (String) yediConfiguration.get("global-loading-policy");
+
+		if (loadingPolicy != null) {
+			if (!allowedLoadingPolicies.contains(loadingPolicy)) {
+				throw new ConfigurationException("Illegal value for global loading policy: " +
+						loadingPolicy);
+			} else if (loadingPolicy.equals(LoadingPolicy.LAZY.toString())) {
+				globalLoadingPolicy = LoadingPolicy.LAZY;
+			}
+		}
+
+		String backend = (String) yediConfiguration.get("injector-backend");
+
+		if (backend != null) {
+			if (!allowedInjectorBackends.contains(backend)) {
+				throw new ConfigurationException("Illegal value for injector backend: " +
+						backend + ". Allowed values are 'method-handles' and 'reflection'");
+			} else if (backend.equals(InjectorBackend.REFLECTION.toString())) {
+				injectorBackend = InjectorBackend.REFLECTION;
+			}
+		}
+
+		Object threads = yediConfiguration.get("startup-threads");
+
+		if (threads != null) {
+			if (!(threads instanceof Integer) || (Integer) threads < 1) {
+				throw new ConfigurationException("Illegal value for startup threads: " + threads +
+						". It must be a positive number");
+			}
+
+			startupThreads = (Integer) threads;
+		}
+
+		Object timeout = yediConfiguration.get("destroy-timeout");
+
+		if (timeout != null) {
+			if (!(timeout instanceof Integer) || (Integer) timeout < 1) {
+				throw new ConfigurationException("Illegal value for destroy timeout: " + timeout +
+						". It must be a positive number of milliseconds");
+			}
+
+			destroyTimeout = TimeUnit.MILLISECONDS.toNanos((Integer) timeout);
+		}
+
+		@SuppressWarnings("unchecked")
+		List<String> beanConfigLocations =
+		(List<String>) yediConfiguration.get("bean-configuration-locations");
+
+		if (beanConfigLocations == null || beanConfigLocations.isEmpty()) {
+			throw new ConfigurationException(
+					"No defined bean configuration locations found in Yedi configuration file");
+		}
+
+		Object snapshotSetting = yediConfiguration.get("descriptor-snapshot");
+
+		if (snapshotSetting != null && !(snapshotSetting instanceof Boolean)) {
+			throw new ConfigurationException("Illegal value for descriptor snapshot: " +
+					snapshotSetting + ". Allowed values are 'true' and 'false'");
+		}
+
+		Object overridingSetting = yediConfiguration.get("allow-bean-overriding");
+
+		if (overridingSetting != null && !(overridingSetting instanceof Boolean)) {
+			throw new ConfigurationException("Illegal value for allow bean overriding: " +
+					overridingSetting + ". Allowed values are 'true' and 'false'");
+		}
+
+		Object hotReloadSetting = yediConfiguration.get("hot-reload");
+
+		if (hotReloadSetting != null && !(hotReloadSetting instanceof Boolean)) {
+			throw new ConfigurationException("Illegal value for hot reload: " +
+					hotReloadSetting + ". Allowed values are 'true' and 'false'");
+		}
+
+		Object metricsSetting = yediConfiguration.get("metrics-listener");
+
+		if (metricsSetting != null) {
+			metricsListener = createMetricsListener(metricsSetting);
+		}
+
+		Object lazyLoadingSetting = yediConfiguration.get("lazy-descriptor-loading");
+
+		if (lazyLoadingSetting != null && !(lazyLoadingSetting instanceof Boolean)) {
+			throw new ConfigurationException("Illegal value for lazy descriptor loading: " +
+					lazyLoadingSetting + ". Allowed values are 'true' and 'false'");
+		}
+
+		this.beanConfigLocations = beanConfigLocations;
+		Map<String, BeanDescriptor> registeredBeans = Collections.emptyMap();
+
+		if (registry != null) {
+			if (Boolean.TRUE.equals(lazyLoadingSetting) || Boolean.TRUE.equals(snapshotSetting)) {
+				throw new ConfigurationException("Beans registered in code cannot be combined " +
+						"with lazy descriptor loading or descriptor snapshots");
+			}
+
+			registeredPlans = registerFactories(registry);
+			registeredBeans = new LinkedHashMap<String, BeanDescriptor>();
+
+			for (BeanPlan plan : registeredPlans.values()) {
+				registeredBeans.put(plan.getBeanName(), describe(plan));
+			}
+		}
+
+		if (Boolean.TRUE.equals(lazyLoadingSetting)) {
+			if (Boolean.TRUE.equals(hotReloadSetting) || Boolean.TRUE.equals(snapshotSetting)) {
+				throw new ConfigurationException("Lazy descriptor loading cannot be combined " +
+						"with hot reload or descriptor snapshots");
+			}
+
+			singletons = new SingletonRegistry();
+			state = createState(new BeanDescriptorContainer(new DescriptorIndex(
+					beanConfigLocations, Boolean.TRUE.equals(overridingSetting),
+					metricsListener)));
+
+			if (startEagerly) {
+				startEagerly();
+				state.graph = null;
+			}
+
+			return;
+		}
+
+		List<byte[]> beanConfigurations = readBeanConfigurations(beanConfigLocations);
+		BeanDescriptorContainer descriptorContainer = null;
+		DescriptorSnapshot snapshot = null;
+
+		//Reloads need the parsed files, so a container that reloads does not read the snapshot
+		if (Boolean.TRUE.equals(snapshotSetting)) {
+			String snapshotDirectory = (String) yediConfiguration.get("snapshot-directory");
+			File configurationFile = new File(yediConfigurationPath).getAbsoluteFile();
+			File snapshotFile = new File(snapshotDirectory != null ? new File(snapshotDirectory) :
+					configurationFile.getParentFile(), configurationFile.getName() + ".snapshot");
+
+			snapshot = new DescriptorSnapshot(snapshotFile, beanConfigLocations,
+					beanConfigurations, Boolean.TRUE.equals(overridingSetting));
+
+			if (!Boolean.TRUE.equals(hotReloadSetting)) {
+				descriptorContainer = snapshot.read();
+			}
+		}
+
+		configurationLoader = new BeanConfigurationLoader(beanConfigLocations, startupThreads,
+				Boolean.TRUE.equals(overridingSetting), registeredBeans);
+
+		if (descriptorContainer == null) {
+			descriptorContainer = configurationLoader.load(beanConfigurations,
+					metricsListener);
+
+			if (snapshot != null) {
+				snapshot.write(descriptorContainer);
+			}
+		}
+
+		if (!Boolean.TRUE.equals(hotReloadSetting)) {
+			configurationLoader.releaseFiles();
+		}
+
+		singletons = new SingletonRegistry();
+		state = createState(descriptorContainer);
+
+		if (startEagerly) {
+			startEagerly();
+
+			if (Boolean.TRUE.equals(hotReloadSetting)) {
+				watcher = new ConfigurationWatcher(this, beanConfigLocations);
+				watcher.start();
+			} else {
+				//Reloads and asynchronous lookups build the graph again if they need it
+				state.graph = null;
+			}
+		}
+	}
+
+	/**
+	 * Creates a child container, see {@link #createChild(String...)}.
+	 */
+	private BeanContainer(BeanContainer parent, List<String> beanConfigLocations) {
+		State parentState = parent.state;
+
+		if (parentState.descriptorContainer == null) {
+			throw new ConfigurationException("Only containers created from a Yedi " +
+					"configuration can have child containers");
+		}
+
+		this.parent = parent;
+		this.beanConfigLocations = beanConfigLocations;
+		globalLoadingPolicy = parent.globalLoadingPolicy;
+		injectorBackend = parent.injectorBackend;
+		startupThreads = parent.startupThreads;
+		destroyTimeout = parent.destroyTimeout;
+		metricsListener = parent.metricsListener;
+
+		BeanDescriptorContainer childDescriptors = new BeanConfigurationLoader(
+				beanConfigLocations, startupThreads, false).loadChild(
+						readBeanConfigurations(beanConfigLocations), metricsListener,
+						parentState.descriptorContainer.getBeans());
+
+		singletons = new SingletonRegistry();
+		state = createState(new BeanDescriptorContainer(new ChildDescriptorMap(parent,
+				childDescriptors.getBeans(), parentState.typeIndex)));
+		startEagerly();
+		state.graph = null;
+	}
+
+	/**
+	 * Creates a container from generated bean factories. No configuration is read and beans
+	 * are created without reflection.
+	 * 
+	 * @param registry The registry listing the factories of all beans.
+	 * @see BeanFactoryGenerator
+	 */
+	public BeanContainer(BeanFactoryRegistry registry) {
+		ConcurrentMap<String, BeanPlan> plans =
+				new ConcurrentHashMap<String, BeanPlan>(registerFactories(registry));
+		singletons = new SingletonRegistry();
+		state = new State(null, plans, TypeIndex.forPlans(plans), null);
+	}
+
+	/**
+	 * Creates the plans of the factories of a registry.
+	 * 
+	 * @return The plans by bean name, in the order they were registered in.
+	 */
+	private static Map<String, BeanPlan> registerFactories(BeanFactoryRegistry registry) {
+		final Map<String, BeanPlan> plans = new LinkedHashMap<String, BeanPlan>();
+
+		registry.registerFactories(new BeanFactoryRegistry.Registrar() {
+
+			@Override
+			public <T> void register(String beanName, String scope, Class<T> beanClass,
+					BeanFactory<? extends T> factory) {
+				plans.put(beanName, new FactoryBeanPlan(beanName, scope, beanClass, factory,
+						null));
+			}
+
+			@Override
+			public <T> void register(String beanName, String scope, Class<T> beanClass,
+					BeanFactory<? extends T> factory, String destroyMethod) {
+				plans.put(beanName, new FactoryBeanPlan(beanName, scope, beanClass, factory,
+						BeanPlan.findCallback(beanName, beanClass, destroyMethod)));
+			}
+
+			@Override
+			public <T> void register(String beanName, String scope, Class<T> beanClass,
+					BeanFactory<? extends T> factory, int poolSize, long idleTimeout,
+					String destroyMethod) {
+				if (poolSize < 0 || idleTimeout < 0) {
+					throw new ConfigurationException("Illegal pool size " + poolSize +
+							" or idle timeout " + idleTimeout + " of bean " + beanName +
+							". They must not be negative");
+				}
+
+				plans.put(beanName, new FactoryBeanPlan(beanName, scope, beanClass, factory,
+						poolSize, idleTimeout, destroyMethod == null ? null :
+							BeanPlan.findCallback(beanName, beanClass, destroyMethod)));
+			}
+		});
+
+		return plans;
+	}
+
+	/**
+	 * Creates the descriptor that stands for a bean registered in code among the descriptors
+	 * of the configuration. It only names the class and the scope of the bean, since the bean
+	 * is never compiled.
+	 */
+	private static BeanDescriptor describe(BeanPlan plan) {
+		BeanDescriptor descriptor = new BeanDescriptor();
+		descriptor.setBeanName(plan.getBeanName());
+		descriptor.setType(plan.getBeanClass().getName());
+		descriptor.setScope(plan.getScopeName());
+
+		return descriptor;
+	}
+
+	/**
+	 * Instantiates the metrics listener named in the Yedi configuration.
+	 */
+	private static BeanMetricsListener createMetricsListener(Object className) {
+		if (!(className instanceof String)) {
+			throw new ConfigurationException("Illegal value for metrics listener: " + className +
+					". It must be the name of a class");
+		}
+
+		try {
+			Object listener = Class.forName((String) className).getConstructor().newInstance();
+
+			if (!(listener instanceof BeanMetricsListener)) {
+				throw new ConfigurationException("Metrics listener " + className +
+						" does not implement " + BeanMetricsListener.class.getName());
+			}
+
+			return (BeanMetricsListener) listener;
+		} catch (ClassNotFoundException e) {
+			throw new ConfigurationException("Could not find metrics listener class " +
+					className, e);
+		} catch (ReflectiveOperationException e) {
+			throw new ConfigurationException("Could not create metrics listener " + className +
+					". Does it have a public constructor without parameters?", e);
+		}
+	}
+
+	/**
+	 * Reads the contents of all bean configuration files.
+	 */
+	private static List<byte[]> readBeanConfigurations(List<String> beanConfigLocations) {
+		List<byte[]> beanConfigurations = new ArrayList<byte[]>(beanConfigLocations.size());
+
+		for (String beanConfigLocation : beanConfigLocations) {
+			try {
+				beanConfigurations.add(Files.readAllBytes(new File(beanConfigLocation).toPath()));
+			} catch (NoSuchFileException e) {
+				throw new ConfigurationException("Could not find bean configuration on path " +
+						beanConfigLocation, e);
+			} catch (IOException e) {
+				throw new ConfigurationException("Could not read bean configuration on path " +
+						beanConfigLocation, e);
+			}
+		}
+
+		return beanConfigurations;
+	}
+
+	/**
+	 * Creates the state of a configuration loaded from YAML, indexing its beans by type.
+	 */
+	private State createState(BeanDescriptorContainer descriptorContainer) {
+		Map<String, BeanDescriptor> descriptorMap = descriptorContainer.getBeans();
+		TypeIndex typeIndex;
+
+		if (descriptorMap instanceof DescriptorIndex) {
+			typeIndex = ((DescriptorIndex) descriptorMap).getTypeIndex();
+		} else if (descriptorMap instanceof ChildDescriptorMap) {
+			typeIndex = ((ChildDescriptorMap) descriptorMap).getTypeIndex();
+		} else {
+			typeIndex = TypeIndex.forDescriptors(descriptorMap);
+		}
+
+		//Registered beans are never compiled, and keep their plans across reloads
+		return new State(descriptorContainer, new ConcurrentHashMap<String, BeanPlan>(
+				registeredPlans), typeIndex, new BeanPlanCompiler(descriptorMap, typeIndex,
+						globalLoadingPolicy, injectorBackend.getInjectorFactory()));
+	}
+
+	/**
+	 * Creates every singleton that is not loaded lazily, along with everything it depends on.
+	 * The dependency graph is checked for cycles first, then independent singletons are created
+	 * in parallel on up to startup-threads threads.
+	 */
+	private void startEagerly() {
+		Map<String, BeanDescriptor> descriptorMap = state.descriptorContainer.getBeans();
+		List<String> eagerSingletons = new ArrayList<String>();
+
+		if (descriptorMap instanceof DescriptorIndex) {
+			//Only the eager singletons and the beans they need are parsed
+			DescriptorIndex index = (DescriptorIndex) descriptorMap;
+			eagerSingletons = index.getEagerSingletons(globalLoadingPolicy);
+			index.load(eagerSingletons);
+		} else {
+			if (descriptorMap instanceof ChildDescriptorMap) {
+				//The singletons of the parent already exist
+				descriptorMap = ((ChildDescriptorMap) descriptorMap).getLocalBeans();
+			}
+
+			for (Entry<String, BeanDescriptor> descriptorEntry : descriptorMap.entrySet()) {
+				BeanDescriptor descriptor = descriptorEntry.getValue();
+
+				if (descriptor.getBeanScope() == BeanScope.SINGLETON &&
+						!descriptor.isLazy(globalLoadingPolicy)) {
+					eagerSingletons.add(descriptorEntry.getKey());
+				}
+			}
+		}
+
+		if (!eagerSingletons.isEmpty()) {
+			DependencyGraph graph = createGraph(state);
+			state.graph = graph;
+			startupReport = new EagerStartup(this, graph, startupThreads).run(eagerSingletons);
+		}
+	}
+
+	/**
+	 * Returns the report of the eager startup of this container, which shows how long every
+	 * eagerly loaded singleton took to create and which chain of singletons dominated startup.
+	 * 
+	 * @return The startup report, or null if no singleton was created eagerly.
+	 */
+	public StartupReport getStartupReport() {
+		return startupReport;
+	}
+
+	/**
+	 * Sets the listener told about the beans this container creates and fetches from now on.
+	 * To also get the parse times of the configuration files, set the listener through the
+	 * metrics-listener setting of the Yedi configuration instead.
+	 * 
+	 * @param metricsListener The listener, or null to stop collecting metrics.
+	 */
+	public void setMetricsListener(BeanMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * @return The metrics listener of this container, or null if it has none.
+	 */
+	public BeanMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * Reloads the bean configuration files and rebuilds the beans whose definitions changed,
+	 * along with every bean that references them, directly or through other beans. Only the
+	 * files that changed are parsed again, and all other beans keep their plans and singletons.
+	 * <p>
+	 * The new configuration is validated and the plans of the rebuilt beans are compiled
+	 * before it replaces the old one in a single step, so a broken configuration leaves the
+	 * old one in place and every lookup sees either the old or the new configuration. The
+	 * replaced singletons and the idle instances of replaced pooled beans are then destroyed as
+	 * they are when the container closes, and the rebuilt singletons that are not lazy are
+	 * created right after. Borrowed instances of replaced pooled beans are destroyed when they
+	 * are returned.
+	 * <p>
+	 * Containers whose configuration sets hot-reload to true call this method whenever one of
+	 * their bean configuration files changes.
+	 * 
+	 * @return The names of the rebuilt beans, including the beans that were removed.
+	 * @throws BeanLoadingException If destroy callbacks of replaced instances failed or timed
+	 * out, once the new configuration is in place.
+	 */
+	public Set<String> reload() {
+		if (parent != null) {
+			throw new ConfigurationException("Child containers cannot be reloaded");
+		}
+
+		if (state.descriptorContainer != null &&
+				state.descriptorContainer.getBeans() instanceof DescriptorIndex) {
+			throw new ConfigurationException("Containers that load bean descriptors lazily " +
+					"cannot be reloaded");
+		}
+
+		if (configurationLoader == null) {
+			throw new ConfigurationException("Only containers created from a Yedi " +
+					"configuration can be reloaded");
+		}
+
+		reloadLock.lock();
+
+		try {
+			if (closed) {
+				throw new ConfigurationException("Closed containers cannot be reloaded");
+			}
+
+			BeanDescriptorContainer newDescriptorContainer =
+					configurationLoader.reload(readBeanConfigurations(beanConfigLocations),
+							metricsListener);
+
+			if (newDescriptorContainer == null) {
+				return Collections.emptySet();
+			}
+
+			State oldState = state;
+			Map<String, BeanDescriptor> oldDescriptorMap = oldState.descriptorContainer.getBeans();
+			Map<String, BeanDescriptor> newDescriptorMap = newDescriptorContainer.getBeans();
+			Set<String> changedBeans = new LinkedHashSet<String>();
+
+			for (Entry<String, BeanDescriptor> descriptorEntry : newDescriptorMap.entrySet()) {
+				BeanDescriptor oldDescriptor = oldDescriptorMap.get(descriptorEntry.getKey());
+
+				//Descriptors of files that did not change are the very same objects
+				if (oldDescriptor != descriptorEntry.getValue() && (oldDescriptor == null ||
+						!oldDescriptor.definesSameBean(descriptorEntry.getValue()))) {
+					changedBeans.add(descriptorEntry.getKey());
+				}
+			}
+
+			for (String beanName : oldDescriptorMap.keySet()) {
+				if (!newDescriptorMap.containsKey(beanName)) {
+					changedBeans.add(beanName);
+				}
+			}
+
+			State newState = createState(newDescriptorContainer);
+			DependencyGraph oldGraph = oldState.graph != null ? oldState.graph :
+				new DependencyGraph(oldDescriptorMap, oldState.typeIndex, globalLoadingPolicy);
+			DependencyGraph newGraph = new DependencyGraph(newDescriptorMap, newState.typeIndex,
+					globalLoadingPolicy);
+			//The old graph had no cycles, so a new one has to go through a changed bean
+			if (oldState.graph != null) {
+				newGraph.checkForCycles(changedBeans);
+			} else {
+				newGraph.checkForCycles();
+			}
+
+			Set<String> rebuiltBeans = new LinkedHashSet<String>();
+			List<String> pending = new ArrayList<String>(changedBeans);
+
+			while (!pending.isEmpty()) {
+				String beanName = pending.remove(pending.size() - 1);
+
+				if (rebuiltBeans.add(beanName)) {
+					pending.addAll(oldGraph.getReferrers(beanName));
+					pending.addAll(newGraph.getReferrers(beanName));
+				}
+			}
+
+			newState.graph = newGraph;
+
+			for (String beanName : rebuiltBeans) {
+				BeanDescriptor descriptor = newDescriptorMap.get(beanName);
+
+				if (descriptor != null) {
+					newState.plans.put(beanName, newState.planCompiler.compile(beanName,
+							descriptor));
+				}
+			}
+
+			oldState.retired = true;
+
+			for (Entry<String, BeanPlan> planEntry : oldState.plans.entrySet()) {
+				if (!rebuiltBeans.contains(planEntry.getKey())) {
+					newState.plans.put(planEntry.getKey(), planEntry.getValue());
+				}
+			}
+
+			state = newState;
+			OrderedShutdown shutdown = new OrderedShutdown(startupThreads, destroyTimeout);
+
+			for (String beanName : rebuiltBeans) {
+				BeanPlan oldPlan = oldState.plans.get(beanName);
+
+				if (oldPlan != null) {
+					Object singleton = singletons.remove(oldPlan);
+					BeanPool pool = pools.remove(oldPlan);
+					Set<String> dependencies = oldGraph.getSingletonDependencies(beanName);
+
+					if (singleton != null) {
+						shutdown.add(beanName, oldPlan, singleton, dependencies);
+					}
+
+					if (pool != null) {
+						int instance = 0;
+
+						for (Object bean : pool.close()) {
+							shutdown.add(beanName + "#" + ++instance, oldPlan, bean,
+									dependencies);
+						}
+					}
+				}
+
+				BeanHandle<?> handle = handles.get(beanName);
+
+				if (handle != null) {
+					handle.invalidate();
+				}
+			}
+
+			//The replaced instances are destroyed before their replacements are created
+			ShutdownReport report = shutdown.run();
+
+			//Singletons that were not rebuilt still exist, so only the rebuilt ones are created
+			for (String beanName : rebuiltBeans) {
+				BeanDescriptor descriptor = newDescriptorMap.get(beanName);
+
+				if (descriptor != null && descriptor.getBeanScope() == BeanScope.SINGLETON &&
+						!descriptor.isLazy(globalLoadingPolicy)) {
+					getBean(beanName);
+				}
+			}
+
+			checkShutdown(report, "Their destroy callbacks failed during a reload");
+
+			return Collections.unmodifiableSet(rebuiltBeans);
+		} finally {
+			reloadLock.unlock();
+		}
+	}
+
+	/**
+	 * Creates a child container that defines only the beans of the given bean configuration
+	 * files, and serves every other bean from this container. A bean of the child with the
+	 * name of a bean of this container overrides it in the child. The child also creates its
+	 * own instances of the beans of this container that reference an overridden bean, directly
+	 * or through other beans, and of the beans that get a collection the child adds beans to.
+	 * All other beans, including their singletons, are shared with this container.
+	 * <p>
+	 * An alias in the files of the child names a bean of this container if no bean of the
+	 * child uses its anchor. The anchor is then the name of the bean. The loading policies,
+	 * the injector backend and the metrics listener of this container carry over to the child.
+	 * <p>
+	 * Creating the first child builds the dependency graph of this container, which is kept
+	 * for the children created later. Creating a child then only costs as much as its own
+	 * files and the beans they affect. Child containers cannot be reloaded, and they are not
+	 * updated when this container reloads.
+	 * 
+	 * @param beanConfigLocations The paths of the bean configuration files of the child.
+	 * @return The child container.
+	 */
+	public BeanContainer createChild(String... beanConfigLocations) {
+		return new BeanContainer(this, Arrays.asList(beanConfigLocations));
+	}
+
+	/**
+	 * @return The container this container was created from, or null if it is not a child
+	 * container.
+	 */
+	public BeanContainer getParent() {
+		return parent;
+	}
+
+	/**
+	 * Closes the container. The singletons of the container and the idle instances of its
+	 * pooled beans are destroyed: their destroy method is called, or close() if they implement
+	 * AutoCloseable and have no destroy method. Hot reloading and the eviction of idle pooled
+	 * instances stop.
+	 * <p>
+	 * A bean is destroyed only after every bean that depends on it, while independent beans
+	 * are destroyed in parallel on up to startup-threads threads. With a single thread, and in
+	 * containers created from bean factories, which have no dependency graph, beans are
+	 * destroyed one after another in the reverse order of their creation. Every destroy
+	 * callback gets destroy-timeout milliseconds to finish, ten seconds by default, after which
+	 * it is interrupted and the shutdown goes on without it.
+	 * <p>
+	 * Pooled instances that are borrowed at the time are destroyed when they are returned.
+	 * Beans cannot be created once the container is closed. A child container only destroys
+	 * the beans it defines itself, and should be closed before its parent. Closing a closed
+	 * container has no effect.
+	 * 
+	 * @throws BeanLoadingException If destroy callbacks failed or timed out, once all beans
+	 * were destroyed. The failures of the callbacks are attached as the cause and as suppressed
+	 * exceptions.
+	 * @see #getShutdownReport()
+	 */
+	@Override
+	public void close() {
+		reloadLock.lock();
+
+		try {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+		} finally {
+			reloadLock.unlock();
+		}
+
+		if (watcher != null) {
+			watcher.stop();
+		}
+
+		Map<BeanPlan, Object> existingSingletons = singletons.getSingletons();
+		Map<BeanPool, List<Object>> idleBeans = new LinkedHashMap<BeanPool, List<Object>>();
+		int callbacks = 0;
+
+		for (Entry<BeanPlan, Object> singleton : existingSingletons.entrySet()) {
+			if (singleton.getKey().hasDestroyCallback(singleton.getValue())) {
+				callbacks++;
+			}
+		}
+
+		for (BeanPool pool : pools.values()) {
+			List<Object> poolBeans = pool.close();
+			idleBeans.put(pool, poolBeans);
+
+			for (Object bean : poolBeans) {
+				if (pool.getPlan().hasDestroyCallback(bean)) {
+					callbacks++;
+				}
+			}
+		}
+
+		State currentState = state;
+		DependencyGraph graph = null;
+
+		//The graph is only worth building if callbacks can run in parallel
+		if (currentState.descriptorContainer != null && startupThreads > 1 && callbacks > 1) {
+			//The graph of an index only covers the beans that were parsed when it was built
+			graph = currentState.graph != null && !(currentState.descriptorContainer.getBeans()
+					instanceof DescriptorIndex) ? currentState.graph : createGraph(currentState);
+		}
+
+		OrderedShutdown shutdown = new OrderedShutdown(startupThreads, destroyTimeout);
+		//Singletons are created after the singletons they depend on, so without a graph every
+		//bean is destroyed before the bean created right before it
+		Set<String> previousBean = Collections.emptySet();
+		//The graph does not know what registered beans depend on, so they wait for every
+		//singleton created before them
+		List<String> createdBeans = new ArrayList<String>();
+
+		for (Entry<BeanPlan, Object> singleton : existingSingletons.entrySet()) {
+			String beanName = singleton.getKey().getBeanName();
+			Set<String> dependencies = previousBean;
+
+			if (graph != null) {
+				dependencies = registeredPlans.get(beanName) == singleton.getKey() ?
+						new LinkedHashSet<String>(createdBeans) :
+							graph.getSingletonDependencies(beanName);
+			}
+
+			shutdown.add(beanName, singleton.getKey(), singleton.getValue(), dependencies);
+			previousBean = Collections.singleton(beanName);
+			createdBeans.add(beanName);
+		}
+
+		for (Entry<BeanPool, List<Object>> poolBeans : idleBeans.entrySet()) {
+			BeanPlan plan = poolBeans.getKey().getPlan();
+			Set<String> dependencies = previousBean;
+			int instance = 0;
+
+			if (graph != null) {
+				dependencies = registeredPlans.get(plan.getBeanName()) == plan ?
+						new LinkedHashSet<String>(createdBeans) :
+							graph.getSingletonDependencies(plan.getBeanName());
+			}
+
+			for (Object bean : poolBeans.getValue()) {
+				shutdown.add(plan.getBeanName() + "#" + ++instance, plan, bean, dependencies);
+			}
+		}
+
+		ShutdownReport report;
+
+		try {
+			report = shutdown.run();
+			shutdownReport = report;
+		} finally {
+			singletons.clear();
+			pools.clear();
+
+			for (BeanHandle<?> handle : handles.values()) {
+				handle.invalidate();
+			}
+		}
+
+		checkShutdown(report, "See the shutdown report for details");
+	}
+
+	/**
+	 * @param failureDetails The end of the message when destroy callbacks failed.
+	 * @throws BeanLoadingException If destroy callbacks failed or timed out during a shutdown.
+	 * The failures of the callbacks are attached as the cause and as suppressed exceptions.
+	 */
+	private static void checkShutdown(ShutdownReport report, String failureDetails) {
+		if (!report.getFailures().isEmpty() || !report.getTimedOutBeans().isEmpty()) {
+			List<String> failedBeans = new ArrayList<String>(report.getFailures().keySet());
+			failedBeans.addAll(report.getTimedOutBeans());
+			BeanLoadingException exception = null;
+
+			for (Throwable failure : report.getFailures().values()) {
+				if (exception == null) {
+					exception = new BeanLoadingException("Could not destroy beans " +
+							failedBeans + ": " + failureDetails, failure);
+				} else {
+					exception.addSuppressed(failure);
+				}
+			}
+
+			throw exception != null ? exception : new BeanLoadingException(
+					"Could not destroy beans " + failedBeans + ": Their destroy callbacks " +
+					"timed out");
+		}
+	}
+
+	/**
+	 * Returns the report of the shutdown of this container, which shows how long the destroy
+	 * callback of every bean ran and which callbacks failed or timed out.
+	 * 
+	 * @return The shutdown report, or null if the container was not closed yet.
+	 */
+	public ShutdownReport getShutdownReport() {
+		return shutdownReport;
+	}
+
+	/**
+	 * Sets how long each destroy callback may run when the container closes. Containers
+	 * created from a Yedi configuration take it from the destroy-timeout setting.
+	 * 
+	 * @param timeout The timeout, which must be positive.
+	 * @param unit The unit of the timeout.
+	 */
+	public void setDestroyTimeout(long timeout, TimeUnit unit) {
+		if (timeout < 1) {
+			throw new IllegalArgumentException("Illegal destroy timeout: " + timeout +
+					". It must be positive");
+		}
+
+		destroyTimeout = unit.toNanos(timeout);
+	}
+
+	/**
+	 * Fetches a bean from the container. The bean will have its fields injected according to the
+	 * configuration.
+	 * 
+	 * @param beanName The name of the bean to fetch.
+	 * @return An object with fields populated according to bean configuration.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getBean(String beanName) {
+		return (T) getBean(getPlan(beanName));
+	}
+
+	/**
+	 * Fetches a bean from the container by its plan.
+	 * 
+	 * @param plan The plan of the bean.
+	 * @return The bean.
+	 */
+	Object getBean(BeanPlan plan) {
+		if (parent != null && state.plans.get(plan.getBeanName()) != plan) {
+			//The bean is defined by the parent, which also holds its singleton
+			return parent.getBean(plan);
+		}
+
+		//If the scope of the bean is "singleton" fetch it from the singleton registry, which
+		//creates it only if it doesn't exist yet.
+		if (plan.getScope() == BeanScope.SINGLETON) {
+			Object bean = singletons.get(plan);
+			BeanMetricsListener listener = metricsListener;
+
+			if (listener != null) {
+				if (bean != null) {
+					listener.singletonHit(plan.getBeanName());
+				} else {
+					listener.singletonMiss(plan.getBeanName());
+				}
+			}
+
+			return bean != null ? bean : singletons.getOrCreate(plan, this);
+		}
+
+		if (plan.getScope() == BeanScope.CUSTOM) {
+			return plan.getCustomScope().get(plan.getBeanName(), plan.getFactory(), this);
+		}
+
+		if (plan.getScope() == BeanScope.POOLED) {
+			throw new BeanLoadingException("Could not load bean " + plan.getBeanName() +
+					": Bean " + plan.getBeanName() +
+					" is pooled and has to be borrowed with borrowBean");
+		}
+
+		//The scope is 'prototype', a new instance needs to be created from the bean's plan.
+		return createBean(plan);
+	}
+
+	/**
+	 * Fetches a bean without blocking the caller. The bean is created in the background, once
+	 * every singleton it depends on exists. Those singletons are requested the same way, so
+	 * independent dependencies are created concurrently. Concurrent requests for a singleton
+	 * that does not exist yet get the same future.
+	 * <p>
+	 * Beans are created on virtual threads if the Java runtime has them, and on a pool of daemon
+	 * threads otherwise, unless another executor is set with
+	 * {@link #setAsyncExecutor(Executor)}. Beans in registered scopes, such as 'thread', depend
+	 * on the calling thread, so they are fetched right away.
+	 * 
+	 * @param beanName The name of the bean to fetch.
+	 * @return A future completed with the bean, or completed exceptionally if the bean could not
+	 * be created.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> getBeanAsync(String beanName) {
+		CompletableFuture<Object> future;
+
+		try {
+			if (state.isInherited(beanName)) {
+				return parent.getBeanAsync(beanName);
+			}
+
+			BeanPlan plan = getPlan(beanName);
+
+			if (plan.getScope() == BeanScope.CUSTOM) {
+				future = CompletableFuture.completedFuture(getBean(plan));
+			} else {
+				future = asyncLoader.load(plan);
+			}
+		} catch (RuntimeException e) {
+			future = new CompletableFuture<Object>();
+			future.completeExceptionally(e);
+		}
+
+		return (CompletableFuture<T>) (CompletableFuture<?>) future;
+	}
+
+	/**
+	 * Sets the executor beans fetched with {@link #getBeanAsync(String)} are created on.
+	 * 
+	 * @param executor The executor, or null to use the default one.
+	 */
+	public void setAsyncExecutor(Executor executor) {
+		asyncLoader.setExecutor(executor);
+	}
+
+	/**
+	 * @param plan The plan of a singleton.
+	 * @return The singleton, or null if it was not created yet.
+	 */
+	Object getSingleton(BeanPlan plan) {
+		if (parent != null && state.plans.get(plan.getBeanName()) != plan) {
+			return parent.getSingleton(plan);
+		}
+
+		return singletons.get(plan);
+	}
+
+	/**
+	 * Returns the singletons that have to exist before a bean can be created. The dependency
+	 * graph is built and checked for cycles the first time it is needed.
+	 * 
+	 * @param beanName The name of a bean.
+	 * @return The names of the singletons, or an empty set if the beans of the container were
+	 * not defined in YAML.
+	 */
+	Set<String> getSingletonDependencies(String beanName) {
+		State currentState = state;
+
+		if (currentState.descriptorContainer == null) {
+			return Collections.emptySet();
+		}
+
+		Map<String, BeanDescriptor> descriptorMap = currentState.descriptorContainer.getBeans();
+
+		if (descriptorMap instanceof DescriptorIndex) {
+			((DescriptorIndex) descriptorMap).load(Collections.singleton(beanName));
+		}
+
+		return getGraph(currentState).getSingletonDependencies(beanName);
+	}
+
+	/**
+	 * Returns the dependency graph of the beans this container defines itself. A container
+	 * that loads bean descriptors on demand parses all of them first. The graph is kept, so
+	 * later calls and the child containers created afterwards share it.
+	 * 
+	 * @return The dependency graph.
+	 */
+	DependencyGraph getDependencyGraph() {
+		State currentState = state;
+		Map<String, BeanDescriptor> descriptorMap = currentState.descriptorContainer.getBeans();
+
+		if (descriptorMap instanceof DescriptorIndex) {
+			DescriptorIndex index = (DescriptorIndex) descriptorMap;
+			index.load(index.keySet());
+		}
+
+		return getGraph(currentState);
+	}
+
+	/**
+	 * Returns the dependency graph of a state, building it and checking it for cycles if it
+	 * was not built yet.
+	 */
+	private DependencyGraph getGraph(State currentState) {
+		Map<String, BeanDescriptor> descriptorMap = currentState.descriptorContainer.getBeans();
+		//The graph only covers the parsed beans, so it is built again after more were parsed
+		DescriptorIndex index = descriptorMap instanceof DescriptorIndex ?
+				(DescriptorIndex) descriptorMap : null;
+		DependencyGraph graph = currentState.graph;
+
+		if (graph == null || (index != null &&
+				graph.getBeanNames().size() != index.getLoadedCount())) {
+			reloadLock.lock();
+
+			try {
+				graph = currentState.graph;
+
+				if (graph == null || (index != null &&
+						graph.getBeanNames().size() != index.getLoadedCount())) {
+					graph = createGraph(currentState);
+					graph.checkForCycles();
+					currentState.graph = graph;
+				}
+			} finally {
+				reloadLock.unlock();
+			}
+		}
+
+		return graph;
+	}
+
+	/**
+	 * Builds the dependency graph of a state. The graph of a container that loads bean
+	 * descriptors on demand only covers the parsed beans, and the graph of a child container
+	 * only the beans the child defines.
+	 */
+	private DependencyGraph createGraph(State currentState) {
+		Map<String, BeanDescriptor> descriptorMap = currentState.descriptorContainer.getBeans();
+
+		if (descriptorMap instanceof DescriptorIndex) {
+			return new DependencyGraph(((DescriptorIndex) descriptorMap).getLoaded(),
+					currentState.typeIndex, globalLoadingPolicy);
+		} else if (descriptorMap instanceof ChildDescriptorMap) {
+			return new DependencyGraph(((ChildDescriptorMap) descriptorMap).getLocalBeans(),
+					descriptorMap, currentState.typeIndex, globalLoadingPolicy);
+		}
+
+		return new DependencyGraph(descriptorMap, currentState.typeIndex, globalLoadingPolicy);
+	}
+
+	/**
+	 * Returns a handle for fetching a bean repeatedly. The handle resolves the bean once, so
+	 * fetching a singleton through it is a single volatile read, without looking the bean up by
+	 * name. Every call for the same bean returns the same handle.
+	 * 
+	 * @param beanName The name of the bean.
+	 * @return The handle of the bean.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> BeanHandle<T> handle(String beanName) {
+		BeanHandle<?> handle = handles.get(beanName);
+
+		if (handle == null) {
+			//Fail early for unknown beans
+			getPlan(beanName);
+
+			BeanHandle<?> newHandle = new BeanHandle<Object>(this, beanName);
+			handle = handles.putIfAbsent(beanName, newHandle);
+
+			if (handle == null) {
+				handle = newHandle;
+			}
+		}
+
+		return (BeanHandle<T>) handle;
+	}
+
+	/**
+	 * Returns a handle for fetching the only bean of a type repeatedly.
+	 * 
+	 * @param type A class or interface implemented by exactly one bean of the container.
+	 * @return The handle of the bean.
+	 * @see #handle(String)
+	 */
+	public <T> BeanHandle<T> handle(Class<T> type) {
+		return handle(getBeanName(type));
+	}
+
+	/**
+	 * Fetches the only bean of a type. Beans are looked up in an index built when the
+	 * configuration is loaded, so no other bean is created.
+	 * 
+	 * @param type A class or interface implemented by exactly one bean of the container.
+	 * @return The bean.
+	 */
+	public <T> T getBean(Class<T> type) {
+		return type.cast(getBean(getPlan(getBeanName(type))));
+	}
+
+	/**
+	 * Fetches all beans of a type, in the order they are defined in. Beans are looked up in an
+	 * index built when the configuration is loaded, so no other bean is created. Pooled beans
+	 * have to be borrowed and are left out.
+	 * 
+	 * @param type A class or interface.
+	 * @return The beans of that type by bean name, or an empty map if there are none.
+	 */
+	public <T> Map<String, T> getBeansOfType(Class<T> type) {
+		List<String> beanNames = state.typeIndex.getBeanNames(type);
+		Map<String, T> beans = new LinkedHashMap<String, T>(2 * beanNames.size());
+
+		for (String beanName : beanNames) {
+			BeanPlan plan = getPlan(beanName);
+
+			if (plan.getScope() != BeanScope.POOLED) {
+				beans.put(beanName, type.cast(getBean(plan)));
+			}
+		}
+
+		return beans;
+	}
+
+	/**
+	 * @return The name of the only bean of a type.
+	 */
+	private String getBeanName(Class<?> type) {
+		List<String> beanNames = state.typeIndex.getBeanNames(type);
+
+		if (beanNames.isEmpty()) {
+			throw new BeanLoadingException("Could not find bean of type " + type.getName() +
+					": No bean has that type");
+		}
+
+		if (beanNames.size() > 1) {
+			throw new BeanLoadingException("Could not find bean of type " + type.getName() +
+					": Beans " + beanNames.get(0) + " and " + beanNames.get(1) +
+					" both have that type");
+		}
+
+		return beanNames.get(0);
+	}
+
+	/**
+	 * Borrows a bean from the pool of a pooled bean. The bean belongs to the caller until the
+	 * returned handle is closed, which returns the bean to the pool. If all instances of the
+	 * bean are borrowed, the caller waits until one is returned.
+	 * 
+	 * @param beanName The name of a bean with the scope 'pooled'.
+	 * @return The handle of the borrowed bean.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> PooledBean<T> borrowBean(String beanName) {
+		if (state.isInherited(beanName)) {
+			return parent.borrowBean(beanName);
+		}
+
+		BeanPlan plan = getPlan(beanName);
+		BeanPool pool = pools.get(plan);
+
+		if (pool == null) {
+			if (plan.getScope() != BeanScope.POOLED) {
+				throw new BeanLoadingException("Could not load bean " + beanName + ": Bean " +
+						beanName + " is not pooled");
+			}
+
+			BeanPool newPool = new BeanPool(this, plan);
+			pool = pools.putIfAbsent(plan, newPool);
+
+			if (pool == null) {
+				pool = newPool;
+			}
+		}
+
+		return (PooledBean<T>) (PooledBean<?>) pool.borrow();
+	}
+
+	/**
+	 * Creates a new instance of a bean from its creation plan.
+	 * 
+	 * @param plan The plan of the bean.
+	 * @return A new, fully injected bean.
+	 */
+	Object createBean(BeanPlan plan) {
+		String exceptionMessagePrefix = "Could not load bean " + plan.getBeanName() + ": ";
+
+		if (closed) {
+			throw new BeanLoadingException(exceptionMessagePrefix + "The container is closed");
+		}
+
+		BeanMetricsListener listener = metricsListener;
+		FlightRecorderEvents.BeanCreation event = FlightRecorderEvents.beginCreation(plan);
+
+		try {
+			if (listener == null) {
+				return plan.createBean(this);
+			}
+
+			long start = System.nanoTime();
+			Object bean = plan.createBean(this);
+			listener.beanCreated(plan.getBeanName(), System.nanoTime() - start);
+
+			return bean;
+		} catch (IllegalAccessException e) {
+			throw new BeanLoadingException(exceptionMessagePrefix + "No access rights", e);
+		} catch (InstantiationException e) {
+			throw new BeanLoadingException(exceptionMessagePrefix +
+					"Cannot create new instance of class " + plan.getBeanClass().getName() +
+					". Did you provide proper parameters for the constructor or a " +
+					"default constructor?", e);
+		} catch (IllegalArgumentException e) {
+			throw new BeanLoadingException(exceptionMessagePrefix +
+					"see cause exception for more information", e);
+		} catch (InvocationTargetException e) {
+			throw new BeanLoadingException(exceptionMessagePrefix +
+					"Could not invoke constructor, setter for a property or init method", e);
+		} finally {
+			FlightRecorderEvents.endCreation(event);
+		}
+	}
+
+	/**
+	 * Creates a proxy for a lazily loaded bean. The bean is fetched from the container the first
+	 * time a method is called on the proxy, and every later call goes straight to it. Interfaces
+	 * can always be proxied, classes only if they are not final and have a no-argument
+	 * constructor that is not private.
+	 * 
+	 * @param beanName The name of the bean.
+	 * @param type The interface or class the proxy should implement or extend.
+	 * @return A proxy for the bean.
+	 */
+	public <T> T getLazyBean(String beanName, Class<T> type) {
+		//Fail early for unknown beans
+		getPlan(beanName);
+
+		return type.cast(LazyProxyFactory.getInstance().createProxy(type,
+				new LazyTarget(this, beanName, null, null)));
+	}
+
+	/**
+	 * Returns the creation plan for a bean. Plans of beans defined in YAML are compiled on
+	 * first use.
+	 * 
+	 * @param beanName The name of the bean.
+	 * @return The plan for creating the bean.
+	 */
+	BeanPlan getPlan(String beanName) {
+		State currentState = state;
+		BeanPlan plan = currentState.plans.get(beanName);
+
+		if (plan == null) {
+			if (currentState.isInherited(beanName)) {
+				return parent.getPlan(beanName);
+			}
+
+			BeanDescriptor descriptor = currentState.getDescriptor(beanName);
+
+			if (descriptor == null) {
+				throw new BeanLoadingException("Could not load bean " + beanName +
+						": Definition for bean " + beanName +
+						" was not found in any of the configuration files.");
+			}
+
+			//Concurrent callers may compile the same plan, but all of them use the first one
+			BeanPlan compiledPlan = currentState.planCompiler.compile(beanName, descriptor);
+			plan = currentState.plans.putIfAbsent(beanName, compiledPlan);
+
+			if (plan == null) {
+				plan = compiledPlan;
+			}
+
+			if (currentState.retired) {
+				//A reload may have copied the plans before this one was added. Wait for it to
+				//finish and use the plan of the new configuration, so no bean gets two plans.
+				reloadLock.lock();
+				reloadLock.unlock();
+
+				return getPlan(beanName);
+			}
+		}
+
+		return plan;
+	}
+
+	/**
+	 * @param beanName The name of a bean.
+	 * @return The descriptor of the bean, or null if the bean is not defined in YAML.
+	 */
+	BeanDescriptor getDescriptor(String beanName) {
+		return state.getDescriptor(beanName);
+	}
+
+	/**
+	 * @return The names of all beans defined in the container.
+	 */
+	Set<String> getBeanNames() {
+		State currentState = state;
+
+		if (currentState.descriptorContainer == null) {
+			return Collections.unmodifiableSet(currentState.plans.keySet());
+		}
+
+		return Collections.unmodifiableSet(currentState.descriptorContainer.getBeans().keySet());
+	}
+
+	/**
+	 * Creates a proxy for a lazily loaded bean injected into a field. Once the proxy is first
+	 * used, the field is set to the real bean.
+	 * 
+	 * @param field The field the proxy is injected into.
+	 * @param bean The bean owning the field.
+	 * @param proxiedBeanName The name of the lazily loaded bean.
+	 * @return A proxy for the bean.
+	 */
+	Object createProxy(Field field, Object bean, String proxiedBeanName) {
+		return LazyProxyFactory.getInstance().createProxy(field.getType(),
+				new LazyTarget(this, proxiedBeanName, field, bean));
+	}
+
+	/**
+	 * The configuration a container serves beans from. A reload builds a new state and
+	 * publishes it through a single volatile write.
+	 */
+	private static final class State {
+
+		final BeanDescriptorContainer descriptorContainer;
+		final ConcurrentMap<String, BeanPlan> plans;
+		final TypeIndex typeIndex;
+		final BeanPlanCompiler planCompiler;
+
+		/**
+		 * Set before a reload copies the plans of this state into the new one.
+		 */
+		volatile boolean retired;
+
+		/**
+		 * The dependency graph of the descriptors, once one was built. It is only set while
+		 * the reload lock is held or while the container starts, and is always free of cycles.
+		 */
+		volatile DependencyGraph graph;
+
+		State(BeanDescriptorContainer descriptorContainer, ConcurrentMap<String, BeanPlan> plans,
+				TypeIndex typeIndex, BeanPlanCompiler planCompiler) {
+			this.descriptorContainer = descriptorContainer;
+			this.plans = plans;
+			this.typeIndex = typeIndex;
+			this.planCompiler = planCompiler;
+		}
+
+		BeanDescriptor getDescriptor(String beanName) {
+			return descriptorContainer == null ? null :
+				descriptorContainer.getBeans().get(beanName);
+		}
+
+		/**
+		 * @return Whether the bean is served by the parent container, since this state belongs
+		 * to a child container that does not define the bean itself.
+		 */
+		boolean isInherited(String beanName) {
+			return descriptorContainer != null &&
+					descriptorContainer.getBeans() instanceof ChildDescriptorMap &&
+					!((ChildDescriptorMap) descriptorContainer.getBeans()).getLocalBeans()
+							.containsKey(beanName);
+		}
+	}
+}
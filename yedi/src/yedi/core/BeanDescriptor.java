@@ -1,96 +1,413 @@
-/**
- Copyright 2012 Matej Nagli
-
-    This file is part of Yedi.
-
-    Yedi is free software: you can redistribute it and/or modify
-    it under the terms of the GNU Lesser General Public License as published by
-    the Free Software Foundation, either version 3 of the License, or
-    (at your option) any later version.
-
-    Yedi is distributed in the hope that it will be useful,
-    but WITHOUT ANY WARRANTY; without even the implied warranty of
-    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-    GNU Lesser General Public License for more details.
-
-    You should have received a copy of the GNU Lesser General Public License
-    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
- */
-package yedi.core;
-
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-
-import yedi.exceptions.ConfigurationException;
-
-/**
- * BeanDescriptor represents a description of a bean. It is used by the bean container to create 
- * the actual bean.
- * 
- * @author mnaglic
- * @see BeanContainer
- */
-public class BeanDescriptor {
-
-    private String type;
-    private String scope = BeanScope.SINGLETON.toString();
-    private List<?> constructorParameters;
-    private Map<String, ?> properties;
-    private static List<String> allowedScopeValues =
-        Arrays.asList(BeanScope.SINGLETON.toString(), BeanScope.PROTOTYPE.toString());
-    private String loadingPolicy;
-    private static List<String> allowedLoadingPolicies =
-        Arrays.asList(LoadingPolicy.EAGER.toString(), LoadingPolicy.LAZY.toString());
-
-    List<?> getConstructorParameters() {
-        return constructorParameters;
-    }
-    
-    public void setConstructor(List<?> constructorParameters) {
-        this.constructorParameters = constructorParameters;
-    }
-    
-    public void setType(String type) {
-        this.type = type;
-    }
-    
-    public void setProperties(Map<String, ?> properties) {
-        this.properties = properties;
-    }
-    
-    String getType() {
-        return type;
-    }
-    
-    Map<String, ?> getProperties() {
-        return properties;
-    }
-    
-    String getScope() {
-        return scope;
-    }
-   
-    public void setScope(String scope) {
-        if (BeanDescriptor.allowedScopeValues.contains(scope)) {
-            this.scope = scope;
-        } else {
-            throw new ConfigurationException("Illegal bean scope: " + scope +
-                    ". Allowed values are 'singleton' and 'prototype'");
-        }
-    }
-    
-    public String getLoadingPolicy() {
-        return loadingPolicy;
-    }
-    
-    public void setLoadingPolicy(String loadingPolicy) {
-
-        if (BeanDescriptor.allowedLoadingPolicies.contains(loadingPolicy)) {
-            this.loadingPolicy = loadingPolicy;
-        } else {
-            throw new ConfigurationException("Illegal loading policy: " + loadingPolicy +
-            ". Allowed values are 'eager' and 'lazy'");
-        }
-    }
-}
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * BeanDescriptor represents a description of a bean. It is used by the bean container to create 
+ * the actual bean.
+ * <p>
+ * Descriptors live as long as their container, so they are kept small. Scopes and loading
+ * policies are stored as enums and types are interned. Once a configuration is loaded, its
+ * descriptors are compacted: the lists and maps built by the YAML parser are replaced by
+ * arrays, and property names are interned.
+ * 
+ * @author mnaglic
+ * @see BeanContainer
+ */
+public class BeanDescriptor {
+
+    private String beanName;
+    private String type;
+    private BeanScope scope = BeanScope.SINGLETON;
+    private String customScope;
+    private List<?> constructorParameters;
+    private Map<String, ?> properties;
+    private int poolSize;
+    private long idleTimeout;
+    private LoadingPolicy loadingPolicy;
+    private String initMethod;
+    private String destroyMethod;
+
+    /**
+     * @return The name the bean is registered under, or null if the descriptor is not
+     * registered as a bean.
+     */
+    String getBeanName() {
+        return beanName;
+    }
+
+    void setBeanName(String beanName) {
+        this.beanName = beanName;
+    }
+
+    List<?> getConstructorParameters() {
+        return constructorParameters;
+    }
+    
+    public void setConstructor(List<?> constructorParameters) {
+        this.constructorParameters = constructorParameters;
+    }
+    
+    public void setType(String type) {
+        this.type = type == null ? null : type.intern();
+    }
+    
+    public void setProperties(Map<String, ?> properties) {
+        this.properties = properties;
+    }
+    
+    String getType() {
+        return type;
+    }
+    
+    Map<String, ?> getProperties() {
+        return properties;
+    }
+    
+    /**
+     * @return The name of the scope, as used in the configuration.
+     */
+    String getScope() {
+        return customScope != null ? customScope : scope.toString();
+    }
+
+    /**
+     * @return The built-in scope of the bean, or CUSTOM if it is in a registered scope.
+     */
+    BeanScope getBeanScope() {
+        return scope;
+    }
+   
+    /**
+     * @param scope The name of a built-in scope or of a scope registered in the
+     * {@link ScopeRegistry}.
+     */
+    public void setScope(String scope) {
+        ScopeRegistry.checkScope(scope);
+        BeanScope builtInScope = BeanScope.forName(scope);
+
+        if (builtInScope != null) {
+            this.scope = builtInScope;
+            this.customScope = null;
+        } else {
+            this.scope = BeanScope.CUSTOM;
+            this.customScope = scope.intern();
+        }
+    }
+
+    /**
+     * @return The maximum number of instances of a pooled bean, or 0 if the default is used.
+     */
+    int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @param poolSize The maximum number of instances of a pooled bean.
+     */
+    public void setPoolSize(int poolSize) {
+        if (poolSize < 1) {
+            throw new ConfigurationException("Illegal pool size: " + poolSize +
+                    ". The pool size must be positive");
+        }
+
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @return The milliseconds after which an idle instance of a pooled bean is dropped, or 0
+     * if idle instances are kept.
+     */
+    long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout The milliseconds after which an idle instance of a pooled bean is
+     * dropped from the pool.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 1) {
+            throw new ConfigurationException("Illegal idle timeout: " + idleTimeout +
+                    ". The idle timeout must be positive");
+        }
+
+        this.idleTimeout = idleTimeout;
+    }
+    
+    /**
+     * @return The name of the method called on a new instance once its properties are
+     * injected, or null if there is none.
+     */
+    String getInitMethod() {
+        return initMethod;
+    }
+
+    /**
+     * @param initMethod The name of a method without parameters that is called on every new
+     * instance of the bean once its properties are injected.
+     */
+    public void setInitMethod(String initMethod) {
+        this.initMethod = initMethod == null ? null : initMethod.intern();
+    }
+
+    /**
+     * @return The name of the method called on a singleton or a pooled instance when its
+     * container closes, or null if there is none.
+     */
+    String getDestroyMethod() {
+        return destroyMethod;
+    }
+
+    /**
+     * @param destroyMethod The name of a method without parameters that is called on the
+     * singleton or the idle pooled instances of the bean when its container closes.
+     */
+    public void setDestroyMethod(String destroyMethod) {
+        this.destroyMethod = destroyMethod == null ? null : destroyMethod.intern();
+    }
+    
+    public String getLoadingPolicy() {
+        return loadingPolicy == null ? null : loadingPolicy.toString();
+    }
+    
+    /**
+     * @param globalLoadingPolicy The loading policy used when the bean does not define one.
+     * @return Whether the bean is loaded lazily.
+     */
+    boolean isLazy(LoadingPolicy globalLoadingPolicy) {
+        return (loadingPolicy == null ? globalLoadingPolicy : loadingPolicy) ==
+                LoadingPolicy.LAZY;
+    }
+
+    /**
+     * Replaces the constructor parameters and the properties built by the YAML parser with
+     * arrays, and interns the property names. Values are kept as they are, since literal
+     * collections are injected into beans. References to other beans must be resolved first.
+     */
+    void compact() {
+        if (constructorParameters != null &&
+                !(constructorParameters instanceof CompactList)) {
+            constructorParameters = new CompactList(constructorParameters.toArray());
+        }
+
+        if (properties != null && !(properties instanceof PropertyArray)) {
+            properties = new PropertyArray(properties);
+        }
+    }
+
+    /**
+     * Compares two definitions of a bean. Referenced beans are compared by name, so a
+     * definition stays the same when only a bean it references changes.
+     * 
+     * @param other Another descriptor.
+     * @return Whether both descriptors define the same bean.
+     */
+    boolean definesSameBean(BeanDescriptor other) {
+        return equal(type, other.type) && scope == other.scope &&
+                equal(customScope, other.customScope) && loadingPolicy == other.loadingPolicy &&
+                poolSize == other.poolSize && idleTimeout == other.idleTimeout &&
+                equal(initMethod, other.initMethod) &&
+                equal(destroyMethod, other.destroyMethod) &&
+                sameValue(constructorParameters, other.constructorParameters) &&
+                sameValue(properties, other.properties);
+    }
+
+    private static boolean sameValue(Object value, Object otherValue) {
+        if (value instanceof BeanDescriptor) {
+            return otherValue instanceof BeanDescriptor && equal(((BeanDescriptor) value).beanName,
+                    ((BeanDescriptor) otherValue).beanName);
+        } else if (value instanceof List) {
+            if (!(otherValue instanceof List) ||
+                    ((List<?>) value).size() != ((List<?>) otherValue).size()) {
+                return false;
+            }
+
+            Iterator<?> otherElements = ((List<?>) otherValue).iterator();
+
+            for (Object element : (List<?>) value) {
+                if (!sameValue(element, otherElements.next())) {
+                    return false;
+                }
+            }
+
+            return true;
+        } else if (value instanceof Map) {
+            if (!(otherValue instanceof Map) ||
+                    ((Map<?, ?>) value).size() != ((Map<?, ?>) otherValue).size()) {
+                return false;
+            }
+
+            Map<?, ?> otherMap = (Map<?, ?>) otherValue;
+
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!otherMap.containsKey(entry.getKey()) ||
+                        !sameValue(entry.getValue(), otherMap.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return equal(value, otherValue);
+    }
+
+    private static boolean equal(Object value, Object otherValue) {
+        return value == null ? otherValue == null : value.equals(otherValue);
+    }
+
+    public void setLoadingPolicy(String loadingPolicy) {
+
+        if (LoadingPolicy.EAGER.toString().equals(loadingPolicy)) {
+            this.loadingPolicy = LoadingPolicy.EAGER;
+        } else if (LoadingPolicy.LAZY.toString().equals(loadingPolicy)) {
+            this.loadingPolicy = LoadingPolicy.LAZY;
+        } else {
+            throw new ConfigurationException("Illegal loading policy: " + loadingPolicy +
+            ". Allowed values are 'eager' and 'lazy'");
+        }
+    }
+
+    /**
+     * The constructor parameters of a compacted descriptor. It cannot be changed.
+     */
+    private static final class CompactList extends AbstractList<Object> {
+
+        private final Object[] elements;
+
+        CompactList(Object[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public Object get(int index) {
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+    }
+
+    /**
+     * The properties of a compacted descriptor, as an array of names and an array of values in
+     * the order of the configuration. It cannot be changed. Beans have few properties, so
+     * a property is looked up by comparing the names one by one.
+     */
+    private static final class PropertyArray extends AbstractMap<String, Object> {
+
+        private final String[] names;
+        private final Object[] values;
+
+        PropertyArray(Map<String, ?> properties) {
+            names = new String[properties.size()];
+            values = new Object[properties.size()];
+            int i = 0;
+
+            for (Entry<String, ?> property : properties.entrySet()) {
+                names[i] = property.getKey() == null ? null : property.getKey().intern();
+                values[i] = property.getValue();
+                i++;
+            }
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int index = indexOf(key);
+
+            return index >= 0 ? values[index] : null;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < names.length; i++) {
+                if (equal(names[i], key)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= names.length) {
+                                throw new NoSuchElementException();
+                            }
+
+                            Entry<String, Object> entry = new SimpleImmutableEntry<String, Object>(
+                                    names[next], values[next]);
+                            next++;
+
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
+        }
+    }
+}
@@ -1,41 +1,66 @@
-/**
- Copyright 2012 Matej Nagli
-
-    This file is part of Yedi.
-
-    Yedi is free software: you can redistribute it and/or modify
-    it under the terms of the GNU Lesser General Public License as published by
-    the Free Software Foundation, either version 3 of the License, or
-    (at your option) any later version.
-
-    Yedi is distributed in the hope that it will be useful,
-    but WITHOUT ANY WARRANTY; without even the implied warranty of
-    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-    GNU Lesser General Public License for more details.
-
-    You should have received a copy of the GNU Lesser General Public License
-    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
- */
-package yedi.core;
-
-import java.util.Map;
-
-/**
- * BeanDescriptorContainer holds bean descriptors.
- * 
- * @author mnaglic
- * @see BeanDescriptor
- *
- */
-public class BeanDescriptorContainer {
-
-    private Map <String, BeanDescriptor> beans;
-
-    public Map<String, BeanDescriptor> getBeans() {
-        return beans;
-    }
-
-    public void setBeans(Map<String, BeanDescriptor> beans) {
-        this.beans = beans;
-    }
-}
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * BeanDescriptorContainer holds bean descriptors.
+ * 
+ * @author mnaglic
+ * @see BeanDescriptor
+ *
+ */
+public class BeanDescriptorContainer {
+
+    private Map <String, BeanDescriptor> beans;
+
+    public BeanDescriptorContainer() {
+    }
+
+    /**
+     * Creates a container for descriptors that already know the names they are registered
+     * under, such as the descriptors of a {@link DescriptorIndex}.
+     */
+    BeanDescriptorContainer(Map<String, BeanDescriptor> beans) {
+        this.beans = beans;
+    }
+
+    public Map<String, BeanDescriptor> getBeans() {
+        return beans;
+    }
+
+    /**
+     * Sets the beans and registers every descriptor under its bean name. References to other
+     * beans are YAML aliases of their descriptors, so the name of a referenced bean is read
+     * from its descriptor. If a descriptor is defined under several names, the last one wins.
+     */
+    public void setBeans(Map<String, BeanDescriptor> beans) {
+        this.beans = beans;
+
+        if (beans != null) {
+            for (Entry<String, BeanDescriptor> bean : beans.entrySet()) {
+                if (bean.getValue() != null) {
+                    bean.getValue().setBeanName(bean.getKey());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * BeanFactory creates a single kind of bean without going through reflection. Factories are
+ * usually generated at build time by the {@link BeanFactoryGenerator} and handed to the
+ * container through a {@link BeanFactoryRegistry}.
+ * 
+ * @author mnaglic
+ *
+ * @param <T> The type of the bean created by the factory.
+ */
+public interface BeanFactory<T> {
+
+    /**
+     * Creates a new, fully injected instance of the bean.
+     * 
+     * @param container The container to fetch referenced beans from.
+     * @return A new bean.
+     */
+    T create(BeanContainer container);
+}
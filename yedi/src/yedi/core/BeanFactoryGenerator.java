@@ -0,0 +1,573 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import yedi.core.ReflectiveBeanPlan.PropertyInjection;
+import yedi.exceptions.BeanLoadingException;
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * BeanFactoryGenerator reads a Yedi configuration at build time and emits Java source for a
+ * {@link BeanFactoryRegistry} with one {@link BeanFactory} per bean. The factories call
+ * constructors, setters and init methods directly, so a container created from the generated
+ * registry needs neither YAML parsing nor reflection to create beans.
+ * <p>
+ * Every descriptor is compiled exactly as the container would compile it. Generation fails,
+ * listing every offending bean, if a descriptor cannot be matched to a constructor, setter or
+ * field, if one of those members is not accessible from the package of the generated registry
+ * or throws checked exceptions, or if a configured value cannot be written as a Java
+ * expression. Run it as a build step:
+ * 
+ * <pre>
+ * java yedi.core.BeanFactoryGenerator resources/yedi-config.yaml gen-src com.acme.YediBeans
+ * </pre>
+ * 
+ * and create the container with {@code new BeanContainer(new com.acme.YediBeans())}.
+ * 
+ * @author mnaglic
+ */
+public final class BeanFactoryGenerator {
+
+    private final String yediConfigurationPath;
+    private final BeanContainer container;
+    private final String packageName;
+    private final String registryName;
+
+    /**
+     * @param yediConfigurationPath The path of the Yedi configuration file.
+     * @param registryClassName The fully qualified name of the registry class to generate.
+     */
+    public BeanFactoryGenerator(String yediConfigurationPath, String registryClassName) {
+        this.yediConfigurationPath = yediConfigurationPath;
+        this.container = new BeanContainer(yediConfigurationPath, false);
+
+        int lastDot = registryClassName.lastIndexOf('.');
+        this.packageName = lastDot < 0 ? "" : registryClassName.substring(0, lastDot);
+        this.registryName = registryClassName.substring(lastDot + 1);
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: BeanFactoryGenerator <yedi-configuration> " +
+                    "<output-directory> <registry-class-name>");
+            System.exit(2);
+        }
+
+        try {
+            File source = new BeanFactoryGenerator(args[0], args[2]).generate(new File(args[1]));
+            System.out.println("Generated " + source.getPath());
+        } catch (ConfigurationException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates the registry source file below the output directory.
+     * 
+     * @param outputDirectory The root directory of the generated sources.
+     * @return The generated source file.
+     * @throws ConfigurationException If any bean cannot be generated.
+     */
+    public File generate(File outputDirectory) {
+        String source = generateSource();
+        File packageDirectory = packageName.length() == 0 ? outputDirectory :
+            new File(outputDirectory, packageName.replace('.', File.separatorChar));
+
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new ConfigurationException("Could not create directory " + packageDirectory);
+        }
+
+        File sourceFile = new File(packageDirectory, registryName + ".java");
+
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8");
+
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new ConfigurationException("Could not write " + sourceFile, e);
+        }
+
+        return sourceFile;
+    }
+
+    /**
+     * @return The source of the registry class.
+     * @throws ConfigurationException If any bean cannot be generated.
+     */
+    public String generateSource() {
+        List<String> errors = new ArrayList<String>();
+        StringBuilder registrations = new StringBuilder();
+        StringBuilder factories = new StringBuilder();
+        Set<String> factoryNames = new HashSet<String>();
+
+        for (String beanName : new TreeSet<String>(container.getBeanNames())) {
+            try {
+                ReflectiveBeanPlan plan = (ReflectiveBeanPlan) container.getPlan(beanName);
+                String factoryName = factoryName(beanName, factoryNames);
+                String beanType = typeName(plan.getBeanClass());
+
+                String destroyMethod = container.getDescriptor(beanName).getDestroyMethod();
+
+                factories.append(generateFactory(plan, factoryName, beanType));
+                registrations.append("        registrar.register(").append(literal(beanName))
+                        .append(", ").append(literal(plan.getScopeName())).append(", ")
+                        .append(beanType).append(".class, new ").append(factoryName)
+                        .append("()");
+
+                if (plan.getPoolSize() > 0 || plan.getIdleTimeout() > 0) {
+                    registrations.append(", ").append(plan.getPoolSize()).append(", ")
+                            .append(plan.getIdleTimeout()).append("L, ")
+                            .append(destroyMethod != null ? literal(destroyMethod) : "null");
+                } else if (destroyMethod != null) {
+                    registrations.append(", ").append(literal(destroyMethod));
+                }
+
+                registrations.append(");\n");
+            } catch (BeanLoadingException e) {
+                errors.add(e.getMessage());
+            } catch (UnsupportedBeanException e) {
+                errors.add("Could not generate factory for bean " + beanName + ": " +
+                        e.getMessage());
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            StringBuilder message = new StringBuilder("Could not generate bean factories for " +
+                    yediConfigurationPath + ":");
+
+            for (String error : errors) {
+                message.append("\n  ").append(error);
+            }
+
+            throw new ConfigurationException(message.toString());
+        }
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by yedi.core.BeanFactoryGenerator from ")
+                .append(yediConfigurationPath).append(". Do not edit.\n");
+
+        if (packageName.length() > 0) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        source.append("import yedi.core.BeanContainer;\n")
+                .append("import yedi.core.BeanFactory;\n")
+                .append("import yedi.core.BeanFactoryRegistry;\n\n")
+                .append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n")
+                .append("public final class ").append(registryName)
+                .append(" implements BeanFactoryRegistry {\n\n")
+                .append("    @Override\n")
+                .append("    public void registerFactories(Registrar registrar) {\n")
+                .append(registrations)
+                .append("    }\n")
+                .append(factories)
+                .append("\n    private static java.util.List list(Object... values) {\n")
+                .append("        return new java.util.ArrayList(java.util.Arrays.asList(values));\n")
+                .append("    }\n")
+                .append("\n    private static java.util.Set set(Object... values) {\n")
+                .append("        return new java.util.LinkedHashSet(java.util.Arrays.asList(values));\n")
+                .append("    }\n")
+                .append("\n    private static java.util.Map map(Object... keysAndValues) {\n")
+                .append("        java.util.Map map = new java.util.LinkedHashMap();\n\n")
+                .append("        for (int i = 0; i < keysAndValues.length; i += 2) {\n")
+                .append("            map.put(keysAndValues[i], keysAndValues[i + 1]);\n")
+                .append("        }\n\n")
+                .append("        return map;\n")
+                .append("    }\n")
+                .append("}\n");
+
+        return source.toString();
+    }
+
+    private String generateFactory(ReflectiveBeanPlan plan, String factoryName, String beanType)
+            throws UnsupportedBeanException {
+        Constructor<?> constructor = plan.getConstructor();
+        Object[] arguments = plan.getConstructorArguments();
+        List<?> descriptorConstructorParameters =
+                container.getDescriptor(plan.getBeanName()).getConstructorParameters();
+
+        if (descriptorConstructorParameters != null && !descriptorConstructorParameters.isEmpty() &&
+                arguments.length == 0) {
+            throw new UnsupportedBeanException("no declared constructor of " + beanType +
+                    " matches the configured constructor parameters");
+        }
+
+        checkAccessible(constructor);
+        checkUncheckedExceptions("constructor of " + beanType, constructor.getExceptionTypes());
+
+        StringBuilder factory = new StringBuilder();
+        factory.append("\n    private static final class ").append(factoryName)
+                .append(" implements BeanFactory<").append(beanType).append("> {\n\n")
+                .append("        @Override\n")
+                .append("        public ").append(beanType)
+                .append(" create(BeanContainer container) {\n")
+                .append("            ").append(beanType).append(" bean = new ").append(beanType)
+                .append("(");
+
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+
+        for (int i = 0; i < arguments.length; i++) {
+            if (i > 0) factory.append(", ");
+            factory.append(expression(arguments[i], parameterTypes[i]));
+        }
+
+        factory.append(");\n");
+
+        for (PropertyInjection injection : plan.getPropertyInjections()) {
+            factory.append("            ").append(injectionStatement(injection)).append("\n");
+        }
+
+        Method initMethod = plan.getInitMethod();
+
+        if (initMethod != null) {
+            checkAccessible(initMethod);
+            checkUncheckedExceptions("init method " + initMethod.getName(),
+                    initMethod.getExceptionTypes());
+
+            factory.append("            bean.").append(initMethod.getName()).append("();\n");
+        }
+
+        factory.append("            return bean;\n")
+                .append("        }\n")
+                .append("    }\n");
+
+        return factory.toString();
+    }
+
+    private String injectionStatement(PropertyInjection injection)
+            throws UnsupportedBeanException {
+        Object value = injection.getValue();
+        Method setter = injection.getSetter();
+        Field field = injection.getField();
+
+        if (value instanceof BeanReference && ((BeanReference) value).isLazy()) {
+            //Lazy beans are injected as proxies, through the field or a setter taking its type
+            setter = null;
+
+            for (Method method : field.getDeclaringClass().getDeclaredMethods()) {
+                if (method.getName().equals(setterName(injection.getPropertyName())) &&
+                        method.getParameterTypes().length == 1 &&
+                        method.getParameterTypes()[0].equals(field.getType()) &&
+                        isAccessible(method)) {
+                    setter = method;
+                    break;
+                }
+            }
+        }
+
+        if (setter != null) {
+            checkAccessible(setter);
+            checkUncheckedExceptions("setter " + setter.getName(), setter.getExceptionTypes());
+
+            return "bean." + setter.getName() + "(" +
+                    expression(value, setter.getParameterTypes()[0]) + ");";
+        }
+
+        checkAccessible(field);
+
+        if (Modifier.isFinal(field.getModifiers())) {
+            throw new UnsupportedBeanException("field " + field.getName() + " is final");
+        }
+
+        return "bean." + field.getName() + " = " + expression(value, field.getType()) + ";";
+    }
+
+    /**
+     * Generated factories cannot declare checked exceptions, so the members they call must not
+     * throw any.
+     * 
+     * @param member The member, for the error message.
+     * @param exceptionTypes The exceptions the member declares.
+     */
+    private static void checkUncheckedExceptions(String member, Class<?>[] exceptionTypes)
+            throws UnsupportedBeanException {
+        for (Class<?> exceptionType : exceptionTypes) {
+            if (!RuntimeException.class.isAssignableFrom(exceptionType) &&
+                    !Error.class.isAssignableFrom(exceptionType)) {
+                throw new UnsupportedBeanException(member + " throws the checked exception " +
+                        exceptionType.getName());
+            }
+        }
+    }
+
+    private String expression(Object value, Class<?> targetType) throws UnsupportedBeanException {
+        String target = typeName(targetType);
+
+        if (value instanceof BeanCollectionReference) {
+            throw new UnsupportedBeanException("collections of beans are not supported");
+        }
+
+        if (value instanceof BeanReference) {
+            BeanReference reference = (BeanReference) value;
+
+            if (reference.isLazy()) {
+                return "container.getLazyBean(" + literal(reference.getBeanName()) + ", " +
+                        target + ".class)";
+            }
+
+            return "(" + target + ") container.getBean(" + literal(reference.getBeanName()) +
+                    ")";
+        }
+
+        return "(" + target + ") " + literal(value);
+    }
+
+    private String literal(Object value) throws UnsupportedBeanException {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof String) {
+            StringBuilder literal = new StringBuilder("\"");
+            String string = (String) value;
+
+            for (int i = 0; i < string.length(); i++) {
+                literal.append(escape(string.charAt(i), '"'));
+            }
+
+            return literal.append('"').toString();
+        } else if (value instanceof Character) {
+            return "'" + escape((Character) value, '\'') + "'";
+        } else if (value instanceof Boolean || value instanceof Integer) {
+            return value.toString();
+        } else if (value instanceof Byte) {
+            return "(byte) " + value;
+        } else if (value instanceof Short) {
+            return "(short) " + value;
+        } else if (value instanceof Long) {
+            return value + "L";
+        } else if (value instanceof Float) {
+            Float number = (Float) value;
+
+            if (number.isNaN() || number.isInfinite()) {
+                return "Float.intBitsToFloat(" + Float.floatToIntBits(number) + ")";
+            }
+
+            return number + "f";
+        } else if (value instanceof Double) {
+            Double number = (Double) value;
+
+            if (number.isNaN() || number.isInfinite()) {
+                return "Double.longBitsToDouble(" + Double.doubleToLongBits(number) + "L)";
+            }
+
+            return number + "d";
+        } else if (value instanceof BigInteger) {
+            return "new java.math.BigInteger(\"" + value + "\")";
+        } else if (value instanceof BigDecimal) {
+            return "new java.math.BigDecimal(\"" + value + "\")";
+        } else if (value instanceof Duration) {
+            Duration duration = (Duration) value;
+
+            return "java.time.Duration.ofSeconds(" + duration.getSeconds() + "L, " +
+                    duration.getNano() + ")";
+        } else if (value instanceof Enum) {
+            Class<?> enumType = ((Enum<?>) value).getDeclaringClass();
+
+            for (Class<?> c = enumType; c != null; c = c.getEnclosingClass()) {
+                if (!isAccessible(c.getModifiers(), c)) {
+                    throw new UnsupportedBeanException("enum " + enumType.getName() +
+                            " is not accessible from package '" + packageName + "'");
+                }
+            }
+
+            return typeName(enumType) + "." + ((Enum<?>) value).name();
+        } else if (value instanceof Date) {
+            return "new java.util.Date(" + ((Date) value).getTime() + "L)";
+        } else if (value instanceof byte[]) {
+            StringBuilder literal = new StringBuilder("new byte[] {");
+
+            for (int i = 0; i < Array.getLength(value); i++) {
+                if (i > 0) literal.append(", ");
+                literal.append(Array.getByte(value, i));
+            }
+
+            return literal.append("}").toString();
+        } else if (value instanceof List || value instanceof Set) {
+            StringBuilder literal = new StringBuilder(value instanceof List ? "list(" : "set(");
+            boolean first = true;
+
+            for (Object element : (Collection<?>) value) {
+                if (!first) literal.append(", ");
+                literal.append(literal(element));
+                first = false;
+            }
+
+            return literal.append(")").toString();
+        } else if (value instanceof Map) {
+            StringBuilder literal = new StringBuilder("map(");
+            boolean first = true;
+
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) literal.append(", ");
+                literal.append(literal(entry.getKey())).append(", ")
+                        .append(literal(entry.getValue()));
+                first = false;
+            }
+
+            return literal.append(")").toString();
+        }
+
+        throw new UnsupportedBeanException("value " + value + " of type " +
+                value.getClass().getName() + " cannot be written as a Java expression");
+    }
+
+    private static String escape(char c, char quote) {
+        switch (c) {
+        case '\n': return "\\n";
+        case '\r': return "\\r";
+        case '\t': return "\\t";
+        case '\\': return "\\\\";
+        default:
+            if (c == quote) {
+                return "\\" + c;
+            } else if (c < 0x20 || c > 0x7e) {
+                return String.format("\\u%04x", (int) c);
+            }
+
+            return String.valueOf(c);
+        }
+    }
+
+    private void checkAccessible(Member member) throws UnsupportedBeanException {
+        if (!isAccessible(member)) {
+            throw new UnsupportedBeanException(describe(member) + " of " +
+                    member.getDeclaringClass().getName() +
+                    " is not accessible from package '" + packageName + "'");
+        }
+    }
+
+    /**
+     * Checks whether generated code in the registry package can use a member. Public members of
+     * public classes always can, package-private and protected ones only from the same
+     * package.
+     */
+    private boolean isAccessible(Member member) {
+        for (Class<?> c = member.getDeclaringClass(); c != null; c = c.getEnclosingClass()) {
+            if (!isAccessible(c.getModifiers(), c)) {
+                return false;
+            }
+        }
+
+        return isAccessible(member.getModifiers(), member.getDeclaringClass());
+    }
+
+    private boolean isAccessible(int modifiers, Class<?> declaringClass) {
+        if (Modifier.isPublic(modifiers)) {
+            return true;
+        } else if (Modifier.isPrivate(modifiers)) {
+            return false;
+        }
+
+        Package declaringPackage = declaringClass.getPackage();
+        String declaringPackageName = declaringPackage == null ? "" : declaringPackage.getName();
+
+        return declaringPackageName.equals(packageName);
+    }
+
+    private static String describe(Member member) {
+        if (member instanceof Constructor) {
+            return "constructor " + Modifier.toString(member.getModifiers()) + " " +
+                    member.getDeclaringClass().getSimpleName() + "(...)";
+        } else if (member instanceof Method) {
+            return (((Method) member).getParameterTypes().length == 0 ? "init method " :
+                "setter ") + member.getName();
+        }
+
+        return "field " + member.getName();
+    }
+
+    private String typeName(Class<?> type) throws UnsupportedBeanException {
+        String name = type.getCanonicalName();
+
+        if (name == null) {
+            throw new UnsupportedBeanException("type " + type.getName() +
+                    " cannot be named in Java source");
+        }
+
+        return name;
+    }
+
+    private static String setterName(String propertyName) {
+        return "set" + Character.toUpperCase(propertyName.charAt(0)) +
+                propertyName.substring(1);
+    }
+
+    private static String factoryName(String beanName, Set<String> factoryNames) {
+        StringBuilder name = new StringBuilder();
+
+        for (int i = 0; i < beanName.length(); i++) {
+            char c = beanName.charAt(i);
+            name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+
+        if (!Character.isJavaIdentifierStart(name.charAt(0))) {
+            name.insert(0, '_');
+        }
+
+        String factoryName = name + "Factory";
+
+        for (int i = 2; !factoryNames.add(factoryName); i++) {
+            factoryName = name + "Factory" + i;
+        }
+
+        return factoryName;
+    }
+
+    /**
+     * Thrown when a bean cannot be expressed as generated code.
+     */
+    private static final class UnsupportedBeanException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedBeanException(String message) {
+            super(message);
+        }
+    }
+}
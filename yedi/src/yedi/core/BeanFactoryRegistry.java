@@ -0,0 +1,90 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * BeanFactoryRegistry lists the factories of all beans in a configuration. A BeanContainer
+ * created from a registry does not read any YAML and does not use reflection to create beans.
+ * Registries are normally generated by the {@link BeanFactoryGenerator}. A registry written by
+ * hand can also add beans to the beans of a Yedi configuration.
+ * 
+ * @author mnaglic
+ * @see BeanContainer#BeanContainer(BeanFactoryRegistry)
+ * @see BeanContainer#BeanContainer(String, BeanFactoryRegistry)
+ */
+public interface BeanFactoryRegistry {
+
+    /**
+     * Registers every bean factory of this registry.
+     * 
+     * @param registrar The registrar to register the factories with.
+     */
+    void registerFactories(Registrar registrar);
+
+    /**
+     * Receives the factories of a registry.
+     */
+    interface Registrar {
+
+        /**
+         * @param beanName The name of the bean.
+         * @param scope The scope of the bean, 'singleton', 'prototype', 'pooled' or the name of a
+         * scope registered in the {@link ScopeRegistry}. Pooled beans registered without a pool
+         * size use the default pool size and keep idle instances, see
+         * {@link #register(String, String, Class, BeanFactory, int, long, String)}.
+         * @param beanClass The class of the bean.
+         * @param factory The factory creating the bean.
+         */
+        <T> void register(String beanName, String scope, Class<T> beanClass,
+                BeanFactory<? extends T> factory);
+
+        /**
+         * Registers a bean with a destroy method, which is called on its singleton or its idle
+         * pooled instances when the container closes.
+         * 
+         * @param beanName The name of the bean.
+         * @param scope The scope of the bean, see
+         * {@link #register(String, String, Class, BeanFactory)}.
+         * @param beanClass The class of the bean.
+         * @param factory The factory creating the bean. It also calls the init method of the
+         * bean, if it has one.
+         * @param destroyMethod The name of a method of the bean without parameters.
+         */
+        <T> void register(String beanName, String scope, Class<T> beanClass,
+                BeanFactory<? extends T> factory, String destroyMethod);
+
+        /**
+         * Registers a pooled bean with its own pool size and idle timeout.
+         * 
+         * @param beanName The name of the bean.
+         * @param scope The scope of the bean, see
+         * {@link #register(String, String, Class, BeanFactory)}.
+         * @param beanClass The class of the bean.
+         * @param factory The factory creating the bean.
+         * @param poolSize The maximum number of instances of the bean, or 0 for the default.
+         * @param idleTimeout The milliseconds after which an idle instance is dropped from the
+         * pool and destroyed, or 0 if idle instances are kept.
+         * @param destroyMethod The name of a method of the bean without parameters, or null if
+         * it has none.
+         */
+        <T> void register(String beanName, String scope, Class<T> beanClass,
+                BeanFactory<? extends T> factory, int poolSize, long idleTimeout,
+                String destroyMethod);
+    }
+}
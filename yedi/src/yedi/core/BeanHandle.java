@@ -0,0 +1,113 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * BeanHandle fetches a single bean without looking it up by name every time. The plan of the
+ * bean is resolved on the first call, and so is the instance of a singleton: fetching a
+ * singleton through a handle afterwards is a single volatile read, and fetching a prototype
+ * goes straight to its creation.
+ * <p>
+ * Handles are obtained from {@link BeanContainer#handle(String)} and
+ * {@link BeanContainer#handle(Class)}, and can be kept for the lifetime of the container.
+ * When the bean is rebuilt by a reload, the handle resolves it again.
+ * 
+ * @author mnaglic
+ *
+ * @param <T> The type of the bean.
+ */
+public final class BeanHandle<T> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<BeanHandle, Resolution> resolutionUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(BeanHandle.class, Resolution.class,
+                    "resolution");
+
+    private final BeanContainer container;
+    private final String beanName;
+
+    /**
+     * Never null. An unresolved handle holds a resolution without a plan.
+     */
+    private volatile Resolution resolution = new Resolution(null, null);
+
+    BeanHandle(BeanContainer container, String beanName) {
+        this.container = container;
+        this.beanName = beanName;
+    }
+
+    /**
+     * @return The name of the bean.
+     */
+    public String getBeanName() {
+        return beanName;
+    }
+
+    /**
+     * Fetches the bean, just like {@link BeanContainer#getBean(String)}.
+     * 
+     * @return The bean.
+     */
+    @SuppressWarnings("unchecked")
+    public T get() {
+        Resolution current = resolution;
+
+        if (current.singleton != null) {
+            return (T) current.singleton;
+        }
+
+        if (current.plan != null) {
+            return (T) container.getBean(current.plan);
+        }
+
+        return (T) resolve(current);
+    }
+
+    private Object resolve(Resolution unresolved) {
+        BeanPlan plan = container.getPlan(beanName);
+        Object bean = container.getBean(plan);
+
+        //A reload that happened in the meantime replaced the unresolved resolution, so a plan
+        //of the old configuration is never stored
+        resolutionUpdater.compareAndSet(this, unresolved,
+                new Resolution(plan, plan.getScope() == BeanScope.SINGLETON ? bean : null));
+
+        return bean;
+    }
+
+    /**
+     * Makes the handle resolve its bean again on the next call.
+     */
+    void invalidate() {
+        resolution = new Resolution(null, null);
+    }
+
+    private static final class Resolution {
+
+        final BeanPlan plan;
+        final Object singleton;
+
+        Resolution(BeanPlan plan, Object singleton) {
+            this.plan = plan;
+            this.singleton = singleton;
+        }
+    }
+}
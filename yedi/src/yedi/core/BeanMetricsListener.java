@@ -0,0 +1,76 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * BeanMetricsListener is told about the work a container does: parsing configuration files,
+ * creating beans, looking up singletons and resolving lazy proxies. A container without a
+ * listener skips all of it after a single null check, so metrics cost nothing unless they are
+ * enabled.
+ * <p>
+ * A listener is set through the metrics-listener setting of the Yedi configuration, which
+ * names a class with a public no-argument constructor, or through
+ * {@link BeanContainer#setMetricsListener(BeanMetricsListener)}. The methods are called on
+ * the threads that do the work, often while other beans are being created, so they have to be
+ * thread-safe and fast.
+ * 
+ * @author mnaglic
+ * @see InMemoryBeanMetrics
+ */
+public interface BeanMetricsListener {
+
+    /**
+     * Called after a bean configuration file was parsed.
+     * 
+     * @param location The location of the file.
+     * @param nanos The time it took to parse the file.
+     */
+    void configurationParsed(String location, long nanos);
+
+    /**
+     * Called after a new instance of a bean was created, in any scope. The time includes
+     * creating the beans it depends on that did not exist yet.
+     * 
+     * @param beanName The name of the bean.
+     * @param nanos The time it took to create and inject the instance.
+     */
+    void beanCreated(String beanName, long nanos);
+
+    /**
+     * Called when a singleton is fetched and already exists.
+     * 
+     * @param beanName The name of the singleton.
+     */
+    void singletonHit(String beanName);
+
+    /**
+     * Called when a singleton is fetched and does not exist yet, right before it is created or
+     * waited for.
+     * 
+     * @param beanName The name of the singleton.
+     */
+    void singletonMiss(String beanName);
+
+    /**
+     * Called when a lazy proxy is first used and fetches its bean.
+     * 
+     * @param beanName The name of the proxied bean.
+     */
+    void lazyProxyMaterialized(String beanName);
+}
@@ -0,0 +1,221 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * BeanPlan is the compiled, immutable recipe for creating a bean. The container looks up the
+ * plan of a bean once and afterwards only executes it, so no configuration has to be
+ * interpreted when a bean is created.
+ * <p>
+ * A plan also knows how to destroy the instances it created when their container closes: it
+ * calls the destroy method of the bean, or close() if the bean is {@link AutoCloseable} and has
+ * no destroy method.
+ * 
+ * @author mnaglic
+ * @see ReflectiveBeanPlan
+ * @see FactoryBeanPlan
+ */
+abstract class BeanPlan {
+
+    private final String beanName;
+    private final String scopeName;
+    private final BeanScope scope;
+    private final Scope customScope;
+    private final BeanFactory<Object> factory;
+    private final Class<?> beanClass;
+    private final int poolSize;
+    private final long idleTimeout;
+    private final Method destroyMethod;
+
+    /**
+     * @param destroyMethod The method called on the instances of the bean when the container
+     * closes, or null if there is none.
+     */
+    BeanPlan(String beanName, String scope, Class<?> beanClass, Method destroyMethod) {
+        this(beanName, scope, beanClass, 0, 0, destroyMethod);
+    }
+
+    /**
+     * @param scope The name of a built-in or registered scope.
+     * @param poolSize The maximum number of instances of a pooled bean, or 0 for the default.
+     * @param idleTimeout The milliseconds after which an idle instance of a pooled bean is
+     * dropped from the pool, or 0 if idle instances are kept.
+     * @param destroyMethod The method called on the instances of the bean when the container
+     * closes, or null if there is none.
+     */
+    BeanPlan(String beanName, String scope, Class<?> beanClass, int poolSize,
+            long idleTimeout, Method destroyMethod) {
+        this.beanName = beanName;
+        this.scopeName = scope;
+
+        if (BeanScope.forName(scope) != null) {
+            this.scope = BeanScope.forName(scope);
+            this.customScope = null;
+            this.factory = null;
+        } else {
+            ScopeRegistry.checkScope(scope);
+            this.scope = BeanScope.CUSTOM;
+            this.customScope = ScopeRegistry.forName(scope);
+            this.factory = new BeanFactory<Object>() {
+
+                @Override
+                public Object create(BeanContainer container) {
+                    return container.createBean(BeanPlan.this);
+                }
+            };
+        }
+
+        this.beanClass = beanClass;
+        this.poolSize = poolSize;
+        this.idleTimeout = idleTimeout;
+        this.destroyMethod = destroyMethod;
+    }
+
+    String getBeanName() {
+        return beanName;
+    }
+
+    BeanScope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return The name of the scope, as used in the configuration.
+     */
+    String getScopeName() {
+        return scopeName;
+    }
+
+    /**
+     * @return The registered scope of the bean, or null if the bean is in a built-in scope.
+     */
+    Scope getCustomScope() {
+        return customScope;
+    }
+
+    /**
+     * @return The factory passed to the registered scope of the bean, or null if the bean is in
+     * a built-in scope.
+     */
+    BeanFactory<Object> getFactory() {
+        return factory;
+    }
+
+    Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    int getPoolSize() {
+        return poolSize;
+    }
+
+    long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param bean An instance of the bean.
+     * @return Whether the instance has to be destroyed when the container closes.
+     */
+    boolean hasDestroyCallback(Object bean) {
+        return destroyMethod != null || bean instanceof AutoCloseable;
+    }
+
+    /**
+     * Runs the destroy callback of an instance of the bean, if it has one.
+     * 
+     * @param bean A singleton or an idle pooled instance of the bean.
+     * @throws Exception Whatever the destroy method or close() throws.
+     */
+    void destroy(Object bean) throws Exception {
+        if (destroyMethod != null) {
+            try {
+                destroyMethod.invoke(bean);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+
+                throw e;
+            }
+        } else if (bean instanceof AutoCloseable) {
+            ((AutoCloseable) bean).close();
+        }
+    }
+
+    /**
+     * Looks up an init or destroy method of a bean. The method has no parameters and may be
+     * declared by the bean class or any of its superclasses, with any access.
+     * 
+     * @param beanName The name of the bean.
+     * @param beanClass The class of the bean.
+     * @param methodName The name of the method.
+     * @return The method, made accessible if it is not public.
+     * @throws BeanLoadingException If the class has no such method.
+     */
+    static Method findCallback(String beanName, Class<?> beanClass, String methodName) {
+        try {
+            Method method = beanClass.getMethod(methodName);
+
+            if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                return method;
+            }
+        } catch (NoSuchMethodException e) {
+            //Look for a method that is not public
+        }
+
+        for (Class<?> c = beanClass; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.getName().equals(methodName) &&
+                        method.getParameterTypes().length == 0 &&
+                        !Modifier.isStatic(method.getModifiers())) {
+                    try {
+                        method.setAccessible(true);
+                    } catch (RuntimeException e) {
+                        throw new BeanLoadingException("Could not load bean " + beanName +
+                                ": Method " + methodName + " of class " + c.getName() +
+                                " is not accessible", e);
+                    }
+
+                    return method;
+                }
+            }
+        }
+
+        throw new BeanLoadingException("Could not load bean " + beanName + ": Class " +
+                beanClass.getName() + " has no method " + methodName + " without parameters");
+    }
+
+    /**
+     * Creates a new instance of the bean and injects all of its properties.
+     * 
+     * @param container The container used to resolve references to other beans.
+     * @return A fully injected bean.
+     */
+    abstract Object createBean(BeanContainer container) throws InstantiationException,
+            IllegalAccessException, InvocationTargetException;
+}
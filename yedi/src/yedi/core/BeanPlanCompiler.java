@@ -0,0 +1,443 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import yedi.core.ReflectiveBeanPlan.PropertyInjection;
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * BeanPlanCompiler turns bean descriptors into creation plans. It resolves the bean class,
+ * matches the configured constructor parameters against the declared constructors and finds a
+ * setter or a field for every property. The chosen members are handed to an
+ * {@link InjectorFactory}, which decides how they are invoked.
+ * <p>
+ * Values that do not have the type of the member they are injected through are converted by
+ * the {@link ConverterRegistry} while the plan is compiled, so plans only hold values of the
+ * right type. Members that take a value without conversion are preferred. The init and
+ * destroy methods of the bean are looked up as well, so a misspelled one fails when the plan
+ * is compiled rather than when the container closes.
+ * 
+ * @author mnaglic
+ * @see ReflectiveBeanPlan
+ */
+final class BeanPlanCompiler {
+
+    private final Map<String, BeanDescriptor> descriptorMap;
+    private final TypeIndex typeIndex;
+    private final LoadingPolicy globalLoadingPolicy;
+    private final InjectorFactory injectorFactory;
+
+    /**
+     * @param descriptorMap The descriptors by bean name, used to check that referenced beans
+     * are defined and to find the definitions that win for them.
+     * @param typeIndex The index of the descriptors, used to find the beans of collections.
+     * @param globalLoadingPolicy The loading policy of beans that do not define their own.
+     * @param injectorFactory The factory creating injectors for the chosen members.
+     */
+    BeanPlanCompiler(Map<String, BeanDescriptor> descriptorMap, TypeIndex typeIndex,
+            LoadingPolicy globalLoadingPolicy, InjectorFactory injectorFactory) {
+        this.descriptorMap = descriptorMap;
+        this.typeIndex = typeIndex;
+        this.globalLoadingPolicy = globalLoadingPolicy;
+        this.injectorFactory = injectorFactory;
+    }
+
+    /**
+     * Compiles a descriptor into a creation plan.
+     * 
+     * @param beanName The name of the bean the descriptor is defined under.
+     * @param descriptor The descriptor to compile.
+     * @return An immutable plan for creating the bean.
+     */
+    ReflectiveBeanPlan compile(String beanName, BeanDescriptor descriptor) {
+        String exceptionMessagePrefix = "Could not load bean " + beanName + ": ";
+        Class<?> beanClass = loadClass(descriptor, exceptionMessagePrefix);
+
+        try {
+            Constructor<?> constructor = null;
+            Object[] constructorArguments = new Object[0];
+
+            //Try to inject properties through a suitable constructor first
+            List<?> descriptorConstructorParameters = descriptor.getConstructorParameters();
+
+            if (descriptorConstructorParameters != null &&
+                    !descriptorConstructorParameters.isEmpty()) {
+                constructorArguments = new Object[descriptorConstructorParameters.size()];
+                constructor = matchConstructor(beanName, beanClass,
+                        descriptorConstructorParameters, constructorArguments, false,
+                        exceptionMessagePrefix);
+
+                //Only convert values if no constructor takes them as they are
+                if (constructor == null) {
+                    constructor = matchConstructor(beanName, beanClass,
+                            descriptorConstructorParameters, constructorArguments, true,
+                            exceptionMessagePrefix);
+                }
+
+                if (constructor == null) {
+                    constructorArguments = new Object[0];
+                }
+            }
+
+            //if no suitable constructor was found, use a default one
+            if (constructor == null) {
+                for (Constructor<?> candidate : beanClass.getDeclaredConstructors()) {
+                    if (candidate.getParameterTypes().length == 0) {
+                        constructor = candidate;
+                        break;
+                    }
+                }
+            }
+
+            if (constructor == null) {
+                throw new BeanLoadingException(exceptionMessagePrefix +
+                        "Cannot create new instance of class " + descriptor.getType() +
+                        ". Did you provide proper parameters for the constructor or a " +
+                        "default constructor?");
+            }
+
+            if (!Modifier.isPublic(constructor.getModifiers()) ||
+                    !Modifier.isPublic(beanClass.getModifiers())) {
+                constructor.setAccessible(true);
+            }
+
+            List<PropertyInjection> propertyInjections = new ArrayList<PropertyInjection>();
+            Map<String, ?> properties = descriptor.getProperties();
+
+            if (properties != null) {
+                for (Entry<String, ?> property : properties.entrySet()) {
+                    propertyInjections.add(compileProperty(beanName, beanClass,
+                            property.getKey(), property.getValue(), exceptionMessagePrefix));
+                }
+            }
+
+            Method initMethod = descriptor.getInitMethod() == null ? null :
+                BeanPlan.findCallback(beanName, beanClass, descriptor.getInitMethod());
+            Method destroyMethod = descriptor.getDestroyMethod() == null ? null :
+                BeanPlan.findCallback(beanName, beanClass, descriptor.getDestroyMethod());
+
+            return new ReflectiveBeanPlan(beanName, descriptor.getScope(), beanClass,
+                    descriptor.getPoolSize(), descriptor.getIdleTimeout(), constructor,
+                    injectorFactory.createInstantiator(constructor), constructorArguments,
+                    propertyInjections.toArray(
+                            new PropertyInjection[propertyInjections.size()]),
+                    initMethod, destroyMethod);
+        } catch (NoSuchFieldException nsfe) {
+            throw new BeanLoadingException(exceptionMessagePrefix +
+                    "Cannot find declared field of class " + descriptor.getType(), nsfe);
+        } catch (SecurityException e) {
+            throw new BeanLoadingException(exceptionMessagePrefix +
+                    "SecurityManager prevented creation of bean.", e);
+        }
+    }
+
+    /**
+     * Finds the first declared constructor the configured parameters can be passed to, and
+     * fills in the arguments for it. Bean references are matched against the class of the
+     * referenced bean, so nothing has to be instantiated to choose a constructor.
+     * 
+     * @param convert Whether values may be converted to the types of the parameters.
+     * @return The matching constructor, or null if there is none.
+     */
+    private Constructor<?> matchConstructor(String beanName, Class<?> beanClass,
+            List<?> descriptorConstructorParameters, Object[] constructorArguments,
+            boolean convert, String exceptionMessagePrefix) {
+        for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+            Class<?>[] constructorParameterTypes = constructor.getParameterTypes();
+
+            if (constructorParameterTypes.length != descriptorConstructorParameters.size()) {
+                //This is not the right constructor, continue.
+                continue;
+            }
+
+            boolean wrongConstructor = false;
+
+            for (int i = 0; i < constructorParameterTypes.length; i++) {
+                Class<?> constructorParameterType = constructorParameterTypes[i];
+                Object parameter = descriptorConstructorParameters.get(i);
+
+                if (parameter instanceof BeanDescriptor) {
+                    String referencedBeanName = referencedBeanName((BeanDescriptor) parameter);
+
+                    if (referencedBeanName != null && constructorParameterType.isAssignableFrom(
+                            loadClass(descriptorMap.get(referencedBeanName),
+                                    exceptionMessagePrefix))) {
+                        constructorArguments[i] = new BeanReference(referencedBeanName, false);
+                    } else {
+                        wrongConstructor = true;
+                    }
+                } else if (parameter instanceof BeanCollection) {
+                    BeanCollectionReference collection = compileCollection(beanName,
+                            (BeanCollection) parameter, exceptionMessagePrefix);
+
+                    if (constructorParameterType.isAssignableFrom(
+                            collection.getCollectionType())) {
+                        constructorArguments[i] = collection;
+                    } else {
+                        wrongConstructor = true;
+                    }
+                } else if (parameter == null) {
+                    wrongConstructor = constructorParameterType.isPrimitive();
+                    constructorArguments[i] = null;
+                } else if (ConverterRegistry.isAssignable(parameter, constructorParameterType)) {
+                    constructorArguments[i] = parameter;
+                } else if (convert) {
+                    try {
+                        constructorArguments[i] = convert(parameter, constructorParameterType);
+                    } catch (RuntimeException e) {
+                        wrongConstructor = true;
+                    }
+                } else {
+                    wrongConstructor = true;
+                }
+
+                if (wrongConstructor) break;
+            }
+
+            if (!wrongConstructor) {
+                return constructor;
+            }
+        }
+
+        return null;
+    }
+
+    private PropertyInjection compileProperty(String beanName, Class<?> beanClass,
+            String propertyName, Object value, String exceptionMessagePrefix)
+            throws NoSuchFieldException {
+        Class<?> valueClass = value == null ? null : value.getClass();
+        boolean lazy = false;
+
+        if (value instanceof BeanCollection) {
+            BeanCollectionReference collection = compileCollection(beanName,
+                    (BeanCollection) value, exceptionMessagePrefix);
+            value = collection;
+            valueClass = collection.getCollectionType();
+        }
+
+        if (value instanceof BeanDescriptor) {
+            BeanDescriptor referencedDescriptor = (BeanDescriptor) value;
+            String referencedBeanName = referencedBeanName(referencedDescriptor);
+
+            if (referencedBeanName == null) {
+                throw new BeanLoadingException(exceptionMessagePrefix + "Property " +
+                        propertyName + " references a bean that is not defined in any of " +
+                        "the configuration files.");
+            }
+
+            //An alias within a file may still hold a definition that was overridden
+            referencedDescriptor = descriptorMap.get(referencedBeanName);
+            lazy = referencedDescriptor.isLazy(globalLoadingPolicy);
+            value = new BeanReference(referencedBeanName, lazy);
+            valueClass = loadClass(referencedDescriptor, exceptionMessagePrefix);
+        }
+
+        boolean literal = !(value instanceof BeanReference) &&
+                !(value instanceof BeanCollectionReference);
+        RuntimeException conversionFailure = null;
+
+        //Use the setter instead of injecting the bean directly into the field,
+        //if it exists. Lazy beans are always injected into the field, since the proxy
+        //replaces itself there once it is first used.
+        if (!lazy && valueClass != null) {
+            String setterName = "set" + Character.toUpperCase(propertyName.charAt(0)) +
+                    propertyName.substring(1);
+            Method setter = null;
+            Object setterValue = null;
+            int setterMatch = 0;
+
+            //A setter taking exactly the type of the value wins over one taking a supertype,
+            //which wins over one the value has to be converted for
+            for (Method method : beanClass.getDeclaredMethods()) {
+                if (!method.getName().equals(setterName) ||
+                        method.getParameterTypes().length != 1) {
+                    continue;
+                }
+
+                Class<?> parameterType = method.getParameterTypes()[0];
+
+                if (parameterType.equals(valueClass)) {
+                    setter = method;
+                    setterValue = value;
+                    break;
+                } else if (setterMatch < 2 && (literal ?
+                        ConverterRegistry.isAssignable(value, parameterType) :
+                        parameterType.isAssignableFrom(valueClass))) {
+                    setter = method;
+                    setterValue = value;
+                    setterMatch = 2;
+                } else if (setterMatch < 1 && literal) {
+                    try {
+                        setterValue = convert(value, parameterType);
+                        setter = method;
+                        setterMatch = 1;
+                    } catch (RuntimeException e) {
+                        conversionFailure = e;
+                    }
+                }
+            }
+
+            if (setter != null) {
+                setter.setAccessible(true);
+
+                return new PropertyInjection(propertyName, setterValue,
+                        injectorFactory.createSetterWriter(setter), setter, null);
+            }
+        }
+
+        //If no other way of setting the value is possible, set it directly
+        Field field;
+
+        try {
+            field = beanClass.getDeclaredField(propertyName);
+        } catch (NoSuchFieldException e) {
+            if (conversionFailure != null) {
+                throw new BeanLoadingException(exceptionMessagePrefix + "Cannot convert " +
+                        "value of property " + propertyName + " for its setter: " +
+                        conversionFailure.getMessage(), conversionFailure);
+            }
+
+            throw e;
+        }
+
+        if (literal && value != null && !ConverterRegistry.isAssignable(value,
+                field.getType())) {
+            try {
+                value = convert(value, field.getType());
+            } catch (RuntimeException e) {
+                throw new BeanLoadingException(exceptionMessagePrefix + "Cannot convert " +
+                        "value of property " + propertyName + " to " +
+                        field.getType().getName() + ": " + e.getMessage(), e);
+            }
+        }
+
+        //The proxy casts its target to the type of the field on every call
+        if (lazy && !field.getType().isAssignableFrom(valueClass)) {
+            throw new BeanLoadingException(exceptionMessagePrefix + "Lazy bean " +
+                    ((BeanReference) value).getBeanName() + " of type " + valueClass.getName() +
+                    " cannot be injected into field " + propertyName + " of type " +
+                    field.getType().getName());
+        }
+
+        if (value instanceof BeanCollectionReference &&
+                !field.getType().isAssignableFrom(valueClass)) {
+            throw new BeanLoadingException(exceptionMessagePrefix + "Cannot inject a " +
+                    valueClass.getSimpleName() + " of beans into field " + propertyName +
+                    " of type " + field.getType().getName());
+        }
+
+        if (!Modifier.isPublic(field.getModifiers())) {
+            field.setAccessible(true);
+        }
+
+        return new PropertyInjection(propertyName, value,
+                injectorFactory.createFieldWriter(field), null, field);
+    }
+
+    /**
+     * Converts a configured value to the type of the member it is injected through.
+     * 
+     * @throws IllegalArgumentException If there is no converter between the types.
+     * @throws RuntimeException If the converter fails.
+     */
+    private static Object convert(Object value, Class<?> targetType) {
+        Converter<Object, Object> converter = ConverterRegistry.find(value.getClass(),
+                targetType);
+
+        if (converter == null) {
+            throw new IllegalArgumentException("No converter from " +
+                    value.getClass().getName() + " to " + targetType.getName());
+        }
+
+        Object converted = converter.convert(value);
+
+        if (converted == null ? targetType.isPrimitive() :
+                !ConverterRegistry.isAssignable(converted, targetType)) {
+            throw new IllegalArgumentException("Converter from " + value.getClass().getName() +
+                    " to " + targetType.getName() + " returned " + converted);
+        }
+
+        return converted;
+    }
+
+    /**
+     * Looks up the beans of a collection. The bean the collection is injected into is left out,
+     * and so are pooled beans, which have to be borrowed.
+     */
+    private BeanCollectionReference compileCollection(String beanName, BeanCollection collection,
+            String exceptionMessagePrefix) {
+        if (TypeIndex.loadClass(collection.getType()) == null) {
+            throw new BeanLoadingException(exceptionMessagePrefix + "Cannot find class " +
+                    collection.getType() + " of collection " + collection);
+        }
+
+        List<String> beanNames = new ArrayList<String>();
+
+        for (String collectedBeanName : typeIndex.getBeanNames(collection.getType())) {
+            if (!collectedBeanName.equals(beanName) &&
+                    !isPooled(descriptorMap.get(collectedBeanName))) {
+                beanNames.add(collectedBeanName);
+            }
+        }
+
+        return new BeanCollectionReference(beanNames, collection.isMap());
+    }
+
+    /**
+     * @param descriptor A descriptor, or null if it is not known.
+     */
+    static boolean isPooled(BeanDescriptor descriptor) {
+        return descriptor != null && descriptor.getBeanScope() == BeanScope.POOLED;
+    }
+
+    /**
+     * @return The name of the bean a descriptor is registered under, or null if no bean of
+     * that name is defined.
+     */
+    private String referencedBeanName(BeanDescriptor descriptor) {
+        String beanName = descriptor.getBeanName();
+
+        return beanName != null && descriptorMap.containsKey(beanName) ? beanName : null;
+    }
+
+    private Class<?> loadClass(BeanDescriptor descriptor, String exceptionMessagePrefix) {
+        FlightRecorderEvents.BeanClassLoad event = FlightRecorderEvents.beginClassLoad();
+        Class<?> loadedClass = null;
+
+        try {
+            loadedClass = Class.forName(descriptor.getType());
+
+            return loadedClass;
+        } catch (ClassNotFoundException e) {
+            throw new BeanLoadingException(exceptionMessagePrefix + "Cannot find class " +
+                    descriptor.getType(), e);
+        } finally {
+            FlightRecorderEvents.endClassLoad(event, descriptor.getType(), loadedClass, true);
+        }
+    }
+}
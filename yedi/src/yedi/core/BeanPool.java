@@ -0,0 +1,307 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * BeanPool holds the idle instances of a pooled bean. At most poolSize instances can be
+ * borrowed at the same time, and borrowers wait while all of them are in use. A borrower that
+ * finds no idle instance creates a new one.
+ * <p>
+ * Idle instances are kept in an array of slots. Every thread starts searching for an idle
+ * instance, and for a free slot to return one to, at a slot picked from its own id, so threads
+ * borrowing at the same time mostly touch different slots. Borrowing and returning take no
+ * locks and allocate nothing once the pool is warm: the handle of an instance is created with
+ * it and reused for every borrow.
+ * <p>
+ * With an idle timeout, instances that were not borrowed for that long are dropped from the
+ * pool by a shared background thread, which only holds weak references to pools. Closing the
+ * container closes its pools, which stops their eviction and hands their idle instances over to
+ * be destroyed. Every instance the pool drops itself is destroyed right away, on the thread
+ * that drops it.
+ * 
+ * @author mnaglic
+ * @see PooledBean
+ */
+final class BeanPool {
+
+    /**
+     * The pool size of pooled beans that do not define one.
+     */
+    static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private final BeanContainer container;
+    private final BeanPlan plan;
+    private final AtomicReferenceArray<PooledBean<Object>> slots;
+    private final Semaphore permits;
+    private final long idleTimeout;
+    private final Eviction eviction;
+    private volatile boolean closed;
+
+    /**
+     * @param container The container creating the instances.
+     * @param plan The plan of the pooled bean.
+     */
+    BeanPool(BeanContainer container, BeanPlan plan) {
+        int poolSize = plan.getPoolSize() > 0 ? plan.getPoolSize() : DEFAULT_POOL_SIZE;
+        this.container = container;
+        this.plan = plan;
+        this.slots = new AtomicReferenceArray<PooledBean<Object>>(poolSize);
+        this.permits = new Semaphore(poolSize);
+        this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(plan.getIdleTimeout());
+
+        this.eviction = idleTimeout > 0 ? Eviction.schedule(this,
+                Math.max(idleTimeout / 2, TimeUnit.MILLISECONDS.toNanos(1))) : null;
+    }
+
+    /**
+     * Borrows an idle instance, or creates one if there is none. Waits while all instances
+     * are borrowed.
+     * 
+     * @return The handle of the borrowed instance.
+     */
+    PooledBean<Object> borrow() {
+        permits.acquireUninterruptibly();
+
+        try {
+            int slotCount = slots.length();
+            int slot = firstSlot(slotCount);
+
+            for (int i = 0; i < slotCount; i++) {
+                PooledBean<Object> pooled = slots.get(slot);
+
+                if (pooled != null && slots.compareAndSet(slot, pooled, null)) {
+                    pooled.borrowed = true;
+
+                    return pooled;
+                }
+
+                if (++slot == slotCount) {
+                    slot = 0;
+                }
+            }
+
+            PooledBean<Object> pooled = new PooledBean<Object>(this, container.createBean(plan));
+            pooled.borrowed = true;
+
+            return pooled;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed instance to the pool. An instance that finds every slot taken, which
+     * can only happen when a borrower missed an instance that was being returned, is dropped
+     * and destroyed, and so is every instance returned to a closed pool.
+     * 
+     * @throws BeanLoadingException If the destroy callback of a dropped instance fails.
+     */
+    void giveBack(PooledBean<?> pooled) {
+        @SuppressWarnings("unchecked")
+        PooledBean<Object> returned = (PooledBean<Object>) pooled;
+
+        if (closed) {
+            permits.release();
+            destroy(returned.get());
+            return;
+        }
+
+        if (idleTimeout > 0) {
+            returned.returnTime = System.nanoTime();
+        }
+
+        int slotCount = slots.length();
+        int slot = firstSlot(slotCount);
+
+        for (int i = 0; i < slotCount; i++) {
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, returned)) {
+                //If close swept the slots in the meantime, nothing else destroys the instance
+                if (closed && slots.compareAndSet(slot, returned, null)) {
+                    permits.release();
+                    destroy(returned.get());
+                    return;
+                }
+
+                permits.release();
+                return;
+            }
+
+            if (++slot == slotCount) {
+                slot = 0;
+            }
+        }
+
+        permits.release();
+        destroy(returned.get());
+    }
+
+    /**
+     * Drops and destroys the instances that have been idle for longer than the idle timeout.
+     * A failing destroy callback is handed to the uncaught exception handler of the evicting
+     * thread, since there is no caller to throw it to, and eviction goes on.
+     */
+    void evictIdle() {
+        long now = System.nanoTime();
+
+        for (int slot = 0; slot < slots.length(); slot++) {
+            PooledBean<Object> pooled = slots.get(slot);
+
+            if (pooled != null && now - pooled.returnTime > idleTimeout &&
+                    slots.compareAndSet(slot, pooled, null)) {
+                try {
+                    destroy(pooled.get());
+                } catch (RuntimeException e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the destroy callback of an instance the pool dropped.
+     */
+    private void destroy(Object bean) {
+        if (!plan.hasDestroyCallback(bean)) {
+            return;
+        }
+
+        try {
+            plan.destroy(bean);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BeanLoadingException("Could not destroy bean " + plan.getBeanName() +
+                    ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops evicting idle instances and takes every idle instance out of the pool. Instances
+     * that are borrowed at the time are destroyed when they are returned.
+     * 
+     * @return The idle instances.
+     */
+    List<Object> close() {
+        closed = true;
+
+        if (eviction != null) {
+            eviction.cancel();
+        }
+
+        List<Object> idleBeans = new ArrayList<Object>();
+
+        for (int slot = 0; slot < slots.length(); slot++) {
+            PooledBean<Object> pooled = slots.getAndSet(slot, null);
+
+            if (pooled != null) {
+                idleBeans.add(pooled.get());
+            }
+        }
+
+        return idleBeans;
+    }
+
+    BeanPlan getPlan() {
+        return plan;
+    }
+
+    private static int firstSlot(int slotCount) {
+        //Spread consecutive thread ids over the slots
+        long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+
+        return (int) ((hash >>> 33) % slotCount);
+    }
+
+    /**
+     * Holds the thread that evicts idle instances for all pools. It is only started once a pool
+     * with an idle timeout is created.
+     */
+    private static final class Evictor {
+
+        static final ScheduledThreadPoolExecutor instance = create();
+
+        private static ScheduledThreadPoolExecutor create() {
+            ScheduledThreadPoolExecutor evictor = new ScheduledThreadPoolExecutor(1,
+                    new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "yedi-pool-evictor");
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+            evictor.setRemoveOnCancelPolicy(true);
+
+            return evictor;
+        }
+    }
+
+    /**
+     * Periodically evicts the idle instances of a pool until the pool is closed or garbage
+     * collected.
+     */
+    private static final class Eviction implements Runnable {
+
+        private final WeakReference<BeanPool> pool;
+        private volatile Future<?> future;
+
+        private Eviction(BeanPool pool) {
+            this.pool = new WeakReference<BeanPool>(pool);
+        }
+
+        static Eviction schedule(BeanPool pool, long periodNanos) {
+            Eviction eviction = new Eviction(pool);
+            eviction.future = Evictor.instance.scheduleWithFixedDelay(eviction, periodNanos,
+                    periodNanos, TimeUnit.NANOSECONDS);
+
+            return eviction;
+        }
+
+        void cancel() {
+            future.cancel(false);
+        }
+
+        @Override
+        public void run() {
+            BeanPool beanPool = pool.get();
+
+            if (beanPool != null) {
+                beanPool.evictIdle();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
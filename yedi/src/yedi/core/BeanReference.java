@@ -0,0 +1,46 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * BeanReference is a resolved reference from one bean to another. Creation plans keep it in
+ * place of a constructor argument or a property value, and the container replaces it with the
+ * referenced bean (or a lazy proxy for it) when the plan is executed.
+ * 
+ * @author mnaglic
+ * @see BeanPlan
+ */
+final class BeanReference {
+
+    private final String beanName;
+    private final boolean lazy;
+
+    BeanReference(String beanName, boolean lazy) {
+        this.beanName = beanName;
+        this.lazy = lazy;
+    }
+
+    String getBeanName() {
+        return beanName;
+    }
+
+    boolean isLazy() {
+        return lazy;
+    }
+}
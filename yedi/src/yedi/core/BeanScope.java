@@ -1,42 +1,60 @@
-/**
- Copyright 2012 Matej Nagli
-
-    This file is part of Yedi.
-
-    Yedi is free software: you can redistribute it and/or modify
-    it under the terms of the GNU Lesser General Public License as published by
-    the Free Software Foundation, either version 3 of the License, or
-    (at your option) any later version.
-
-    Yedi is distributed in the hope that it will be useful,
-    but WITHOUT ANY WARRANTY; without even the implied warranty of
-    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-    GNU Lesser General Public License for more details.
-
-    You should have received a copy of the GNU Lesser General Public License
-    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
- */
-package yedi.core;
-
-/**
- * BeanScope represents the scope of a bean, which can be either singleton or prototype.
- * 
- * @author mnaglic
- *
- */
-enum BeanScope {
-
-    SINGLETON("singleton"),
-    PROTOTYPE("prototype");
-
-    private String scope;
-
-    private BeanScope(String scope) {
-        this.scope = scope;
-    }
-
-    @Override
-    public String toString() {
-        return scope;
-    }
-}
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * BeanScope represents the scope of a bean, which can be singleton, prototype or pooled. Pooled
+ * beans are borrowed from a bounded pool of instances and returned to it after use. Beans in a
+ * scope registered in the {@link ScopeRegistry} have the scope CUSTOM.
+ * 
+ * @author mnaglic
+ *
+ */
+enum BeanScope {
+
+    SINGLETON("singleton"),
+    PROTOTYPE("prototype"),
+    POOLED("pooled"),
+    CUSTOM("custom");
+
+    private String scope;
+
+    private BeanScope(String scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * @param scope The name of a scope, as used in the configuration.
+     * @return The built-in scope with the given name, or null if there is no such scope.
+     */
+    static BeanScope forName(String scope) {
+        for (BeanScope beanScope : values()) {
+            if (beanScope != CUSTOM && beanScope.scope.equals(scope)) {
+                return beanScope;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return scope;
+    }
+}
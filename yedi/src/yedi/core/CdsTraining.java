@@ -0,0 +1,149 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * CdsTraining creates a class data sharing archive for an application that uses Yedi. It runs
+ * the container of a Yedi configuration in a training JVM, which loads Yedi, SnakeYAML and the
+ * classes of every bean, and records every loaded class in a class list. A second JVM dumps the
+ * classes of the list into an AppCDS archive. Applications started with the archive map the
+ * classes from it instead of loading, parsing and verifying them one by one, which shortens the
+ * time until the first bean is fetched. Run it with the class path of the application:
+ * 
+ * <pre>
+ * java -cp app.jar:yedi.jar:snakeyaml-1.9.jar yedi.core.CdsTraining resources/yedi-config.yaml yedi
+ * </pre>
+ * 
+ * which writes yedi.classlist and yedi.jsa, and start the application with
+ * 
+ * <pre>
+ * java -XX:SharedArchiveFile=yedi.jsa -cp app.jar:yedi.jar:snakeyaml-1.9.jar com.acme.Main
+ * </pre>
+ * 
+ * The archive is only used if the application is started by the same JDK, with the same class
+ * path or one that starts with it, so it has to be created again whenever either changes.
+ * 
+ * @author mnaglic
+ */
+public final class CdsTraining {
+
+    private static final String TRAINING_RUN = "--run";
+
+    private CdsTraining() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 2 && args[0].equals(TRAINING_RUN)) {
+            train(args[1]);
+            return;
+        }
+
+        if (args.length != 2) {
+            System.err.println("Usage: CdsTraining <yedi-configuration> <output-prefix>");
+            System.exit(2);
+        }
+
+        File classList = new File(args[1] + ".classlist");
+        File archive = new File(args[1] + ".jsa");
+        String classPath = System.getProperty("java.class.path");
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java")
+                .getPath();
+
+        try {
+            runJvm(java, "-XX:DumpLoadedClassList=" + classList.getPath(), "-cp", classPath,
+                    CdsTraining.class.getName(), TRAINING_RUN, args[0]);
+            runJvm(java, "-Xshare:dump", "-XX:SharedClassListFile=" + classList.getPath(),
+                    "-XX:SharedArchiveFile=" + archive.getPath(), "-cp", classPath);
+        } catch (ConfigurationException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        System.out.println("Generated " + classList.getPath() + " and " + archive.getPath());
+        System.out.println("Start the application with -XX:SharedArchiveFile=" +
+                archive.getPath() + " -cp " + classPath);
+    }
+
+    /**
+     * Loads the class of every bean of a configuration and fetches every bean once. Beans that
+     * cannot be fetched outside of the application, for example because they need a resource
+     * that is not available, are reported and skipped.
+     * 
+     * @param yediConfigurationPath The path of the Yedi configuration file.
+     */
+    static void train(String yediConfigurationPath) {
+        final BeanContainer container = new BeanContainer(yediConfigurationPath);
+        final List<String> skippedBeans = new ArrayList<String>();
+
+        //Beans in the 'scoped' scope need a context
+        ScopedContext.run(new Runnable() {
+
+            @Override
+            public void run() {
+                for (String beanName : container.getBeanNames()) {
+                    BeanDescriptor descriptor = container.getDescriptor(beanName);
+
+                    if (descriptor != null) {
+                        TypeIndex.loadClass(descriptor.getType());
+                    }
+
+                    try {
+                        if (container.getPlan(beanName).getScope() == BeanScope.POOLED) {
+                            container.borrowBean(beanName).close();
+                        } else {
+                            container.getBean(beanName);
+                        }
+                    } catch (RuntimeException e) {
+                        skippedBeans.add(beanName + ": " + e.getMessage());
+                    }
+                }
+            }
+        });
+
+        for (String skippedBean : skippedBeans) {
+            System.err.println("Skipped bean " + skippedBean);
+        }
+    }
+
+    private static void runJvm(String... command) {
+        int exitCode;
+
+        try {
+            exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        } catch (IOException e) {
+            throw new ConfigurationException("Could not start " + command[0], e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigurationException("Interrupted while waiting for the JVM", e);
+        }
+
+        if (exitCode != 0) {
+            throw new ConfigurationException("Command failed with exit code " + exitCode + ": " +
+                    Arrays.toString(command));
+        }
+    }
+}
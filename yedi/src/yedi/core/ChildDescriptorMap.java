@@ -0,0 +1,206 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * ChildDescriptorMap holds the bean descriptors of a child container, on top of the descriptors
+ * of its parent. Looking up a bean the child does not define looks it up in the parent.
+ * <p>
+ * The child defines the beans of its own configuration files. It also defines again every bean
+ * of the parent that references one of them, directly or through other beans, and every bean
+ * of the parent that gets a collection whose beans the child changes. Those beans have to be
+ * created from the beans of the child, while all other beans are served by the parent. They
+ * are found in the dependency graphs of the parent and its own parents, so creating a child
+ * costs as much as its own beans and the beans affected by them.
+ *
+ * @author mnaglic
+ * @see BeanContainer#createChild(String...)
+ */
+final class ChildDescriptorMap extends AbstractMap<String, BeanDescriptor> {
+
+    private final BeanContainer parent;
+    private final Map<String, BeanDescriptor> localBeans;
+    private final TypeIndex typeIndex;
+
+    /**
+     * @param parent The parent container.
+     * @param childBeans The descriptors of the configuration files of the child, by bean name.
+     * @param parentIndex The type index of the parent container.
+     */
+    ChildDescriptorMap(BeanContainer parent, Map<String, BeanDescriptor> childBeans,
+            TypeIndex parentIndex) {
+        this.parent = parent;
+
+        Set<String> parentBeanNames = parent.getBeanNames();
+        Map<String, String> beanTypes = new LinkedHashMap<String, String>();
+        List<String> replacedTypes = new ArrayList<String>();
+        List<String> pending = new ArrayList<String>();
+
+        for (Entry<String, BeanDescriptor> childBean : childBeans.entrySet()) {
+            beanTypes.put(childBean.getKey(), childBean.getValue().getType());
+
+            if (parentBeanNames.contains(childBean.getKey())) {
+                replacedTypes.add(parent.getDescriptor(childBean.getKey()).getType());
+                pending.add(childBean.getKey());
+            }
+        }
+
+        this.typeIndex = TypeIndex.forChild(parentIndex, beanTypes, replacedTypes);
+
+        List<DependencyGraph> graphs = new ArrayList<DependencyGraph>();
+
+        for (BeanContainer ancestor = parent; ancestor != null; ancestor = ancestor.getParent()) {
+            graphs.add(ancestor.getDependencyGraph());
+        }
+
+        for (String typeName : typeIndex.getTypeNames()) {
+            for (DependencyGraph graph : graphs) {
+                pending.addAll(graph.getCollectors(typeName));
+            }
+        }
+
+        Set<String> affectedBeans = new LinkedHashSet<String>();
+
+        while (!pending.isEmpty()) {
+            String beanName = pending.remove(pending.size() - 1);
+
+            if (affectedBeans.add(beanName)) {
+                for (DependencyGraph graph : graphs) {
+                    pending.addAll(graph.getReferrers(beanName));
+                }
+            }
+        }
+
+        this.localBeans = new LinkedHashMap<String, BeanDescriptor>();
+
+        for (String beanName : affectedBeans) {
+            if (!childBeans.containsKey(beanName)) {
+                localBeans.put(beanName, parent.getDescriptor(beanName));
+            }
+        }
+
+        localBeans.putAll(childBeans);
+    }
+
+    /**
+     * @return The descriptors of the beans the child defines itself, by bean name.
+     */
+    Map<String, BeanDescriptor> getLocalBeans() {
+        return localBeans;
+    }
+
+    /**
+     * @return The index of the beans of the child and of its parent.
+     */
+    TypeIndex getTypeIndex() {
+        return typeIndex;
+    }
+
+    @Override
+    public BeanDescriptor get(Object key) {
+        BeanDescriptor descriptor = localBeans.get(key);
+
+        if (descriptor == null && key instanceof String) {
+            descriptor = parent.getDescriptor((String) key);
+        }
+
+        return descriptor;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return localBeans.containsKey(key) || parent.getBeanNames().contains(key);
+    }
+
+    @Override
+    public Set<Entry<String, BeanDescriptor>> entrySet() {
+        return new AbstractSet<Entry<String, BeanDescriptor>>() {
+
+            @Override
+            public Iterator<Entry<String, BeanDescriptor>> iterator() {
+                return new Iterator<Entry<String, BeanDescriptor>>() {
+
+                    private final Iterator<String> localNames = localBeans.keySet().iterator();
+                    private final Iterator<String> parentNames =
+                            parent.getBeanNames().iterator();
+                    private String next;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (next == null && localNames.hasNext()) {
+                            next = localNames.next();
+                        }
+
+                        while (next == null && parentNames.hasNext()) {
+                            String parentName = parentNames.next();
+
+                            if (!localBeans.containsKey(parentName)) {
+                                next = parentName;
+                            }
+                        }
+
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry<String, BeanDescriptor> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        String beanName = next;
+                        next = null;
+
+                        return new SimpleImmutableEntry<String, BeanDescriptor>(beanName,
+                                get(beanName));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = localBeans.size();
+
+                for (String parentName : parent.getBeanNames()) {
+                    if (!localBeans.containsKey(parentName)) {
+                        size++;
+                    }
+                }
+
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * ConfigurationWatcher reloads a container whenever one of its bean configuration files
+ * changes. It watches the directories of the files on a daemon thread. Editors often save a
+ * file in several steps, so the watcher waits until the directories are quiet for a moment
+ * before it reloads.
+ * <p>
+ * A failed reload leaves the old configuration in place. The failure is passed to the uncaught
+ * exception handler of the watcher thread and the watcher keeps watching, so fixing the file
+ * triggers the next reload.
+ * 
+ * @author mnaglic
+ * @see BeanContainer#reload()
+ */
+final class ConfigurationWatcher implements Runnable {
+
+    private static final long QUIET_MILLISECONDS = 100;
+
+    private final BeanContainer container;
+    private final WatchService watchService;
+    private final Set<Path> files = new HashSet<Path>();
+
+    /**
+     * @param container The container to reload.
+     * @param locations The locations of the bean configuration files.
+     */
+    ConfigurationWatcher(BeanContainer container, List<String> locations) {
+        this.container = container;
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Set<Path> directories = new HashSet<Path>();
+
+            for (String location : locations) {
+                Path file = Paths.get(location).toAbsolutePath().normalize();
+                files.add(file);
+
+                if (directories.add(file.getParent())) {
+                    file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+        } catch (IOException e) {
+            throw new ConfigurationException("Could not watch the bean configuration files", e);
+        }
+    }
+
+    /**
+     * Starts watching on a daemon thread.
+     */
+    void start() {
+        Thread thread = new Thread(this, "yedi-reload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching. A reload that is already running is finished.
+     */
+    void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            //Nothing is watched any more either way
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (!concernsFiles(watchService.take())) {
+                    continue;
+                }
+
+                WatchKey key;
+
+                while ((key = watchService.poll(QUIET_MILLISECONDS,
+                        TimeUnit.MILLISECONDS)) != null) {
+                    concernsFiles(key);
+                }
+
+                try {
+                    container.reload();
+                } catch (RuntimeException e) {
+                    Thread currentThread = Thread.currentThread();
+                    currentThread.getUncaughtExceptionHandler().uncaughtException(currentThread, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            //Stop watching
+        } catch (ClosedWatchServiceException e) {
+            //Stop watching
+        }
+    }
+
+    /**
+     * Consumes the events of a key.
+     * 
+     * @return Whether any of the events concerns a bean configuration file.
+     */
+    private boolean concernsFiles(WatchKey key) {
+        boolean concernsFiles = false;
+        Path directory = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                    files.contains(directory.resolve((Path) event.context()))) {
+                concernsFiles = true;
+            }
+        }
+
+        key.reset();
+
+        return concernsFiles;
+    }
+}
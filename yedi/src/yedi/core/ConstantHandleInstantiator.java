@@ -0,0 +1,60 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+
+import yedi.core.InjectorFactory.Instantiator;
+
+/**
+ * ConstantHandleInstantiator is the template of the instantiators created by the
+ * {@link MethodHandleInjectorFactory}. The class is never used as it is: its class file is
+ * defined again as a hidden class for every constructor, with the (Object[])Object handle of
+ * the constructor as class data. The handle is then a static final constant of its own class,
+ * which the JIT compiler folds and inlines into the caller like a direct constructor call.
+ * 
+ * @author mnaglic
+ */
+final class ConstantHandleInstantiator implements Instantiator {
+
+    private static final MethodHandle handle;
+
+    static {
+        try {
+            handle = MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME,
+                    MethodHandle.class);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Object newInstance(Object[] arguments) throws InvocationTargetException {
+        try {
+            return (Object) handle.invokeExact(arguments);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+}
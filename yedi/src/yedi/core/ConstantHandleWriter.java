@@ -0,0 +1,59 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+
+import yedi.core.InjectorFactory.PropertyWriter;
+
+/**
+ * ConstantHandleWriter is the template of the property writers created by the
+ * {@link MethodHandleInjectorFactory}. Like {@link ConstantHandleInstantiator}, its class file
+ * is defined again as a hidden class for every setter and field, with the (Object, Object)void
+ * handle of the member as a static final constant.
+ * 
+ * @author mnaglic
+ */
+final class ConstantHandleWriter implements PropertyWriter {
+
+    private static final MethodHandle handle;
+
+    static {
+        try {
+            handle = MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME,
+                    MethodHandle.class);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public void write(Object bean, Object value) throws InvocationTargetException {
+        try {
+            handle.invokeExact(bean, value);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+}
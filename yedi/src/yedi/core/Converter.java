@@ -0,0 +1,41 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * Converter turns a value from a bean configuration into the type of the constructor parameter,
+ * setter or field it is injected through. Converters are registered in the
+ * {@link ConverterRegistry} and called when a plan is compiled, so every value is converted
+ * once, not every time a bean is created.
+ * 
+ * @author mnaglic
+ * @see ConverterRegistry
+ *
+ * @param <S> The type of the configured value.
+ * @param <T> The type of the converted value.
+ */
+public interface Converter<S, T> {
+
+    /**
+     * @param value The configured value, never null.
+     * @return The converted value.
+     * @throws IllegalArgumentException If the value cannot be converted.
+     */
+    T convert(S value);
+}
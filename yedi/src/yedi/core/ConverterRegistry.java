@@ -0,0 +1,413 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * ConverterRegistry finds the {@link Converter} for a value that does not have the type of the
+ * constructor parameter, setter or field it is injected through. Besides registered converters,
+ * it converts:
+ * <ul>
+ * <li>numbers to every other number type, as long as the value fits. Integral types only
+ * take values without a fraction that are in their range, float and double take any value
+ * they can hold without overflowing,</li>
+ * <li>strings to numbers, booleans, characters, enum constants and durations. Enum constants
+ * are matched by name, ignoring case and treating dashes as underscores. Durations are written
+ * in ISO-8601, such as PT1.5S, or as a number with one of the units ns, us, ms, s, m, h and d,
+ * such as 500ms.</li>
+ * </ul>
+ * A registered converter wins over the built-in conversions. Primitive types and their wrappers
+ * are interchangeable as targets. Converters are looked up once per pair of types and cached.
+ * <p>
+ * Converters have to be registered before a configuration using them is loaded.
+ * 
+ * @author mnaglic
+ * @see Converter
+ */
+public final class ConverterRegistry {
+
+    private static final Pattern DURATION = Pattern.compile("(-?\\d+)\\s*(ns|us|ms|s|m|h|d)");
+    private static final Map<Class<?>, Class<?>> wrappers = new HashMap<Class<?>, Class<?>>();
+
+    /**
+     * Caches that no converter exists for a pair of types.
+     */
+    private static final Converter<Object, Object> NONE = new Converter<Object, Object>() {
+
+        @Override
+        public Object convert(Object value) {
+            throw new IllegalArgumentException("No converter");
+        }
+    };
+
+    private static final ConcurrentMap<ConverterKey, Converter<Object, Object>> registered =
+            new ConcurrentHashMap<ConverterKey, Converter<Object, Object>>();
+    private static final ConcurrentMap<ConverterKey, Converter<Object, Object>> resolved =
+            new ConcurrentHashMap<ConverterKey, Converter<Object, Object>>();
+
+    /**
+     * Counts the registrations, so a lookup that raced with one does not cache a converter
+     * found before it.
+     */
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    static {
+        wrappers.put(Boolean.TYPE, Boolean.class);
+        wrappers.put(Character.TYPE, Character.class);
+        wrappers.put(Byte.TYPE, Byte.class);
+        wrappers.put(Short.TYPE, Short.class);
+        wrappers.put(Integer.TYPE, Integer.class);
+        wrappers.put(Long.TYPE, Long.class);
+        wrappers.put(Float.TYPE, Float.class);
+        wrappers.put(Double.TYPE, Double.class);
+    }
+
+    private ConverterRegistry() {
+    }
+
+    /**
+     * Registers a converter between two types. It is also used for values of subtypes of the
+     * source type.
+     * 
+     * @param sourceType The type of the configured values.
+     * @param targetType The type the values are converted to.
+     * @param converter The converter.
+     * @throws ConfigurationException If a converter between the types is already registered.
+     */
+    @SuppressWarnings("unchecked")
+    public static <S, T> void register(Class<S> sourceType, Class<T> targetType,
+            Converter<? super S, ? extends T> converter) {
+        if (sourceType == null || targetType == null || converter == null) {
+            throw new ConfigurationException("Converter from " + sourceType + " to " +
+                    targetType + " is null");
+        }
+
+        ConverterKey key = new ConverterKey(sourceType, wrap(targetType));
+
+        if (registered.putIfAbsent(key, (Converter<Object, Object>) converter) != null) {
+            throw new ConfigurationException("A converter from " + sourceType.getName() +
+                    " to " + targetType.getName() + " is already registered");
+        }
+
+        generation.incrementAndGet();
+        resolved.clear();
+    }
+
+    /**
+     * @param value A configured value, not null.
+     * @param targetType The type the value is injected as.
+     * @return Whether the value can be injected without converting it.
+     */
+    static boolean isAssignable(Object value, Class<?> targetType) {
+        return wrap(targetType).isInstance(value);
+    }
+
+    /**
+     * Finds the converter from one type to another.
+     * 
+     * @param sourceType The type of a configured value.
+     * @param targetType The type the value is injected as.
+     * @return The converter, or null if the value cannot be converted.
+     */
+    static Converter<Object, Object> find(Class<?> sourceType, Class<?> targetType) {
+        ConverterKey key = new ConverterKey(sourceType, wrap(targetType));
+        Converter<Object, Object> converter = resolved.get(key);
+
+        if (converter == null) {
+            int lookupGeneration = generation.get();
+            converter = registeredConverter(sourceType, key.targetType);
+
+            if (converter == null) {
+                converter = builtInConverter(sourceType, key.targetType);
+            }
+
+            Converter<Object, Object> cached = converter == null ? NONE : converter;
+
+            if (generation.get() == lookupGeneration) {
+                resolved.put(key, cached);
+
+                //A registration may have cleared the cache between the check and the put
+                if (generation.get() != lookupGeneration) {
+                    resolved.remove(key, cached);
+                }
+            }
+        }
+
+        return converter == NONE ? null : converter;
+    }
+
+    /**
+     * Looks for a converter registered for the source type or one of its supertypes, closest
+     * supertypes first.
+     */
+    private static Converter<Object, Object> registeredConverter(Class<?> sourceType,
+            Class<?> targetType) {
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        types.add(sourceType);
+
+        for (int i = 0; i < types.size(); i++) {
+            Class<?> type = types.get(i);
+            Converter<Object, Object> converter =
+                    registered.get(new ConverterKey(type, targetType));
+
+            if (converter != null) {
+                return converter;
+            }
+
+            if (type.getSuperclass() != null) {
+                types.add(type.getSuperclass());
+            }
+
+            for (Class<?> implementedInterface : type.getInterfaces()) {
+                types.add(implementedInterface);
+            }
+        }
+
+        return null;
+    }
+
+    private static Converter<Object, Object> builtInConverter(Class<?> sourceType,
+            final Class<?> targetType) {
+        if (Number.class.isAssignableFrom(sourceType) && isNumber(targetType)) {
+            return new Converter<Object, Object>() {
+
+                @Override
+                public Object convert(Object value) {
+                    return convertNumber((Number) value, targetType);
+                }
+            };
+        }
+
+        if (sourceType != String.class) {
+            return null;
+        }
+
+        if (isNumber(targetType)) {
+            return new Converter<Object, Object>() {
+
+                @Override
+                public Object convert(Object value) {
+                    String string = ((String) value).trim();
+
+                    if (targetType == Double.class) {
+                        return Double.valueOf(string);
+                    } else if (targetType == Float.class) {
+                        return Float.valueOf(string);
+                    }
+
+                    return convertNumber(new BigDecimal(string), targetType);
+                }
+            };
+        } else if (targetType == Boolean.class) {
+            return new Converter<Object, Object>() {
+
+                @Override
+                public Object convert(Object value) {
+                    String string = ((String) value).trim();
+
+                    if (!string.equalsIgnoreCase("true") && !string.equalsIgnoreCase("false")) {
+                        throw new IllegalArgumentException("Not a boolean: " + string);
+                    }
+
+                    return Boolean.valueOf(string);
+                }
+            };
+        } else if (targetType == Character.class) {
+            return new Converter<Object, Object>() {
+
+                @Override
+                public Object convert(Object value) {
+                    String string = (String) value;
+
+                    if (string.length() != 1) {
+                        throw new IllegalArgumentException("Not a single character: " + string);
+                    }
+
+                    return string.charAt(0);
+                }
+            };
+        } else if (targetType.isEnum()) {
+            return new Converter<Object, Object>() {
+
+                @Override
+                public Object convert(Object value) {
+                    String name = ((String) value).trim().replace('-', '_');
+
+                    for (Object constant : targetType.getEnumConstants()) {
+                        if (((Enum<?>) constant).name().equalsIgnoreCase(name)) {
+                            return constant;
+                        }
+                    }
+
+                    throw new IllegalArgumentException(value + " is not a constant of " +
+                            targetType.getName());
+                }
+            };
+        } else if (targetType == Duration.class) {
+            return new Converter<Object, Object>() {
+
+                @Override
+                public Object convert(Object value) {
+                    return parseDuration(((String) value).trim());
+                }
+            };
+        }
+
+        return null;
+    }
+
+    private static boolean isNumber(Class<?> type) {
+        return type == Byte.class || type == Short.class || type == Integer.class ||
+                type == Long.class || type == Float.class || type == Double.class ||
+                type == BigInteger.class || type == BigDecimal.class;
+    }
+
+    /**
+     * Converts a number to another number type.
+     * 
+     * @throws ArithmeticException If the number does not fit into the type.
+     */
+    private static Object convertNumber(Number number, Class<?> targetType) {
+        if (targetType == Double.class || targetType == Float.class) {
+            double doubleValue = number.doubleValue();
+            boolean infiniteSource = (number instanceof Double || number instanceof Float) &&
+                    Double.isInfinite(doubleValue);
+            Number converted = targetType == Double.class ? (Number) doubleValue :
+                (Number) number.floatValue();
+
+            if (Double.isInfinite(converted.doubleValue()) && !infiniteSource) {
+                throw new ArithmeticException(number + " is out of range of " +
+                        targetType.getSimpleName());
+            }
+
+            return converted;
+        }
+
+        BigDecimal exact;
+
+        if (number instanceof BigDecimal) {
+            exact = (BigDecimal) number;
+        } else if (number instanceof BigInteger) {
+            exact = new BigDecimal((BigInteger) number);
+        } else if (number instanceof Double || number instanceof Float) {
+            if (Double.isNaN(number.doubleValue()) || Double.isInfinite(number.doubleValue())) {
+                throw new ArithmeticException(number + " is not a finite number");
+            }
+
+            //The shortest decimal that reads back as the number, as it was configured
+            exact = new BigDecimal(number.toString());
+        } else {
+            exact = BigDecimal.valueOf(number.longValue());
+        }
+
+        if (targetType == BigDecimal.class) {
+            return exact;
+        } else if (targetType == BigInteger.class) {
+            return exact.toBigIntegerExact();
+        } else if (targetType == Long.class) {
+            return exact.longValueExact();
+        } else if (targetType == Integer.class) {
+            return exact.intValueExact();
+        } else if (targetType == Short.class) {
+            return exact.shortValueExact();
+        }
+
+        return exact.byteValueExact();
+    }
+
+    private static Duration parseDuration(String string) {
+        if (string.startsWith("P") || string.startsWith("p") || string.startsWith("-P") ||
+                string.startsWith("-p")) {
+            return Duration.parse(string);
+        }
+
+        Matcher matcher = DURATION.matcher(string);
+
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a duration: " + string + ". Use ISO-8601, " +
+                    "such as PT1.5S, or a number and one of the units ns, us, ms, s, m, h and d");
+        }
+
+        long amount = Long.parseLong(matcher.group(1));
+        String unit = matcher.group(2);
+
+        if (unit.equals("ns")) {
+            return Duration.ofNanos(amount);
+        } else if (unit.equals("us")) {
+            return Duration.ofNanos(Math.multiplyExact(amount, 1000L));
+        } else if (unit.equals("ms")) {
+            return Duration.ofMillis(amount);
+        } else if (unit.equals("s")) {
+            return Duration.ofSeconds(amount);
+        } else if (unit.equals("m")) {
+            return Duration.ofMinutes(amount);
+        } else if (unit.equals("h")) {
+            return Duration.ofHours(amount);
+        }
+
+        return Duration.ofDays(amount);
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        Class<?> wrapper = wrappers.get(type);
+
+        return wrapper != null ? wrapper : type;
+    }
+
+    private static final class ConverterKey {
+
+        final Class<?> sourceType;
+        final Class<?> targetType;
+
+        ConverterKey(Class<?> sourceType, Class<?> targetType) {
+            this.sourceType = sourceType;
+            this.targetType = targetType;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof ConverterKey)) {
+                return false;
+            }
+
+            ConverterKey key = (ConverterKey) object;
+
+            return sourceType == key.sourceType && targetType == key.targetType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sourceType.hashCode() + targetType.hashCode();
+        }
+    }
+}
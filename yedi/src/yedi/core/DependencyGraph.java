@@ -0,0 +1,370 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * DependencyGraph holds the creation dependencies between the beans of a configuration. A bean
+ * depends on every bean referenced by its constructor parameters and on every bean referenced
+ * by its properties, except for lazy beans, which are injected as proxies and created later.
+ * A bean also depends on every bean of the collections injected into it, which are looked up in
+ * the type index of the configuration. Pooled beans are left out of collections.
+ * <p>
+ * The graph of a child container only covers the beans the child defines itself, but keeps
+ * their references to beans of the parent.
+ * 
+ * @author mnaglic
+ * @see BeanDescriptor
+ */
+final class DependencyGraph {
+
+    private final Map<String, Set<String>> dependencies = new LinkedHashMap<String, Set<String>>();
+    private final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> referrers = new HashMap<String, Set<String>>();
+    private final Map<String, BeanScope> scopes = new HashMap<String, BeanScope>();
+    private final Map<String, Set<String>> collectors = new HashMap<String, Set<String>>();
+
+    /**
+     * @param descriptorMap The descriptors by bean name.
+     * @param typeIndex The index of the descriptors, used to find the beans of collections.
+     * @param globalLoadingPolicy The loading policy of beans that do not define their own.
+     */
+    DependencyGraph(Map<String, BeanDescriptor> descriptorMap, TypeIndex typeIndex,
+            LoadingPolicy globalLoadingPolicy) {
+        this(descriptorMap, descriptorMap, typeIndex, globalLoadingPolicy);
+    }
+
+    /**
+     * @param descriptorMap The descriptors of the beans the graph covers, by bean name.
+     * @param definedBeans The descriptors of all beans that may be referenced, by bean name.
+     * @param typeIndex The index of the descriptors, used to find the beans of collections.
+     * @param globalLoadingPolicy The loading policy of beans that do not define their own.
+     */
+    DependencyGraph(Map<String, BeanDescriptor> descriptorMap,
+            Map<String, BeanDescriptor> definedBeans, TypeIndex typeIndex,
+            LoadingPolicy globalLoadingPolicy) {
+        for (Entry<String, BeanDescriptor> descriptorEntry : descriptorMap.entrySet()) {
+            String beanName = descriptorEntry.getKey();
+            BeanDescriptor descriptor = descriptorEntry.getValue();
+            Set<String> beanDependencies = dependenciesOf(beanName);
+
+            scopes.put(beanName, descriptor.getBeanScope());
+
+            if (descriptor.getConstructorParameters() != null) {
+                for (Object parameter : descriptor.getConstructorParameters()) {
+                    addCollection(beanName, parameter, definedBeans, typeIndex);
+                    String referencedBeanName = referencedBeanName(parameter, definedBeans);
+
+                    if (referencedBeanName != null) {
+                        beanDependencies.add(referencedBeanName);
+                        referrersOf(referencedBeanName).add(beanName);
+                    }
+                }
+            }
+
+            if (descriptor.getProperties() != null) {
+                for (Object value : descriptor.getProperties().values()) {
+                    addCollection(beanName, value, definedBeans, typeIndex);
+                    String referencedBeanName = referencedBeanName(value, definedBeans);
+
+                    if (referencedBeanName != null) {
+                        if (!((BeanDescriptor) value).isLazy(globalLoadingPolicy)) {
+                            beanDependencies.add(referencedBeanName);
+                        }
+
+                        referrersOf(referencedBeanName).add(beanName);
+                    }
+                }
+            }
+
+            for (String dependency : beanDependencies) {
+                dependentsOf(dependency).add(beanName);
+            }
+        }
+    }
+
+    /**
+     * Adds the beans of a collection as dependencies of the bean the collection is injected
+     * into. They are fetched when the collection is injected, so even lazy beans are created.
+     * Pooled beans are not part of collections.
+     */
+    private void addCollection(String beanName, Object value,
+            Map<String, BeanDescriptor> definedBeans, TypeIndex typeIndex) {
+        if (value instanceof BeanCollection) {
+            String type = ((BeanCollection) value).getType();
+            Set<String> typeCollectors = collectors.get(type);
+
+            if (typeCollectors == null) {
+                typeCollectors = new LinkedHashSet<String>();
+                collectors.put(type, typeCollectors);
+            }
+
+            typeCollectors.add(beanName);
+
+            for (String collectedBeanName : typeIndex.getBeanNames(type)) {
+                if (!collectedBeanName.equals(beanName) &&
+                        !BeanPlanCompiler.isPooled(definedBeans.get(collectedBeanName))) {
+                    dependenciesOf(beanName).add(collectedBeanName);
+                    referrersOf(collectedBeanName).add(beanName);
+                }
+            }
+        }
+    }
+
+    private static String referencedBeanName(Object value,
+            Map<String, BeanDescriptor> descriptorMap) {
+        if (!(value instanceof BeanDescriptor)) {
+            return null;
+        }
+
+        String beanName = ((BeanDescriptor) value).getBeanName();
+
+        return beanName != null && descriptorMap.containsKey(beanName) ? beanName : null;
+    }
+
+    private Set<String> referrersOf(String beanName) {
+        Set<String> beanReferrers = referrers.get(beanName);
+
+        if (beanReferrers == null) {
+            beanReferrers = new LinkedHashSet<String>();
+            referrers.put(beanName, beanReferrers);
+        }
+
+        return beanReferrers;
+    }
+
+    private Set<String> dependenciesOf(String beanName) {
+        Set<String> beanDependencies = dependencies.get(beanName);
+
+        if (beanDependencies == null) {
+            beanDependencies = new LinkedHashSet<String>();
+            dependencies.put(beanName, beanDependencies);
+        }
+
+        return beanDependencies;
+    }
+
+    private Set<String> dependentsOf(String beanName) {
+        Set<String> beanDependents = dependents.get(beanName);
+
+        if (beanDependents == null) {
+            beanDependents = new LinkedHashSet<String>();
+            dependents.put(beanName, beanDependents);
+        }
+
+        return beanDependents;
+    }
+
+    Set<String> getBeanNames() {
+        return Collections.unmodifiableSet(dependencies.keySet());
+    }
+
+    BeanScope getScope(String beanName) {
+        return scopes.get(beanName);
+    }
+
+    /**
+     * @return The beans that have to exist before the given bean can be created.
+     */
+    Set<String> getDependencies(String beanName) {
+        Set<String> beanDependencies = dependencies.get(beanName);
+
+        return beanDependencies == null ? Collections.<String>emptySet() :
+            Collections.unmodifiableSet(beanDependencies);
+    }
+
+    /**
+     * @return The beans that directly depend on the given bean.
+     */
+    Set<String> getDependents(String beanName) {
+        Set<String> beanDependents = dependents.get(beanName);
+
+        return beanDependents == null ? Collections.<String>emptySet() :
+            Collections.unmodifiableSet(beanDependents);
+    }
+
+    /**
+     * @return The beans that reference the given bean directly, including the beans that get
+     * it as a lazy proxy.
+     */
+    Set<String> getReferrers(String beanName) {
+        Set<String> beanReferrers = referrers.get(beanName);
+
+        return beanReferrers == null ? Collections.<String>emptySet() :
+            Collections.unmodifiableSet(beanReferrers);
+    }
+
+    /**
+     * @param typeName The name of a class or interface.
+     * @return The beans that get a collection of the beans of that type injected.
+     */
+    Set<String> getCollectors(String typeName) {
+        Set<String> typeCollectors = collectors.get(typeName);
+
+        return typeCollectors == null ? Collections.<String>emptySet() :
+            Collections.unmodifiableSet(typeCollectors);
+    }
+
+    /**
+     * Returns the singletons a singleton has to wait for. Prototypes are created as part of
+     * the bean that uses them, so the dependencies of a prototype are followed until singletons
+     * are reached.
+     */
+    Set<String> getSingletonDependencies(String beanName) {
+        Set<String> singletonDependencies = new LinkedHashSet<String>();
+        collectSingletonDependencies(beanName, singletonDependencies, new HashSet<String>());
+
+        return singletonDependencies;
+    }
+
+    private void collectSingletonDependencies(String beanName, Set<String> singletonDependencies,
+            Set<String> visitedPrototypes) {
+        for (String dependency : getDependencies(beanName)) {
+            if (scopes.get(dependency) == BeanScope.SINGLETON) {
+                singletonDependencies.add(dependency);
+            } else if (visitedPrototypes.add(dependency)) {
+                collectSingletonDependencies(dependency, singletonDependencies,
+                        visitedPrototypes);
+            }
+        }
+    }
+
+    /**
+     * Checks that the graph has no cycles. The graph is walked depth first with an explicit
+     * stack, so long chains of dependencies cannot overflow the call stack.
+     * 
+     * @throws BeanLoadingException If a bean depends on itself, directly or through other
+     * beans. The message shows the cycle.
+     */
+    void checkForCycles() {
+        checkForCycles(dependencies.keySet());
+    }
+
+    /**
+     * Checks that none of the given beans is part of a cycle. A graph that only differs from
+     * an acyclic one in the dependencies of some beans can only have cycles through those beans.
+     * 
+     * @param beanNames The beans to start the search from.
+     * @throws BeanLoadingException If a bean depends on itself, directly or through other
+     * beans. The message shows the cycle.
+     */
+    void checkForCycles(Collection<String> beanNames) {
+        Set<String> finished = new HashSet<String>();
+        List<String> path = new ArrayList<String>();
+        List<Iterator<String>> pathDependencies = new ArrayList<Iterator<String>>();
+        Set<String> onPath = new HashSet<String>();
+
+        for (String root : beanNames) {
+            if (finished.contains(root)) {
+                continue;
+            }
+
+            path.add(root);
+            pathDependencies.add(getDependencies(root).iterator());
+            onPath.add(root);
+
+            while (!path.isEmpty()) {
+                int top = path.size() - 1;
+                Iterator<String> remaining = pathDependencies.get(top);
+
+                if (!remaining.hasNext()) {
+                    onPath.remove(path.get(top));
+                    finished.add(path.remove(top));
+                    pathDependencies.remove(top);
+                    continue;
+                }
+
+                String dependency = remaining.next();
+
+                if (onPath.contains(dependency)) {
+                    StringBuilder cycle = new StringBuilder();
+
+                    for (String name : path.subList(path.indexOf(dependency), path.size())) {
+                        cycle.append(name).append(" -> ");
+                    }
+
+                    throw new BeanLoadingException("Circular dependency between beans: " +
+                            cycle + dependency);
+                }
+
+                if (!finished.contains(dependency)) {
+                    path.add(dependency);
+                    pathDependencies.add(getDependencies(dependency).iterator());
+                    onPath.add(dependency);
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders beans so that every bean comes after all of its dependencies. The graph must not
+     * have cycles.
+     * 
+     * @param beanNames The beans to order.
+     * @return The given beans together with everything they depend on, dependencies first.
+     */
+    List<String> topologicalOrder(Collection<String> beanNames) {
+        List<String> order = new ArrayList<String>();
+        Set<String> visited = new HashSet<String>();
+        List<String> path = new ArrayList<String>();
+        List<Iterator<String>> pathDependencies = new ArrayList<Iterator<String>>();
+
+        for (String root : beanNames) {
+            if (!visited.add(root)) {
+                continue;
+            }
+
+            path.add(root);
+            pathDependencies.add(getDependencies(root).iterator());
+
+            while (!path.isEmpty()) {
+                int top = path.size() - 1;
+                Iterator<String> remaining = pathDependencies.get(top);
+
+                if (!remaining.hasNext()) {
+                    order.add(path.remove(top));
+                    pathDependencies.remove(top);
+                } else {
+                    String dependency = remaining.next();
+
+                    if (visited.add(dependency)) {
+                        path.add(dependency);
+                        pathDependencies.add(getDependencies(dependency).iterator());
+                    }
+                }
+            }
+        }
+
+        return order;
+    }
+}
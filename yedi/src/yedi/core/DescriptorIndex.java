@@ -0,0 +1,824 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import yedi.core.BeanConfigurationLoader.ParsedFile;
+import yedi.core.BeanConfigurationLoader.ReferenceResolver;
+import yedi.core.BeanConfigurationLoader.UnresolvedReference;
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * DescriptorIndex holds the descriptors of a configuration whose bean definitions are parsed
+ * on demand. When the index is created, every bean configuration file is mapped into memory
+ * and scanned line by line for the beans it defines: the name and anchor of every bean, the
+ * bytes its definition spans, and its type, scope and loading policy. No YAML is parsed then.
+ * <p>
+ * The definition of a bean is parsed the first time its descriptor is needed, together with
+ * every bean it references and every bean of the collections injected into it, so a
+ * descriptor is never handed out with unresolved references. Aliases are resolved as if all
+ * files were parsed at once, except that the anchor of a bean in the same file always wins.
+ * <p>
+ * The scan understands block style files with a single beans mapping whose beans start at
+ * the same indentation, each with an optional anchor. Files in any other shape, and files with
+ * anchors inside bean definitions, are parsed in full when the index is created.
+ * <p>
+ * The index reads the mapped files for as long as it is used, so they must not change in the
+ * meantime. A bean whose file changed since it was scanned cannot be parsed anymore.
+ * 
+ * @author mnaglic
+ * @see BeanConfigurationLoader
+ */
+final class DescriptorIndex extends AbstractMap<String, BeanDescriptor> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] BEANS_KEY = "beans:\n".getBytes(UTF8);
+
+    private final Map<String, IndexedBean> beans = new LinkedHashMap<String, IndexedBean>();
+    private final Map<String, String> anchoredBeans = new HashMap<String, String>();
+    private final Set<String> ambiguousAnchors = new HashSet<String>();
+    private final ConcurrentMap<String, BeanDescriptor> loaded =
+            new ConcurrentHashMap<String, BeanDescriptor>();
+    private final TypeIndex typeIndex;
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    /**
+     * Scans the bean configuration files, and parses the files that cannot be scanned.
+     * 
+     * @param locations The paths of the files.
+     * @param allowBeanOverriding Whether a bean may be defined in several files.
+     * @param listener The listener told how long each file took to scan or parse, or null.
+     */
+    DescriptorIndex(List<String> locations, boolean allowBeanOverriding,
+            BeanMetricsListener listener) {
+        Map<String, String> beanLocations = new HashMap<String, String>();
+        List<IndexedFile> files = new ArrayList<IndexedFile>();
+        List<ParsedFile> parsedFiles = new ArrayList<ParsedFile>();
+        List<IndexedFile> parsedFileIndexes = new ArrayList<IndexedFile>();
+        Map<IndexedBean, BeanDescriptor> parsedBeans =
+                new IdentityHashMap<IndexedBean, BeanDescriptor>();
+
+        for (String location : locations) {
+            long start = System.nanoTime();
+            IndexedFile file = IndexedFile.scan(location);
+            files.add(file);
+
+            if (!file.scanned) {
+                ParsedFile parsedFile = BeanConfigurationLoader.parse(location, file.readAll(),
+                        null);
+                file.beanAnchors.putAll(parsedFile.beanAnchors);
+
+                for (Entry<String, BeanDescriptor> bean : parsedFile.beans.entrySet()) {
+                    if (bean.getValue() != null) {
+                        IndexedBean indexedBean = new IndexedBean(file, bean.getKey(),
+                                bean.getValue());
+                        file.beans.put(bean.getKey(), indexedBean);
+                        parsedBeans.put(indexedBean, bean.getValue());
+                    }
+                }
+
+                parsedFiles.add(parsedFile);
+                parsedFileIndexes.add(file);
+            }
+
+            if (listener != null) {
+                listener.configurationParsed(location, System.nanoTime() - start);
+            }
+
+            for (IndexedBean bean : file.beans.values()) {
+                if (beans.put(bean.name, bean) != null && !allowBeanOverriding) {
+                    throw new ConfigurationException("Bean " + bean.name + " is defined in " +
+                            beanLocations.get(bean.name) + " and in " + location +
+                            ". Set allow-bean-overriding to true to let the definition " +
+                            "listed last win");
+                }
+
+                beanLocations.put(bean.name, location);
+            }
+
+            for (Entry<String, String> anchor : file.beanAnchors.entrySet()) {
+                String beanName = anchoredBeans.put(anchor.getKey(), anchor.getValue());
+
+                if (beanName != null && !beanName.equals(anchor.getValue())) {
+                    ambiguousAnchors.add(anchor.getKey());
+                }
+            }
+        }
+
+        //Beyond this point a bean anchor of the same file only matters if other files use it
+        for (IndexedFile file : files) {
+            Map<String, String> localAnchors = new HashMap<String, String>();
+
+            for (String anchor : ambiguousAnchors) {
+                if (file.beanAnchors.containsKey(anchor)) {
+                    localAnchors.put(anchor, file.beanAnchors.get(anchor));
+                }
+            }
+
+            file.beanAnchors = localAnchors;
+            file.beans = null;
+        }
+
+        Map<String, String> beanTypes = new LinkedHashMap<String, String>();
+        Map<String, BeanDescriptor> parsed = new LinkedHashMap<String, BeanDescriptor>();
+
+        for (IndexedBean bean : beans.values()) {
+            beanTypes.put(bean.name, bean.type);
+
+            if (parsedBeans.containsKey(bean)) {
+                parsed.put(bean.name, parsedBeans.get(bean));
+            }
+        }
+
+        typeIndex = TypeIndex.forTypes(beanTypes);
+        load(new ArrayDeque<String>(), parsed, parsedFiles, parsedFileIndexes);
+    }
+
+    /**
+     * @return The index of all beans by type, built from the types found by the scan.
+     */
+    TypeIndex getTypeIndex() {
+        return typeIndex;
+    }
+
+    /**
+     * @param globalLoadingPolicy The loading policy of beans that do not define their own.
+     * @return The singletons that are not loaded lazily, in the order of the configuration.
+     */
+    List<String> getEagerSingletons(LoadingPolicy globalLoadingPolicy) {
+        List<String> eagerSingletons = new ArrayList<String>();
+
+        for (IndexedBean bean : beans.values()) {
+            if ((bean.scope == null || BeanScope.SINGLETON.toString().equals(bean.scope)) &&
+                    (bean.loadingPolicy == null ? globalLoadingPolicy == LoadingPolicy.EAGER :
+                        LoadingPolicy.EAGER.toString().equals(bean.loadingPolicy))) {
+                eagerSingletons.add(bean.name);
+            }
+        }
+
+        return eagerSingletons;
+    }
+
+    /**
+     * Parses the given beans, unless they were parsed before, along with everything they need.
+     * 
+     * @param beanNames The names of beans of the index.
+     * @return The descriptors parsed so far, by bean name in the order of the configuration.
+     * They include every bean the parsed beans need, so they form a complete configuration.
+     */
+    Map<String, BeanDescriptor> load(Collection<String> beanNames) {
+        load(new ArrayDeque<String>(beanNames), new LinkedHashMap<String, BeanDescriptor>(),
+                new ArrayList<ParsedFile>(), new ArrayList<IndexedFile>());
+
+        return getLoaded();
+    }
+
+    /**
+     * @return The descriptors parsed so far, by bean name in the order of the configuration.
+     */
+    Map<String, BeanDescriptor> getLoaded() {
+        Map<String, BeanDescriptor> loadedDescriptors = new LinkedHashMap<String, BeanDescriptor>();
+
+        for (String beanName : beans.keySet()) {
+            BeanDescriptor descriptor = loaded.get(beanName);
+
+            if (descriptor != null) {
+                loadedDescriptors.put(beanName, descriptor);
+            }
+        }
+
+        return loadedDescriptors;
+    }
+
+    /**
+     * @return The number of descriptors parsed so far.
+     */
+    int getLoadedCount() {
+        return loaded.size();
+    }
+
+    /**
+     * Parses the pending beans and everything they need, resolves the references between them
+     * and publishes their descriptors. Descriptors only become visible once all of their
+     * references are resolved. Loads run one at a time, under a lock rather than a monitor so
+     * that virtual threads waiting for it do not pin their carrier threads.
+     * 
+     * @param pending The names of the beans to parse.
+     * @param parsed The descriptors that are parsed but not yet published, by bean name.
+     * @param units The parsed files and definitions the descriptors come from.
+     * @param unitFiles The file of every unit.
+     */
+    private void load(Deque<String> pending, Map<String, BeanDescriptor> parsed,
+            List<ParsedFile> units, List<IndexedFile> unitFiles) {
+        loadLock.lock();
+
+        try {
+            Map<String, BeanDescriptor> known = new HashMap<String, BeanDescriptor>(parsed);
+
+            for (int i = 0; i < units.size(); i++) {
+                addReferences(units.get(i), unitFiles.get(i), pending);
+            }
+
+            while (!pending.isEmpty()) {
+                String beanName = pending.pop();
+
+                if (known.containsKey(beanName)) {
+                    continue;
+                }
+
+                BeanDescriptor descriptor = loaded.get(beanName);
+                IndexedBean bean = beans.get(beanName);
+
+                if (descriptor == null && bean != null) {
+                    ParsedFile unit = bean.parse();
+                    descriptor = unit.beans.get(beanName);
+
+                    if (descriptor == null) {
+                        throw new ConfigurationException("Bean " + beanName + " in " +
+                                bean.file.location + " has no definition");
+                    }
+
+                    parsed.put(beanName, descriptor);
+                    units.add(unit);
+                    unitFiles.add(bean.file);
+                    addReferences(unit, bean.file, pending);
+                }
+
+                known.put(beanName, descriptor);
+            }
+
+            ReferenceResolver resolver = new ReferenceResolver(known, anchoredBeans,
+                    ambiguousAnchors);
+
+            for (int i = 0; i < units.size(); i++) {
+                if (units.get(i).unresolvedAliases) {
+                    resolver.resolve(units.get(i), unitFiles.get(i).beanAnchors);
+                }
+            }
+
+            for (BeanDescriptor descriptor : parsed.values()) {
+                descriptor.compact();
+            }
+
+            loaded.putAll(parsed);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the beans referenced by the descriptors of a unit to the pending beans, along with
+     * the beans of the collections injected into them.
+     */
+    private void addReferences(ParsedFile unit, IndexedFile file, Deque<String> pending) {
+        Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+
+        for (BeanDescriptor descriptor : unit.beans.values()) {
+            if (descriptor == null) {
+                continue;
+            }
+
+            List<Object> values = new ArrayList<Object>();
+
+            if (descriptor.getConstructorParameters() != null) {
+                values.addAll(descriptor.getConstructorParameters());
+            }
+
+            if (descriptor.getProperties() != null) {
+                values.addAll(descriptor.getProperties().values());
+            }
+
+            for (Object value : values) {
+                if (value instanceof BeanCollection) {
+                    pending.addAll(typeIndex.getBeanNames(((BeanCollection) value).getType()));
+                }
+
+                addAliases(value, unit.location, file, pending, visited);
+            }
+        }
+    }
+
+    private void addAliases(Object value, String location, IndexedFile file,
+            Deque<String> pending, Map<Object, Object> visited) {
+        if (value instanceof UnresolvedReference) {
+            pending.push(beanNameOf(((UnresolvedReference) value).anchor, location, file));
+        } else if (value instanceof Collection && visited.put(value, value) == null) {
+            for (Object element : (Collection<?>) value) {
+                addAliases(element, location, file, pending, visited);
+            }
+        } else if (value instanceof Map && visited.put(value, value) == null) {
+            for (Object element : ((Map<?, ?>) value).values()) {
+                addAliases(element, location, file, pending, visited);
+            }
+        }
+    }
+
+    private String beanNameOf(String anchor, String location, IndexedFile file) {
+        String beanName = file.beanAnchors.get(anchor);
+
+        if (beanName != null) {
+            return beanName;
+        }
+
+        if (ambiguousAnchors.contains(anchor)) {
+            throw new ConfigurationException("Alias *" + anchor + " in " + location +
+                    " is ambiguous, since several beans in other files use the anchor &" +
+                    anchor);
+        }
+
+        beanName = anchoredBeans.get(anchor);
+
+        if (beanName == null) {
+            throw new ConfigurationException("Alias *" + anchor + " in " + location +
+                    " does not name the anchor of a bean in any configuration file");
+        }
+
+        return beanName;
+    }
+
+    /**
+     * Returns the descriptor of a bean, parsing it first if needed.
+     */
+    @Override
+    public BeanDescriptor get(Object beanName) {
+        if (beanName == null) {
+            return null;
+        }
+
+        BeanDescriptor descriptor = loaded.get(beanName);
+
+        if (descriptor == null && beans.containsKey(beanName)) {
+            load(Collections.singleton((String) beanName));
+            descriptor = loaded.get(beanName);
+        }
+
+        return descriptor;
+    }
+
+    @Override
+    public boolean containsKey(Object beanName) {
+        return beans.containsKey(beanName);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(beans.keySet());
+    }
+
+    @Override
+    public int size() {
+        return beans.size();
+    }
+
+    /**
+     * Returns all entries of the index. Iterating over them parses every bean.
+     */
+    @Override
+    public Set<Entry<String, BeanDescriptor>> entrySet() {
+        return new AbstractSet<Entry<String, BeanDescriptor>>() {
+
+            @Override
+            public Iterator<Entry<String, BeanDescriptor>> iterator() {
+                final Iterator<String> beanNames = beans.keySet().iterator();
+
+                return new Iterator<Entry<String, BeanDescriptor>>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return beanNames.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, BeanDescriptor> next() {
+                        String beanName = beanNames.next();
+
+                        return new SimpleImmutableEntry<String, BeanDescriptor>(beanName,
+                                get(beanName));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return beans.size();
+            }
+        };
+    }
+
+    /**
+     * A bean found by the scan, or a bean of a file that was parsed in full.
+     */
+    private static final class IndexedBean {
+
+        final IndexedFile file;
+        final String name;
+        final int start;
+        int end;
+        String type;
+        String scope;
+        String loadingPolicy;
+
+        IndexedBean(IndexedFile file, String name, int start) {
+            this.file = file;
+            this.name = name;
+            this.start = start;
+        }
+
+        IndexedBean(IndexedFile file, String name, BeanDescriptor descriptor) {
+            this(file, name, -1);
+            this.type = descriptor.getType();
+            this.scope = descriptor.getScope();
+            this.loadingPolicy = descriptor.getLoadingPolicy();
+        }
+
+        /**
+         * Parses the definition of the bean on its own, as a file with a single bean.
+         */
+        ParsedFile parse() {
+            byte[] content = new byte[BEANS_KEY.length + end - start];
+            System.arraycopy(BEANS_KEY, 0, content, 0, BEANS_KEY.length);
+            file.read(start, content, BEANS_KEY.length, end - start);
+
+            return BeanConfigurationLoader.parse(file.location + " (bean " + name + ")",
+                    content, null);
+        }
+    }
+
+    /**
+     * A memory mapped bean configuration file and the beans found in it.
+     */
+    private static final class IndexedFile {
+
+        final String location;
+        Map<String, IndexedBean> beans = new LinkedHashMap<String, IndexedBean>();
+        Map<String, String> beanAnchors = new HashMap<String, String>();
+        private final File file;
+        private final long lastModified;
+        private final ByteBuffer buffer;
+        boolean scanned;
+
+        private IndexedFile(String location, File file, long lastModified, ByteBuffer buffer) {
+            this.location = location;
+            this.file = file;
+            this.lastModified = lastModified;
+            this.buffer = buffer;
+        }
+
+        static IndexedFile scan(String location) {
+            File file = new File(location);
+            long lastModified = file.lastModified();
+            ByteBuffer buffer;
+
+            try {
+                RandomAccessFile configurationFile = new RandomAccessFile(file, "r");
+
+                try {
+                    FileChannel channel = configurationFile.getChannel();
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } finally {
+                    configurationFile.close();
+                }
+            } catch (FileNotFoundException e) {
+                throw new ConfigurationException("Could not find bean configuration on path " +
+                        location, e);
+            } catch (IOException e) {
+                throw new ConfigurationException("Could not read bean configuration on path " +
+                        location, e);
+            }
+
+            IndexedFile indexedFile = new IndexedFile(location, file, lastModified, buffer);
+            indexedFile.scanned = indexedFile.scan();
+
+            if (!indexedFile.scanned) {
+                indexedFile.beans.clear();
+                indexedFile.beanAnchors.clear();
+            }
+
+            return indexedFile;
+        }
+
+        byte[] readAll() {
+            byte[] content = new byte[buffer.limit()];
+            read(0, content, 0, content.length);
+
+            return content;
+        }
+
+        void read(int position, byte[] content, int offset, int length) {
+            if (file.lastModified() != lastModified || file.length() != buffer.limit()) {
+                throw new ConfigurationException("Bean configuration on path " + location +
+                        " changed after the container was created");
+            }
+
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.get(content, offset, length);
+        }
+
+        /**
+         * Finds the beans of the file and the lines their definitions span.
+         * 
+         * @return Whether the file has a shape the scan understands.
+         */
+        private boolean scan() {
+            int limit = buffer.limit();
+            int position = 0;
+
+            if (limit >= 2 && (buffer.get(0) == (byte) 0xFE || buffer.get(0) == (byte) 0xFF)) {
+                //UTF-16 or UTF-32
+                return false;
+            } else if (limit >= 3 && buffer.get(0) == (byte) 0xEF &&
+                    buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) {
+                position = 3;
+            }
+
+            boolean inBeans = false;
+            int beanIndent = -1;
+            int fieldIndent = -1;
+            IndexedBean bean = null;
+
+            while (position < limit) {
+                int lineStart = position;
+                int lineEnd = lineStart;
+
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+
+                position = lineEnd + 1;
+
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+
+                int start = lineStart;
+
+                while (start < lineEnd && buffer.get(start) == ' ') {
+                    start++;
+                }
+
+                if (start == lineEnd || buffer.get(start) == '#') {
+                    continue;
+                } else if (buffer.get(start) == '\t') {
+                    return false;
+                }
+
+                int indent = start - lineStart;
+
+                if (indent == 0) {
+                    if (inBeans || !"beans:".equals(text(start, contentEnd(start, lineEnd)))) {
+                        return false;
+                    }
+
+                    inBeans = true;
+                } else if (!inBeans || indent < beanIndent) {
+                    return false;
+                } else if (beanIndent == -1 || indent == beanIndent) {
+                    beanIndent = indent;
+
+                    if (bean != null) {
+                        bean.end = lineStart;
+                    }
+
+                    bean = scanBean(start, contentEnd(start, lineEnd), lineStart);
+                    fieldIndent = -1;
+
+                    if (bean == null) {
+                        return false;
+                    }
+                } else {
+                    if (fieldIndent == -1) {
+                        fieldIndent = indent;
+                    }
+
+                    if (!scanField(bean, start, lineEnd, indent == fieldIndent)) {
+                        return false;
+                    }
+                }
+            }
+
+            if (bean != null) {
+                bean.end = limit;
+            }
+
+            return true;
+        }
+
+        /**
+         * Reads the first line of a bean, which holds its name and optionally its anchor.
+         * 
+         * @return The bean, or null if the line has any other shape.
+         */
+        private IndexedBean scanBean(int start, int end, int lineStart) {
+            int colon = indexOfColon(start, end);
+
+            if (colon <= start || "\"'?-[]{}&*!|>%@`,".indexOf(buffer.get(start)) >= 0) {
+                return null;
+            }
+
+            String name = text(start, trimEnd(start, colon));
+            String anchor = null;
+            int rest = skipSpaces(colon + 1, end);
+
+            if (rest < end) {
+                if (buffer.get(rest) != '&') {
+                    return null;
+                }
+
+                int anchorEnd = rest + 1;
+
+                while (anchorEnd < end && buffer.get(anchorEnd) != ' ') {
+                    anchorEnd++;
+                }
+
+                if (anchorEnd == rest + 1 || skipSpaces(anchorEnd, end) != end) {
+                    return null;
+                }
+
+                anchor = text(rest + 1, anchorEnd);
+
+                if (anchor.equals(name)) {
+                    anchor = name;
+                }
+            }
+
+            IndexedBean bean = new IndexedBean(this, name, lineStart);
+
+            if (beans.put(name, bean) != null ||
+                    (anchor != null && beanAnchors.put(anchor, name) != null)) {
+                return null;
+            }
+
+            return bean;
+        }
+
+        /**
+         * Reads a line of the definition of a bean, picking up its type, scope and loading
+         * policy. Anchors inside definitions and merge keys could be used by other beans, so
+         * a file with either cannot be scanned.
+         * 
+         * @param field Whether the line is indented like the fields of the bean.
+         * @return Whether the line has a shape the scan understands.
+         */
+        private boolean scanField(IndexedBean bean, int start, int lineEnd, boolean field) {
+            for (int i = start; i < lineEnd - 1; i++) {
+                if (buffer.get(i) == '&' && buffer.get(i + 1) != ' ' &&
+                        (i == start || " [{,".indexOf(buffer.get(i - 1)) >= 0)) {
+                    return false;
+                }
+            }
+
+            if (lineEnd - start >= 2 && buffer.get(start) == '<' && buffer.get(start + 1) == '<') {
+                return false;
+            }
+
+            int colon = indexOfColon(start, lineEnd);
+
+            if (!field || colon < 0) {
+                return true;
+            }
+
+            String key = text(start, colon);
+
+            if (!key.equals("type") && !key.equals("scope") && !key.equals("loadingPolicy")) {
+                return true;
+            }
+
+            String value = scalar(skipSpaces(colon + 1, lineEnd), contentEnd(colon + 1, lineEnd));
+
+            if (value == null) {
+                return false;
+            } else if (key.equals("type")) {
+                bean.type = value.intern();
+            } else if (key.equals("scope")) {
+                bean.scope = value.intern();
+            } else {
+                bean.loadingPolicy = value.intern();
+            }
+
+            return true;
+        }
+
+        /**
+         * @return The value of a plain or quoted scalar, or null if the value is empty, spans
+         * several lines or is anything else.
+         */
+        private String scalar(int start, int end) {
+            if (start >= end || "&*!|>[{".indexOf(buffer.get(start)) >= 0) {
+                return null;
+            }
+
+            byte first = buffer.get(start);
+
+            if (first == '"' || first == '\'') {
+                if (end - start < 2 || buffer.get(end - 1) != first) {
+                    return null;
+                }
+
+                String value = text(start + 1, end - 1);
+
+                return value.indexOf(first) >= 0 || value.indexOf('\\') >= 0 ? null : value;
+            }
+
+            return text(start, end);
+        }
+
+        /**
+         * @return The position of the colon that ends a key, or -1 if there is none.
+         */
+        private int indexOfColon(int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) == ':' && (i + 1 == end || buffer.get(i + 1) == ' ')) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * @return The end of a line without its comment and trailing spaces.
+         */
+        private int contentEnd(int start, int end) {
+            for (int i = start + 1; i < end; i++) {
+                if (buffer.get(i) == '#' && buffer.get(i - 1) == ' ') {
+                    end = i;
+                    break;
+                }
+            }
+
+            return trimEnd(start, end);
+        }
+
+        private int trimEnd(int start, int end) {
+            while (end > start && buffer.get(end - 1) == ' ') {
+                end--;
+            }
+
+            return end;
+        }
+
+        private int skipSpaces(int start, int end) {
+            while (start < end && buffer.get(start) == ' ') {
+                start++;
+            }
+
+            return start;
+        }
+
+        private String text(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(start);
+            view.get(bytes);
+
+            return new String(bytes, UTF8);
+        }
+    }
+}
@@ -0,0 +1,581 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * DescriptorSnapshot stores parsed bean descriptors in a compact binary file, so a container
+ * whose bean configuration files have not changed can skip YAML parsing. The snapshot is keyed
+ * by a SHA-256 hash of the locations and contents of all bean configuration files and of the
+ * settings that change how the files are merged, and it is discarded as soon as any of them
+ * changes.
+ * <p>
+ * All strings are stored once in a string table. Every descriptor is stored once and referenced
+ * by its index, so beans that reference each other through YAML aliases still share the very
+ * same descriptor object after loading, and argument values keep the type SnakeYAML gave them.
+ * The file is read through a memory-mapped buffer.
+ * <p>
+ * The snapshot is only a cache. A missing, stale or unreadable snapshot is ignored, and a
+ * snapshot that cannot be written is not written. Configurations with values other than
+ * strings, characters, numbers, booleans, dates, bean references, collections of beans, lists,
+ * sets and maps are not cached.
+ * 
+ * @author mnaglic
+ */
+final class DescriptorSnapshot {
+
+    private static final int MAGIC = 0x59454453;
+    private static final short VERSION = 4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte BIG_INTEGER = 6;
+    private static final byte DATE = 7;
+    private static final byte DESCRIPTOR = 8;
+    private static final byte LIST = 9;
+    private static final byte SET = 10;
+    private static final byte MAP = 11;
+    private static final byte BYTE = 12;
+    private static final byte SHORT = 13;
+    private static final byte FLOAT = 14;
+    private static final byte CHARACTER = 15;
+    private static final byte BIG_DECIMAL = 16;
+    private static final byte BEAN_COLLECTION = 17;
+
+    private final File file;
+    private final byte[] key;
+
+    /**
+     * @param file The snapshot file.
+     * @param locations The locations of the bean configuration files.
+     * @param contents The contents of the bean configuration files.
+     * @param allowBeanOverriding Whether a bean may be defined in several files.
+     */
+    DescriptorSnapshot(File file, List<String> locations, List<byte[]> contents,
+            boolean allowBeanOverriding) {
+        this.file = file;
+        this.key = hash(locations, contents, allowBeanOverriding);
+    }
+
+    private static byte[] hash(List<String> locations, List<byte[]> contents,
+            boolean allowBeanOverriding) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        //Overriding decides which of several definitions of a bean is stored
+        digest.update((byte) (allowBeanOverriding ? 1 : 0));
+
+        for (int i = 0; i < locations.size(); i++) {
+            byte[] location = locations.get(i).getBytes(UTF8);
+            digest.update(ByteBuffer.allocate(8).putInt(location.length)
+                    .putInt(contents.get(i).length).array());
+            digest.update(location);
+            digest.update(contents.get(i));
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * @return The descriptors stored in the snapshot, or null if there is no valid snapshot for
+     * the current bean configuration files.
+     */
+    BeanDescriptorContainer read() {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            RandomAccessFile snapshotFile = new RandomAccessFile(file, "r");
+
+            try {
+                FileChannel channel = snapshotFile.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                return new Reader(buffer).read();
+            } finally {
+                snapshotFile.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            //Truncated or corrupt snapshot, e.g. a BufferUnderflowException
+            return null;
+        }
+    }
+
+    /**
+     * Writes the descriptors into the snapshot file, replacing it atomically where the file
+     * system allows it.
+     * 
+     * @param descriptorContainer The parsed descriptors.
+     */
+    void write(BeanDescriptorContainer descriptorContainer) {
+        byte[] snapshot;
+
+        try {
+            snapshot = new Writer().write(descriptorContainer);
+        } catch (UnsupportedValueException e) {
+            return;
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+
+            File temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+
+            try {
+                FileOutputStream out = new FileOutputStream(temporaryFile);
+
+                try {
+                    out.write(snapshot);
+                } finally {
+                    out.close();
+                }
+
+                try {
+                    Files.move(temporaryFile.toPath(), file.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporaryFile.toPath(), file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                temporaryFile.delete();
+            }
+        } catch (IOException e) {
+            //The snapshot is only a cache, startup works without it
+        }
+    }
+
+    /**
+     * Thrown when a descriptor holds a value the snapshot format cannot store.
+     */
+    private static final class UnsupportedValueException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final class Writer {
+
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final List<String> stringTable = new ArrayList<String>();
+        private final Map<BeanDescriptor, Integer> descriptors =
+                new IdentityHashMap<BeanDescriptor, Integer>();
+        private final List<BeanDescriptor> descriptorTable = new ArrayList<BeanDescriptor>();
+        private final Map<Object, Object> collectionsInProgress =
+                new IdentityHashMap<Object, Object>();
+
+        byte[] write(BeanDescriptorContainer descriptorContainer)
+                throws UnsupportedValueException {
+            Map<String, BeanDescriptor> beans = descriptorContainer.getBeans();
+
+            if (beans == null) {
+                beans = new LinkedHashMap<String, BeanDescriptor>();
+            }
+
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+
+            try {
+                //Named descriptors first, so beans are restored in their original order
+                for (BeanDescriptor descriptor : beans.values()) {
+                    descriptorIndex(descriptor);
+                }
+
+                //Descriptors found inside values are appended to the table while writing
+                for (int i = 0; i < descriptorTable.size(); i++) {
+                    writeDescriptor(body, descriptorTable.get(i));
+                }
+
+                for (Entry<String, BeanDescriptor> bean : beans.entrySet()) {
+                    body.writeInt(stringIndex(bean.getKey()));
+                    body.writeInt(descriptorIndex(bean.getValue()));
+                }
+
+                ByteArrayOutputStream snapshotBytes = new ByteArrayOutputStream(
+                        bodyBytes.size() + 64 * stringTable.size());
+                DataOutputStream snapshot = new DataOutputStream(snapshotBytes);
+
+                snapshot.writeInt(MAGIC);
+                snapshot.writeShort(VERSION);
+                snapshot.write(key);
+                snapshot.writeInt(stringTable.size());
+
+                for (String string : stringTable) {
+                    byte[] bytes = string.getBytes(UTF8);
+                    snapshot.writeInt(bytes.length);
+                    snapshot.write(bytes);
+                }
+
+                snapshot.writeInt(descriptorTable.size());
+                snapshot.writeInt(beans.size());
+                body.flush();
+                bodyBytes.writeTo(snapshot);
+                snapshot.flush();
+
+                return snapshotBytes.toByteArray();
+            } catch (IOException e) {
+                //Writing to memory does not fail
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void writeDescriptor(DataOutputStream out, BeanDescriptor descriptor)
+                throws IOException, UnsupportedValueException {
+            out.writeInt(stringIndex(descriptor.getType()));
+            out.writeInt(stringIndex(descriptor.getScope()));
+            out.writeInt(stringIndex(descriptor.getLoadingPolicy()));
+            out.writeInt(descriptor.getPoolSize());
+            out.writeLong(descriptor.getIdleTimeout());
+            out.writeInt(stringIndex(descriptor.getInitMethod()));
+            out.writeInt(stringIndex(descriptor.getDestroyMethod()));
+            writeValue(out, descriptor.getConstructorParameters());
+            writeValue(out, descriptor.getProperties());
+        }
+
+        private void writeValue(DataOutputStream out, Object value)
+                throws IOException, UnsupportedValueException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                out.writeInt(stringIndex((String) value));
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Byte) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) value);
+            } else if (value instanceof Short) {
+                out.writeByte(SHORT);
+                out.writeShort((Short) value);
+            } else if (value instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Character) {
+                out.writeByte(CHARACTER);
+                out.writeChar((Character) value);
+            } else if (value.getClass() == BigDecimal.class) {
+                out.writeByte(BIG_DECIMAL);
+                out.writeInt(stringIndex(value.toString()));
+            } else if (value.getClass() == BigInteger.class) {
+                out.writeByte(BIG_INTEGER);
+                out.writeInt(stringIndex(value.toString()));
+            } else if (value.getClass() == Date.class) {
+                out.writeByte(DATE);
+                out.writeLong(((Date) value).getTime());
+            } else if (value instanceof BeanCollection) {
+                out.writeByte(BEAN_COLLECTION);
+                out.writeInt(stringIndex(((BeanCollection) value).getType()));
+                out.writeBoolean(((BeanCollection) value).isMap());
+            } else if (value instanceof BeanDescriptor) {
+                out.writeByte(DESCRIPTOR);
+                out.writeInt(descriptorIndex((BeanDescriptor) value));
+            } else if (value instanceof List || value instanceof Set) {
+                Collection<?> collection = (Collection<?>) value;
+                enterCollection(collection);
+                out.writeByte(value instanceof List ? LIST : SET);
+                out.writeInt(collection.size());
+
+                for (Object element : collection) {
+                    writeValue(out, element);
+                }
+
+                collectionsInProgress.remove(collection);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                enterCollection(map);
+                out.writeByte(MAP);
+                out.writeInt(map.size());
+
+                for (Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(out, entry.getKey());
+                    writeValue(out, entry.getValue());
+                }
+
+                collectionsInProgress.remove(map);
+            } else {
+                throw new UnsupportedValueException();
+            }
+        }
+
+        /*
+         * Collections that contain themselves through YAML aliases are not cached.
+         */
+        private void enterCollection(Object collection) throws UnsupportedValueException {
+            if (collectionsInProgress.put(collection, collection) != null) {
+                throw new UnsupportedValueException();
+            }
+        }
+
+        private int stringIndex(String string) {
+            if (string == null) {
+                return -1;
+            }
+
+            Integer index = strings.get(string);
+
+            if (index == null) {
+                index = stringTable.size();
+                strings.put(string, index);
+                stringTable.add(string);
+            }
+
+            return index;
+        }
+
+        private int descriptorIndex(BeanDescriptor descriptor) {
+            Integer index = descriptors.get(descriptor);
+
+            if (index == null) {
+                index = descriptorTable.size();
+                descriptors.put(descriptor, index);
+                descriptorTable.add(descriptor);
+            }
+
+            return index;
+        }
+    }
+
+    private final class Reader {
+
+        private final ByteBuffer buffer;
+        private String[] strings;
+        private BeanDescriptor[] descriptors;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        BeanDescriptorContainer read() {
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                return null;
+            }
+
+            byte[] snapshotKey = new byte[key.length];
+            buffer.get(snapshotKey);
+
+            if (!Arrays.equals(snapshotKey, key)) {
+                return null;
+            }
+
+            strings = new String[buffer.getInt()];
+            byte[] stringBytes = new byte[64];
+
+            for (int i = 0; i < strings.length; i++) {
+                int length = buffer.getInt();
+
+                if (length > stringBytes.length) {
+                    stringBytes = new byte[Math.max(length, 2 * stringBytes.length)];
+                }
+
+                buffer.get(stringBytes, 0, length);
+                strings[i] = new String(stringBytes, 0, length, UTF8);
+            }
+
+            descriptors = new BeanDescriptor[buffer.getInt()];
+            int beanCount = buffer.getInt();
+
+            //Create every descriptor first, so references can point forward
+            for (int i = 0; i < descriptors.length; i++) {
+                descriptors[i] = new BeanDescriptor();
+            }
+
+            for (BeanDescriptor descriptor : descriptors) {
+                readDescriptor(descriptor);
+            }
+
+            for (BeanDescriptor descriptor : descriptors) {
+                descriptor.compact();
+            }
+
+            Map<String, BeanDescriptor> beans =
+                    new LinkedHashMap<String, BeanDescriptor>(2 * beanCount);
+
+            for (int i = 0; i < beanCount; i++) {
+                String beanName = string(buffer.getInt());
+                beans.put(beanName, descriptors[buffer.getInt()]);
+            }
+
+            if (buffer.hasRemaining()) {
+                throw new BufferUnderflowException();
+            }
+
+            BeanDescriptorContainer descriptorContainer = new BeanDescriptorContainer();
+            descriptorContainer.setBeans(beans);
+
+            return descriptorContainer;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readDescriptor(BeanDescriptor descriptor) {
+            descriptor.setType(string(buffer.getInt()));
+            descriptor.setScope(string(buffer.getInt()));
+            String loadingPolicy = string(buffer.getInt());
+
+            if (loadingPolicy != null) {
+                descriptor.setLoadingPolicy(loadingPolicy);
+            }
+
+            int poolSize = buffer.getInt();
+            long idleTimeout = buffer.getLong();
+
+            if (poolSize != 0) {
+                descriptor.setPoolSize(poolSize);
+            }
+
+            if (idleTimeout != 0) {
+                descriptor.setIdleTimeout(idleTimeout);
+            }
+
+            descriptor.setInitMethod(string(buffer.getInt()));
+            descriptor.setDestroyMethod(string(buffer.getInt()));
+            descriptor.setConstructor((List<?>) readValue());
+            descriptor.setProperties((Map<String, ?>) readValue());
+        }
+
+        private Object readValue() {
+            byte tag = buffer.get();
+
+            switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return string(buffer.getInt());
+            case INTEGER:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case BYTE:
+                return buffer.get();
+            case SHORT:
+                return buffer.getShort();
+            case FLOAT:
+                return buffer.getFloat();
+            case CHARACTER:
+                return buffer.getChar();
+            case BIG_DECIMAL:
+                return new BigDecimal(string(buffer.getInt()));
+            case BIG_INTEGER:
+                return new BigInteger(string(buffer.getInt()));
+            case DATE:
+                return new Date(buffer.getLong());
+            case DESCRIPTOR:
+                return descriptors[buffer.getInt()];
+            case BEAN_COLLECTION:
+                return new BeanCollection(string(buffer.getInt()), buffer.get() != 0);
+            case LIST:
+                int listSize = buffer.getInt();
+                List<Object> list = new ArrayList<Object>(listSize);
+
+                for (int i = 0; i < listSize; i++) {
+                    list.add(readValue());
+                }
+
+                return list;
+            case SET:
+                int setSize = buffer.getInt();
+                Set<Object> set = new LinkedHashSet<Object>(2 * setSize);
+
+                for (int i = 0; i < setSize; i++) {
+                    set.add(readValue());
+                }
+
+                return set;
+            case MAP:
+                int mapSize = buffer.getInt();
+                Map<Object, Object> map = new LinkedHashMap<Object, Object>(2 * mapSize);
+
+                for (int i = 0; i < mapSize; i++) {
+                    Object mapKey = readValue();
+                    map.put(mapKey, readValue());
+                }
+
+                return map;
+            default:
+                throw new ConfigurationException("Unknown value tag " + tag +
+                        " in descriptor snapshot " + file);
+            }
+        }
+
+        private String string(int index) {
+            return index == -1 ? null : strings[index];
+        }
+    }
+}
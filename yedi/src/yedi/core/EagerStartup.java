@@ -0,0 +1,232 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * EagerStartup creates the eagerly loaded singletons of a container when it starts. The
+ * singletons are scheduled along the dependency graph: a singleton is created as soon as all
+ * singletons it depends on exist, and independent singletons are created in parallel on a
+ * bounded pool of threads. Cycles are detected before anything is created.
+ * 
+ * @author mnaglic
+ * @see StartupReport
+ */
+final class EagerStartup {
+
+    private final BeanContainer container;
+    private final DependencyGraph graph;
+    private final int threads;
+
+    EagerStartup(BeanContainer container, DependencyGraph graph, int threads) {
+        this.container = container;
+        this.graph = graph;
+        this.threads = threads;
+    }
+
+    /**
+     * Creates the given singletons and every singleton they depend on.
+     * 
+     * @param eagerSingletons The names of the eagerly loaded singletons.
+     * @return A report of the startup.
+     */
+    StartupReport run(Collection<String> eagerSingletons) {
+        graph.checkForCycles();
+
+        List<String> order = new ArrayList<String>();
+
+        for (String beanName : graph.topologicalOrder(eagerSingletons)) {
+            if (graph.getScope(beanName) == BeanScope.SINGLETON) {
+                order.add(beanName);
+            }
+        }
+
+        Map<String, Set<String>> singletonDependencies = new HashMap<String, Set<String>>();
+
+        for (String beanName : order) {
+            singletonDependencies.put(beanName, graph.getSingletonDependencies(beanName));
+        }
+
+        Map<String, Long> creationTimes = new ConcurrentHashMap<String, Long>();
+        int poolSize = Math.min(threads, order.size());
+        long start = System.nanoTime();
+
+        if (poolSize <= 1) {
+            for (String beanName : order) {
+                create(beanName, creationTimes);
+            }
+        } else {
+            createInParallel(order, singletonDependencies, creationTimes, poolSize);
+        }
+
+        long totalTime = System.nanoTime() - start;
+
+        //Walk the beans in topological order to find the longest chain of creation times
+        Map<String, Long> finishTimes = new HashMap<String, Long>();
+        Map<String, String> predecessors = new HashMap<String, String>();
+        Map<String, Long> orderedCreationTimes = new LinkedHashMap<String, Long>();
+        String last = null;
+
+        for (String beanName : order) {
+            long earliestStart = 0;
+
+            for (String dependency : singletonDependencies.get(beanName)) {
+                if (finishTimes.get(dependency) > earliestStart) {
+                    earliestStart = finishTimes.get(dependency);
+                    predecessors.put(beanName, dependency);
+                }
+            }
+
+            long creationTime = creationTimes.get(beanName);
+            orderedCreationTimes.put(beanName, creationTime);
+            finishTimes.put(beanName, earliestStart + creationTime);
+
+            if (last == null || finishTimes.get(beanName) > finishTimes.get(last)) {
+                last = beanName;
+            }
+        }
+
+        List<String> criticalPath = new ArrayList<String>();
+
+        for (String beanName = last; beanName != null; beanName = predecessors.get(beanName)) {
+            criticalPath.add(beanName);
+        }
+
+        Collections.reverse(criticalPath);
+
+        return new StartupReport(Math.max(poolSize, 1), totalTime, orderedCreationTimes,
+                criticalPath, last == null ? 0 : finishTimes.get(last));
+    }
+
+    private void create(String beanName, Map<String, Long> creationTimes) {
+        long start = System.nanoTime();
+        container.getBean(beanName);
+        creationTimes.put(beanName, System.nanoTime() - start);
+    }
+
+    private void createInParallel(List<String> order,
+            Map<String, Set<String>> singletonDependencies, final Map<String, Long> creationTimes,
+            int poolSize) {
+        final Map<String, AtomicInteger> pendingDependencies =
+                new HashMap<String, AtomicInteger>();
+        final Map<String, List<String>> waitingDependents = new HashMap<String, List<String>>();
+
+        for (String beanName : order) {
+            pendingDependencies.put(beanName,
+                    new AtomicInteger(singletonDependencies.get(beanName).size()));
+            waitingDependents.put(beanName, new ArrayList<String>());
+        }
+
+        for (String beanName : order) {
+            for (String dependency : singletonDependencies.get(beanName)) {
+                waitingDependents.get(dependency).add(beanName);
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize,
+                new ThreadFactory() {
+
+                    private final AtomicInteger threadNumber = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "yedi-startup-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        final CountDownLatch finished = new CountDownLatch(order.size());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        /**
+         * Creates one singleton, then schedules every dependent whose last dependency it was.
+         * After a failure the remaining singletons are skipped.
+         */
+        class CreationTask implements Runnable {
+
+            private final String beanName;
+
+            CreationTask(String beanName) {
+                this.beanName = beanName;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    if (failure.get() == null) {
+                        create(beanName, creationTimes);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    for (String dependent : waitingDependents.get(beanName)) {
+                        if (pendingDependencies.get(dependent).decrementAndGet() == 0) {
+                            executor.execute(new CreationTask(dependent));
+                        }
+                    }
+
+                    finished.countDown();
+                }
+            }
+        }
+
+        try {
+            for (String beanName : order) {
+                if (pendingDependencies.get(beanName).get() == 0) {
+                    executor.execute(new CreationTask(beanName));
+                }
+            }
+
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BeanLoadingException("Interrupted while creating eager singletons", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Throwable t = failure.get();
+
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new BeanLoadingException("Could not create eager singletons", t);
+        }
+    }
+}
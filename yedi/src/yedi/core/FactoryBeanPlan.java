@@ -0,0 +1,70 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * FactoryBeanPlan creates beans by calling a {@link BeanFactory}, for example one emitted by the
+ * {@link BeanFactoryGenerator}. No reflection is involved in creating the bean. Its destroy
+ * method, if it has one, is looked up once and called reflectively when the container closes.
+ * 
+ * @author mnaglic
+ * @see BeanFactoryRegistry
+ */
+final class FactoryBeanPlan extends BeanPlan {
+
+    private final BeanFactory<?> factory;
+
+    /**
+     * @param destroyMethod The method called on the singleton or the idle pooled instances of
+     * the bean when the container closes, or null if there is none.
+     */
+    FactoryBeanPlan(String beanName, String scope, Class<?> beanClass,
+            BeanFactory<?> factory, Method destroyMethod) {
+        this(beanName, scope, beanClass, factory, 0, 0, destroyMethod);
+    }
+
+    /**
+     * @param poolSize The maximum number of instances of a pooled bean, or 0 for the default.
+     * @param idleTimeout The milliseconds after which an idle instance of a pooled bean is
+     * dropped from the pool, or 0 if idle instances are kept.
+     * @param destroyMethod The method called on the singleton or the idle pooled instances of
+     * the bean when the container closes, or null if there is none.
+     */
+    FactoryBeanPlan(String beanName, String scope, Class<?> beanClass,
+            BeanFactory<?> factory, int poolSize, long idleTimeout, Method destroyMethod) {
+        super(beanName, scope, beanClass, poolSize, idleTimeout, destroyMethod);
+        this.factory = factory;
+    }
+
+    @Override
+    Object createBean(BeanContainer container) throws InvocationTargetException {
+        try {
+            return factory.create(container);
+        } catch (BeanLoadingException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+}
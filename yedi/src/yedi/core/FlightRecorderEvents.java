@@ -0,0 +1,314 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * FlightRecorderEvents holds the Java Flight Recorder events of Yedi. All events are disabled by
+ * default, so they cost a single check unless a recording enables them, for example with
+ * 
+ * <pre>
+ * -XX:StartFlightRecording:filename=startup.jfr,+yedi.BeanCreation#enabled=true,...
+ * </pre>
+ * 
+ * or with a .jfc settings file that enables the events named below. Bean creations on the same
+ * thread nest: every creation event names the bean whose creation caused it and its depth in
+ * that tree, and the construction and injection phases of a bean fall within its creation
+ * event.
+ * 
+ * @author mnaglic
+ */
+final class FlightRecorderEvents {
+
+    private static final ThreadLocal<BeanCreation> currentCreation =
+            new ThreadLocal<BeanCreation>();
+
+    /**
+     * Whether an event is enabled only depends on its class, so one instance of each event
+     * answers it without allocating an event for every bean.
+     */
+    private static final BeanCreation creationCheck = new BeanCreation();
+    private static final BeanConstruction constructionCheck = new BeanConstruction();
+    private static final BeanInjection injectionCheck = new BeanInjection();
+    private static final BeanClassLoad classLoadCheck = new BeanClassLoad();
+    private static final LazyProxyMaterialization materializationCheck =
+            new LazyProxyMaterialization();
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Starts the creation event of a bean, if creation events are enabled.
+     * 
+     * @return The started event, or null if creation events are disabled.
+     */
+    static BeanCreation beginCreation(BeanPlan plan) {
+        if (!creationCheck.isEnabled()) {
+            return null;
+        }
+
+        BeanCreation event = new BeanCreation();
+        BeanCreation parent = currentCreation.get();
+        event.beanName = plan.getBeanName();
+        event.scope = plan.getScopeName();
+        event.parent = parent;
+
+        if (parent != null) {
+            event.parentBean = parent.beanName;
+            event.depth = parent.depth + 1;
+        }
+
+        currentCreation.set(event);
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * Ends and commits a creation event started by {@link #beginCreation(BeanPlan)}.
+     * 
+     * @param event The event, or null if creation events were disabled.
+     */
+    static void endCreation(BeanCreation event) {
+        if (event != null) {
+            event.commit();
+
+            if (event.parent != null) {
+                currentCreation.set(event.parent);
+            } else {
+                currentCreation.remove();
+            }
+        }
+    }
+
+    /**
+     * @return A started construction event, or null if construction events are disabled.
+     */
+    static BeanConstruction beginConstruction() {
+        if (!constructionCheck.isEnabled()) {
+            return null;
+        }
+
+        BeanConstruction event = new BeanConstruction();
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * @param event The event, or null if construction events were disabled.
+     */
+    static void endConstruction(BeanConstruction event, String beanName, int arguments) {
+        if (event != null && event.shouldCommit()) {
+            event.beanName = beanName;
+            event.arguments = arguments;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return A started injection event, or null if injection events are disabled.
+     */
+    static BeanInjection beginInjection() {
+        if (!injectionCheck.isEnabled()) {
+            return null;
+        }
+
+        BeanInjection event = new BeanInjection();
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * @param event The event, or null if injection events were disabled.
+     */
+    static void endInjection(BeanInjection event, String beanName, int properties) {
+        if (event != null && event.shouldCommit()) {
+            event.beanName = beanName;
+            event.properties = properties;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return A started class load event, or null if class load events are disabled.
+     */
+    static BeanClassLoad beginClassLoad() {
+        if (!classLoadCheck.isEnabled()) {
+            return null;
+        }
+
+        BeanClassLoad event = new BeanClassLoad();
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * @param event The event, or null if class load events were disabled.
+     * @param loadedClass The loaded class, or null if it was not found.
+     * @param initialize Whether the class was loaded to be initialized.
+     */
+    static void endClassLoad(BeanClassLoad event, String className, Class<?> loadedClass,
+            boolean initialize) {
+        if (event != null && event.shouldCommit()) {
+            event.className = className;
+            event.found = loadedClass != null;
+            //A class that was not found was not initialized either
+            event.initialized = initialize && loadedClass != null;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return A started materialization event, or null if materialization events are disabled.
+     */
+    static LazyProxyMaterialization beginMaterialization() {
+        if (!materializationCheck.isEnabled()) {
+            return null;
+        }
+
+        LazyProxyMaterialization event = new LazyProxyMaterialization();
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * @param event The event, or null if materialization events were disabled.
+     * @param fieldName The field the proxy was injected into, or null.
+     */
+    static void endMaterialization(LazyProxyMaterialization event, String beanName,
+            String fieldName) {
+        if (event != null && event.shouldCommit()) {
+            event.beanName = beanName;
+            event.field = fieldName;
+            event.commit();
+        }
+    }
+
+    @Name("yedi.BeanCreation")
+    @Label("Bean Creation")
+    @Description("Creation of a bean instance, including the beans created for it")
+    @Category("Yedi")
+    @Enabled(false)
+    static final class BeanCreation extends Event {
+
+        @Label("Bean Name")
+        String beanName;
+
+        @Label("Scope")
+        String scope;
+
+        @Label("Created For")
+        @Description("The bean whose creation caused this one")
+        String parentBean;
+
+        @Label("Depth")
+        int depth;
+
+        transient BeanCreation parent;
+    }
+
+    @Name("yedi.BeanConstruction")
+    @Label("Bean Construction")
+    @Description("Invoking the constructor of a bean once its arguments are resolved")
+    @Category("Yedi")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BeanConstruction extends Event {
+
+        @Label("Bean Name")
+        String beanName;
+
+        @Label("Arguments")
+        int arguments;
+    }
+
+    @Name("yedi.BeanInjection")
+    @Label("Bean Injection")
+    @Description("Resolving and injecting the properties of a bean")
+    @Category("Yedi")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BeanInjection extends Event {
+
+        @Label("Bean Name")
+        String beanName;
+
+        @Label("Properties")
+        int properties;
+    }
+
+    @Name("yedi.ConfigurationParse")
+    @Label("Configuration Parse")
+    @Description("Parsing of a bean configuration file")
+    @Category("Yedi")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ConfigurationParse extends Event {
+
+        @Label("Location")
+        String location;
+
+        @Label("Beans")
+        int beans;
+    }
+
+    @Name("yedi.BeanClassLoad")
+    @Label("Bean Class Load")
+    @Description("Loading of the class named as the type of a bean")
+    @Category("Yedi")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BeanClassLoad extends Event {
+
+        @Label("Class Name")
+        String className;
+
+        @Label("Initialized")
+        boolean initialized;
+
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("yedi.LazyProxyMaterialization")
+    @Label("Lazy Proxy Materialization")
+    @Description("A lazy proxy fetching its bean when it is first used")
+    @Category("Yedi")
+    @Enabled(false)
+    static final class LazyProxyMaterialization extends Event {
+
+        @Label("Bean Name")
+        String beanName;
+
+        @Label("Field")
+        @Description("The field the proxy was injected into, if any")
+        String field;
+    }
+}
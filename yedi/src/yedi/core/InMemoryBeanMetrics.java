@@ -0,0 +1,244 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InMemoryBeanMetrics keeps the metrics of a container in memory. Counters are lock-free, so
+ * threads creating and fetching beans do not wait for each other, and {@link #toString()}
+ * renders everything collected so far for a log.
+ * <p>
+ * Creation times are kept in a histogram with one bucket per power of two nanoseconds, so
+ * percentiles are accurate to a factor of two.
+ * 
+ * @author mnaglic
+ * @see BeanMetricsListener
+ */
+public class InMemoryBeanMetrics implements BeanMetricsListener {
+
+    private static final int BUCKETS = 64;
+
+    private final ConcurrentMap<String, BeanMetrics> beans =
+            new ConcurrentHashMap<String, BeanMetrics>();
+    private final ConcurrentMap<String, Long> parseTimes = new ConcurrentHashMap<String, Long>();
+
+    @Override
+    public void configurationParsed(String location, long nanos) {
+        parseTimes.put(location, nanos);
+    }
+
+    @Override
+    public void beanCreated(String beanName, long nanos) {
+        BeanMetrics metrics = metricsOf(beanName);
+        metrics.creations.increment();
+        metrics.creationTime.add(nanos);
+        metrics.creationHistogram.incrementAndGet(bucket(nanos));
+    }
+
+    @Override
+    public void singletonHit(String beanName) {
+        metricsOf(beanName).singletonHits.increment();
+    }
+
+    @Override
+    public void singletonMiss(String beanName) {
+        metricsOf(beanName).singletonMisses.increment();
+    }
+
+    @Override
+    public void lazyProxyMaterialized(String beanName) {
+        metricsOf(beanName).proxyMaterializations.increment();
+    }
+
+    /**
+     * @return The number of instances of the bean that were created.
+     */
+    public long getCreations(String beanName) {
+        BeanMetrics metrics = beans.get(beanName);
+
+        return metrics == null ? 0 : metrics.creations.sum();
+    }
+
+    /**
+     * @param unit The unit of the returned time.
+     * @return The time it took to create all instances of the bean.
+     */
+    public long getTotalCreationTime(String beanName, TimeUnit unit) {
+        BeanMetrics metrics = beans.get(beanName);
+
+        return metrics == null ? 0 : unit.convert(metrics.creationTime.sum(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Estimates a percentile of the creation times of a bean from its histogram.
+     * 
+     * @param percentile The percentile, from 0 to 100.
+     * @param unit The unit of the returned time.
+     * @return An upper bound of the creation time at the percentile, at most twice the exact
+     * time, or 0 if no instance of the bean was created.
+     */
+    public long getCreationTimePercentile(String beanName, double percentile, TimeUnit unit) {
+        BeanMetrics metrics = beans.get(beanName);
+
+        return metrics == null ? 0 : unit.convert(metrics.percentile(percentile),
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return How often the singleton was fetched after it was created.
+     */
+    public long getSingletonHits(String beanName) {
+        BeanMetrics metrics = beans.get(beanName);
+
+        return metrics == null ? 0 : metrics.singletonHits.sum();
+    }
+
+    /**
+     * @return How often the singleton was fetched before it existed.
+     */
+    public long getSingletonMisses(String beanName) {
+        BeanMetrics metrics = beans.get(beanName);
+
+        return metrics == null ? 0 : metrics.singletonMisses.sum();
+    }
+
+    /**
+     * @return How many lazy proxies of the bean fetched it.
+     */
+    public long getProxyMaterializations(String beanName) {
+        BeanMetrics metrics = beans.get(beanName);
+
+        return metrics == null ? 0 : metrics.proxyMaterializations.sum();
+    }
+
+    /**
+     * @return The time the last parse of each bean configuration file took, in nanoseconds,
+     * by location.
+     */
+    public Map<String, Long> getParseTimes() {
+        return new TreeMap<String, Long>(parseTimes);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Bean metrics");
+
+        for (Entry<String, Long> parseTime : getParseTimes().entrySet()) {
+            report.append("\n  parsed ").append(parseTime.getKey()).append(" in ")
+                    .append(format(parseTime.getValue()));
+        }
+
+        for (Entry<String, BeanMetrics> bean : new TreeMap<String, BeanMetrics>(beans)
+                .entrySet()) {
+            BeanMetrics metrics = bean.getValue();
+            long creations = metrics.creations.sum();
+
+            report.append("\n  ").append(bean.getKey()).append(": created ").append(creations);
+
+            if (creations > 0) {
+                report.append(" (mean ").append(format(metrics.creationTime.sum() / creations))
+                        .append(", p50 <= ").append(format(metrics.percentile(50)))
+                        .append(", p99 <= ").append(format(metrics.percentile(99)))
+                        .append(")");
+            }
+
+            report.append(", singleton hits ").append(metrics.singletonHits.sum())
+                    .append(", misses ").append(metrics.singletonMisses.sum())
+                    .append(", proxies resolved ").append(metrics.proxyMaterializations.sum());
+        }
+
+        return report.toString();
+    }
+
+    private BeanMetrics metricsOf(String beanName) {
+        BeanMetrics metrics = beans.get(beanName);
+
+        if (metrics == null) {
+            BeanMetrics newMetrics = new BeanMetrics();
+            metrics = beans.putIfAbsent(beanName, newMetrics);
+
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * @return The bucket of a time: bucket n holds the times below 2^n nanoseconds that are
+     * not in a lower bucket.
+     */
+    private static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    private static final class BeanMetrics {
+
+        final LongAdder creations = new LongAdder();
+        final LongAdder creationTime = new LongAdder();
+        final AtomicLongArray creationHistogram = new AtomicLongArray(BUCKETS);
+        final LongAdder singletonHits = new LongAdder();
+        final LongAdder singletonMisses = new LongAdder();
+        final LongAdder proxyMaterializations = new LongAdder();
+
+        /**
+         * @return The upper bound of the bucket the percentile falls into, in nanoseconds.
+         */
+        long percentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = creationHistogram.get(i);
+                total += counts[i];
+            }
+
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+
+                if (seen >= rank) {
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+
+            return Long.MAX_VALUE;
+        }
+    }
+}
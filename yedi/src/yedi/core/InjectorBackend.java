@@ -0,0 +1,54 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * InjectorBackend selects how creation plans invoke constructors, setters and fields. It is set
+ * globally through the injector-backend entry of the Yedi configuration file.
+ * 
+ * @author mnaglic
+ * @see InjectorFactory
+ */
+enum InjectorBackend {
+
+    METHOD_HANDLES("method-handles"),
+    REFLECTION("reflection");
+
+    private String backend;
+
+    private InjectorBackend(String backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * @return The factory that creates injectors for this backend.
+     */
+    InjectorFactory getInjectorFactory() {
+        if (this == METHOD_HANDLES) {
+            return MethodHandleInjectorFactory.getInstance();
+        }
+
+        return ReflectionInjectorFactory.getInstance();
+    }
+
+    @Override
+    public String toString() {
+        return backend;
+    }
+}
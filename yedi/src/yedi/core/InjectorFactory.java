@@ -0,0 +1,60 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * InjectorFactory turns the constructors, setters and fields chosen by the plan compiler into
+ * objects that creation plans call when a bean is created. The members passed in have already
+ * been made accessible.
+ * 
+ * @author mnaglic
+ * @see InjectorBackend
+ */
+interface InjectorFactory {
+
+    Instantiator createInstantiator(Constructor<?> constructor);
+
+    PropertyWriter createSetterWriter(Method setter);
+
+    PropertyWriter createFieldWriter(Field field);
+
+    /**
+     * Creates new bean instances through a single constructor.
+     */
+    interface Instantiator {
+
+        Object newInstance(Object[] arguments) throws InstantiationException,
+                IllegalAccessException, InvocationTargetException;
+    }
+
+    /**
+     * Writes a value into a single property of a bean, either through a setter or directly
+     * into a field.
+     */
+    interface PropertyWriter {
+
+        void write(Object bean, Object value) throws IllegalAccessException,
+                InvocationTargetException;
+    }
+}
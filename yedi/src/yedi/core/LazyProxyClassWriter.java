@@ -0,0 +1,363 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * LazyProxyClassWriter writes the class files of lazy proxies. A generated proxy class keeps a
+ * {@link Supplier} of the proxied bean in a final field and implements every proxied method as:
+ * 
+ * <pre>
+ * return ((ProxiedType) target.get()).method(arguments);
+ * </pre>
+ * 
+ * The methods have no branches, so the classes are written as Java 8 class files without stack
+ * map frames.
+ * 
+ * @author mnaglic
+ */
+final class LazyProxyClassWriter {
+
+    static final String TARGET_FIELD = "$yediTarget";
+
+    private static final int CLASS_FILE_VERSION = 52;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int FLOAD = 0x17;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int IRETURN = 0xac;
+    private static final int LRETURN = 0xad;
+    private static final int FRETURN = 0xae;
+    private static final int DRETURN = 0xaf;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int CHECKCAST = 0xc0;
+
+    private static final String SUPPLIER_DESCRIPTOR = "Ljava/util/function/Supplier;";
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constantIndexes = new HashMap<String, Integer>();
+    private int constantCount = 1;
+
+    private LazyProxyClassWriter() {
+    }
+
+    /**
+     * Writes a proxy class.
+     * 
+     * @param className The binary name of the proxy class.
+     * @param proxiedType The proxied interface or class.
+     * @param methods The methods to delegate to the proxied bean.
+     * @return The class file.
+     */
+    static byte[] write(String className, Class<?> proxiedType, List<Method> methods) {
+        try {
+            return new LazyProxyClassWriter().writeClass(className, proxiedType, methods);
+        } catch (IOException e) {
+            //Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] writeClass(String className, Class<?> proxiedType, List<Method> methods)
+            throws IOException {
+        boolean proxiesInterface = proxiedType.isInterface();
+        String thisName = internalName(className);
+        String proxiedName = internalName(proxiedType.getName());
+        String superName = proxiesInterface ? "java/lang/Object" : proxiedName;
+
+        int thisClass = classConstant(thisName);
+        int superClass = classConstant(superName);
+        int interfaceClass = proxiesInterface ? classConstant(proxiedName) : 0;
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        body.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        body.writeShort(thisClass);
+        body.writeShort(superClass);
+
+        if (proxiesInterface) {
+            body.writeShort(1);
+            body.writeShort(interfaceClass);
+        } else {
+            body.writeShort(0);
+        }
+
+        //The field holding the target supplier
+        body.writeShort(1);
+        body.writeShort(ACC_PRIVATE | ACC_FINAL);
+        body.writeShort(utf8Constant(TARGET_FIELD));
+        body.writeShort(utf8Constant(SUPPLIER_DESCRIPTOR));
+        body.writeShort(0);
+
+        int targetField = memberConstant(CONSTANT_FIELDREF, thisName, TARGET_FIELD,
+                SUPPLIER_DESCRIPTOR);
+        int supplierGet = memberConstant(CONSTANT_INTERFACE_METHODREF,
+                "java/util/function/Supplier", "get", "()Ljava/lang/Object;");
+        int proxiedClass = classConstant(proxiedName);
+
+        body.writeShort(methods.size() + 1);
+        writeConstructor(body, superName, targetField);
+
+        for (Method method : methods) {
+            writeDelegate(body, method, proxiedType, proxiedClass, targetField, supplierGet);
+        }
+
+        //No class attributes
+        body.writeShort(0);
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream classFile = new DataOutputStream(classBytes);
+
+        classFile.writeInt(0xCAFEBABE);
+        classFile.writeShort(0);
+        classFile.writeShort(CLASS_FILE_VERSION);
+        classFile.writeShort(constantCount);
+        constantPool.flush();
+        constantPoolBytes.writeTo(classFile);
+        body.flush();
+        bodyBytes.writeTo(classFile);
+        classFile.flush();
+
+        return classBytes.toByteArray();
+    }
+
+    private void writeConstructor(DataOutputStream out, String superName, int targetField)
+            throws IOException {
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+
+        codeBytes.write(ALOAD_0);
+        codeBytes.write(INVOKESPECIAL);
+        writeShort(codeBytes, memberConstant(CONSTANT_METHODREF, superName, "<init>", "()V"));
+        codeBytes.write(ALOAD_0);
+        codeBytes.write(ALOAD_1);
+        codeBytes.write(PUTFIELD);
+        writeShort(codeBytes, targetField);
+        codeBytes.write(RETURN);
+
+        writeMethod(out, "<init>", "(" + SUPPLIER_DESCRIPTOR + ")V", 2, 2,
+                codeBytes.toByteArray());
+    }
+
+    private void writeDelegate(DataOutputStream out, Method method, Class<?> proxiedType,
+            int proxiedClass, int targetField, int supplierGet) throws IOException {
+        String proxiedName = internalName(proxiedType.getName());
+        String descriptor = MethodType.methodType(method.getReturnType(),
+                method.getParameterTypes()).toMethodDescriptorString();
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+
+        //((ProxiedType) this.target.get())
+        codeBytes.write(ALOAD_0);
+        codeBytes.write(GETFIELD);
+        writeShort(codeBytes, targetField);
+        codeBytes.write(INVOKEINTERFACE);
+        writeShort(codeBytes, supplierGet);
+        codeBytes.write(1);
+        codeBytes.write(0);
+        codeBytes.write(CHECKCAST);
+        writeShort(codeBytes, proxiedClass);
+
+        //Pass the arguments on
+        int slot = 1;
+
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            codeBytes.write(loadInstruction(parameterType));
+            codeBytes.write(slot);
+            slot += slotSize(parameterType);
+        }
+
+        //Object methods are called virtually, which also works on interface types
+        if (method.getDeclaringClass() == Object.class) {
+            codeBytes.write(INVOKEVIRTUAL);
+            writeShort(codeBytes, memberConstant(CONSTANT_METHODREF, "java/lang/Object",
+                    method.getName(), descriptor));
+        } else if (proxiedType.isInterface()) {
+            codeBytes.write(INVOKEINTERFACE);
+            writeShort(codeBytes, memberConstant(CONSTANT_INTERFACE_METHODREF, proxiedName,
+                    method.getName(), descriptor));
+            codeBytes.write(slot);
+            codeBytes.write(0);
+        } else {
+            codeBytes.write(INVOKEVIRTUAL);
+            writeShort(codeBytes, memberConstant(CONSTANT_METHODREF, proxiedName,
+                    method.getName(), descriptor));
+        }
+
+        codeBytes.write(returnInstruction(method.getReturnType()));
+
+        int maxStack = Math.max(slot, slotSize(method.getReturnType()));
+        writeMethod(out, method.getName(), descriptor, maxStack, slot, codeBytes.toByteArray());
+    }
+
+    private void writeMethod(DataOutputStream out, String name, String descriptor, int maxStack,
+            int maxLocals, byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(utf8Constant(name));
+        out.writeShort(utf8Constant(descriptor));
+        out.writeShort(1);
+
+        out.writeShort(utf8Constant("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        //No exception table and no code attributes
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private int utf8Constant(String value) throws IOException {
+        Integer index = constantIndexes.get("U" + value);
+
+        if (index == null) {
+            constantPool.writeByte(CONSTANT_UTF8);
+            constantPool.writeUTF(value);
+            index = addConstant("U" + value);
+        }
+
+        return index;
+    }
+
+    private int classConstant(String internalName) throws IOException {
+        Integer index = constantIndexes.get("C" + internalName);
+
+        if (index == null) {
+            int name = utf8Constant(internalName);
+            constantPool.writeByte(CONSTANT_CLASS);
+            constantPool.writeShort(name);
+            index = addConstant("C" + internalName);
+        }
+
+        return index;
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor)
+            throws IOException {
+        String key = tag + owner + "." + name + descriptor;
+        Integer index = constantIndexes.get(key);
+
+        if (index == null) {
+            int ownerClass = classConstant(owner);
+            int nameIndex = utf8Constant(name);
+            int descriptorIndex = utf8Constant(descriptor);
+            Integer nameAndType = constantIndexes.get("N" + name + descriptor);
+
+            if (nameAndType == null) {
+                constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+                constantPool.writeShort(nameIndex);
+                constantPool.writeShort(descriptorIndex);
+                nameAndType = addConstant("N" + name + descriptor);
+            }
+
+            constantPool.writeByte(tag);
+            constantPool.writeShort(ownerClass);
+            constantPool.writeShort(nameAndType);
+            index = addConstant(key);
+        }
+
+        return index;
+    }
+
+    private int addConstant(String key) {
+        int index = constantCount++;
+        constantIndexes.put(key, index);
+
+        return index;
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static String internalName(String binaryName) {
+        return binaryName.replace('.', '/');
+    }
+
+    private static int slotSize(Class<?> type) {
+        if (type == void.class) {
+            return 0;
+        }
+
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    private static int loadInstruction(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return ALOAD;
+        } else if (type == long.class) {
+            return LLOAD;
+        } else if (type == float.class) {
+            return FLOAD;
+        } else if (type == double.class) {
+            return DLOAD;
+        }
+
+        return ILOAD;
+    }
+
+    private static int returnInstruction(Class<?> type) {
+        if (type == void.class) {
+            return RETURN;
+        } else if (!type.isPrimitive()) {
+            return ARETURN;
+        } else if (type == long.class) {
+            return LRETURN;
+        } else if (type == float.class) {
+            return FRETURN;
+        } else if (type == double.class) {
+            return DRETURN;
+        }
+
+        return IRETURN;
+    }
+}
@@ -0,0 +1,331 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * LazyProxyFactory creates the proxies of lazily loaded beans. For every proxied type a proxy
+ * class is generated once, in the package of the proxied type, which implements the interface
+ * or extends the class and delegates each method straight to the target of its
+ * {@link LazyTarget}. Once the target is resolved, a call through the proxy is a volatile read,
+ * a cast and a direct call, which the JIT compiler inlines like any other call.
+ * <p>
+ * Interfaces whose package cannot be opened for a generated class, such as the interfaces of
+ * the JDK, are proxied with {@link Proxy} instead. Its handler dispatches through method
+ * handles resolved once per interface method.
+ * <p>
+ * Classes can be proxied if they are not final and have a no-argument constructor that is not
+ * private. The constructor is run once for every proxy. Final methods are not proxied and run
+ * on the proxy itself.
+ * 
+ * @author mnaglic
+ * @see LazyProxyClassWriter
+ */
+final class LazyProxyFactory {
+
+    private static final LazyProxyFactory instance = new LazyProxyFactory();
+
+    private static final String PROXY_CLASS_SUFFIX = "$$YediLazy";
+    private static final MethodType constructorType =
+            MethodType.methodType(Object.class, Supplier.class);
+    private static final MethodType dispatchType =
+            MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final Object[] noArguments = new Object[0];
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private final ConcurrentMap<Class<?>, ProxyConstructor> constructors =
+            new ConcurrentHashMap<Class<?>, ProxyConstructor>();
+    private final ReentrantLock constructorLock = new ReentrantLock();
+
+    private LazyProxyFactory() {
+    }
+
+    static LazyProxyFactory getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a proxy for a lazily loaded bean.
+     * 
+     * @param type The interface or class the proxy should implement or extend.
+     * @param target The holder of the proxied bean.
+     * @return The proxy.
+     */
+    Object createProxy(Class<?> type, LazyTarget target) {
+        ProxyConstructor constructor = constructors.get(type);
+
+        if (constructor == null) {
+            constructor = createConstructor(type, target.getBeanName());
+        }
+
+        return constructor.newProxy(target);
+    }
+
+    /*
+     * Proxy classes are generated under a lock, so a class is never defined twice. The lock is
+     * not a monitor, so a virtual thread that waits for it does not pin its carrier thread.
+     */
+    private ProxyConstructor createConstructor(Class<?> type, String beanName) {
+        constructorLock.lock();
+
+        try {
+            ProxyConstructor constructor = constructors.get(type);
+
+            if (constructor == null) {
+                constructor = newConstructor(type, beanName);
+                constructors.put(type, constructor);
+            }
+
+            return constructor;
+        } finally {
+            constructorLock.unlock();
+        }
+    }
+
+    private ProxyConstructor newConstructor(Class<?> type, String beanName) {
+        ProxyConstructor constructor;
+
+        if (type.isPrimitive() || type.isArray()) {
+            throw new BeanLoadingException("Bean " + beanName + " is requested as a lazy bean " +
+                    "of type " + type.getName() + ", which cannot be proxied.");
+        } else if (type.isInterface()) {
+            try {
+                constructor = new GeneratedProxyConstructor(defineProxyClass(type));
+            } catch (IllegalAccessException e) {
+                constructor = new DynamicProxyConstructor(type);
+            } catch (LinkageError e) {
+                constructor = new DynamicProxyConstructor(type);
+            }
+        } else {
+            if (Modifier.isFinal(type.getModifiers())) {
+                throw new BeanLoadingException("Bean " + beanName + " is requested as a lazy " +
+                        "bean of type " + type.getName() + ", which is final and cannot be " +
+                        "proxied.");
+            }
+
+            try {
+                Constructor<?> superConstructor = type.getDeclaredConstructor();
+
+                if (Modifier.isPrivate(superConstructor.getModifiers())) {
+                    throw new NoSuchMethodException();
+                }
+            } catch (NoSuchMethodException e) {
+                throw new BeanLoadingException("Bean " + beanName + " is requested as a lazy " +
+                        "bean of type " + type.getName() + ", which cannot be proxied " +
+                        "without a no-argument constructor.", e);
+            }
+
+            try {
+                constructor = new GeneratedProxyConstructor(defineProxyClass(type));
+            } catch (IllegalAccessException e) {
+                throw new BeanLoadingException("Could not create a proxy class for lazy beans " +
+                        "of type " + type.getName(), e);
+            } catch (LinkageError e) {
+                throw new BeanLoadingException("Could not create a proxy class for lazy beans " +
+                        "of type " + type.getName(), e);
+            }
+        }
+
+        return constructor;
+    }
+
+    private MethodHandle defineProxyClass(Class<?> type) throws IllegalAccessException {
+        MethodHandles.Lookup typeLookup = MethodHandles.privateLookupIn(type, lookup);
+        byte[] classFile = LazyProxyClassWriter.write(type.getName() + PROXY_CLASS_SUFFIX, type,
+                proxiedMethods(type));
+        Class<?> proxyClass = typeLookup.defineClass(classFile);
+
+        try {
+            return typeLookup.findConstructor(proxyClass,
+                    MethodType.methodType(void.class, Supplier.class)).asType(constructorType);
+        } catch (NoSuchMethodException e) {
+            //The generated class always has this constructor
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The methods a proxy of the given type overrides, one per signature.
+     */
+    private static List<Method> proxiedMethods(Class<?> type) {
+        Map<String, Method> methods = new LinkedHashMap<String, Method>();
+        Set<String> excluded = new HashSet<String>();
+
+        if (type.isInterface()) {
+            for (String name : new String[] {"equals", "hashCode", "toString"}) {
+                for (Method method : Object.class.getMethods()) {
+                    if (method.getName().equals(name)) {
+                        methods.put(signature(method), method);
+                    }
+                }
+            }
+        } else {
+            for (Class<?> declaringClass = type; declaringClass != null;
+                    declaringClass = declaringClass.getSuperclass()) {
+                for (Method method : declaringClass.getDeclaredMethods()) {
+                    String signature = signature(method);
+                    int modifiers = method.getModifiers();
+
+                    if (methods.containsKey(signature) || excluded.contains(signature) ||
+                            Modifier.isStatic(modifiers) || Modifier.isPrivate(modifiers)) {
+                        continue;
+                    }
+
+                    //Final methods cannot be overridden, and protected or package-private
+                    //methods can only be called on the target from the same package
+                    if (Modifier.isFinal(modifiers) || !Modifier.isPublic(modifiers) &&
+                            !samePackage(declaringClass, type)) {
+                        excluded.add(signature);
+                    } else {
+                        methods.put(signature, method);
+                    }
+                }
+            }
+        }
+
+        //Public methods inherited from interfaces
+        for (Method method : type.getMethods()) {
+            String signature = signature(method);
+
+            if (!Modifier.isStatic(method.getModifiers()) && !methods.containsKey(signature) &&
+                    !excluded.contains(signature)) {
+                methods.put(signature, method);
+            }
+        }
+
+        return new ArrayList<Method>(methods.values());
+    }
+
+    private static String signature(Method method) {
+        return method.getName() + MethodType.methodType(method.getReturnType(),
+                method.getParameterTypes()).toMethodDescriptorString();
+    }
+
+    private static boolean samePackage(Class<?> first, Class<?> second) {
+        return first.getClassLoader() == second.getClassLoader() &&
+                packageName(first).equals(packageName(second));
+    }
+
+    private static String packageName(Class<?> type) {
+        String name = type.getName();
+        int lastDot = name.lastIndexOf('.');
+
+        return lastDot == -1 ? "" : name.substring(0, lastDot);
+    }
+
+    private static abstract class ProxyConstructor {
+
+        abstract Object newProxy(LazyTarget target);
+    }
+
+    private static final class GeneratedProxyConstructor extends ProxyConstructor {
+
+        private final MethodHandle constructor;
+
+        GeneratedProxyConstructor(MethodHandle constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        Object newProxy(LazyTarget target) {
+            try {
+                return (Object) constructor.invokeExact((Supplier) target);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new BeanLoadingException("Could not create a proxy for lazy bean " +
+                        target.getBeanName(), e);
+            }
+        }
+    }
+
+    /**
+     * Proxies interfaces with {@link Proxy}. The method handles for the interface methods are
+     * resolved when the constructor is created, so a call only looks its handle up.
+     */
+    private final class DynamicProxyConstructor extends ProxyConstructor {
+
+        private final Class<?> type;
+        private final Map<Method, MethodHandle> dispatch = new HashMap<Method, MethodHandle>();
+
+        DynamicProxyConstructor(Class<?> type) {
+            this.type = type;
+
+            for (Method method : proxiedMethods(type)) {
+                try {
+                    dispatch.put(method, lookup.unreflect(method)
+                            .asSpreader(Object[].class, method.getParameterTypes().length)
+                            .asType(dispatchType));
+                } catch (IllegalAccessException e) {
+                    //Called through reflection instead
+                }
+            }
+        }
+
+        @Override
+        Object newProxy(final LazyTarget target) {
+            InvocationHandler handler = new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+                    MethodHandle handle = dispatch.get(method);
+
+                    if (handle != null) {
+                        Object[] arguments = args == null ? noArguments : args;
+
+                        return (Object) handle.invokeExact(target.get(), arguments);
+                    }
+
+                    try {
+                        return method.invoke(target.get(), args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * LazyTarget is the holder behind a lazy proxy. The proxied bean is fetched from the container
+ * the first time the proxy is used and published through a volatile field, so every later call
+ * through the proxy costs a single volatile read. If the proxy was injected into a field, the
+ * field is set to the real bean at the same time, so the bean that owns the field stops going
+ * through the proxy at all.
+ * 
+ * @author mnaglic
+ * @see LazyProxyFactory
+ */
+final class LazyTarget implements Supplier<Object> {
+
+    private final BeanContainer container;
+    private final String beanName;
+    private final Field field;
+    private final Object fieldOwner;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Object target;
+
+    /**
+     * @param container The container to fetch the bean from.
+     * @param beanName The name of the proxied bean.
+     * @param field The field the proxy is injected into, or null.
+     * @param fieldOwner The bean owning the field, or null.
+     */
+    LazyTarget(BeanContainer container, String beanName, Field field, Object fieldOwner) {
+        this.container = container;
+        this.beanName = beanName;
+        this.field = field;
+        this.fieldOwner = fieldOwner;
+    }
+
+    String getBeanName() {
+        return beanName;
+    }
+
+    @Override
+    public Object get() {
+        Object resolvedTarget = target;
+
+        return resolvedTarget != null ? resolvedTarget : resolve();
+    }
+
+    private Object resolve() {
+        lock.lock();
+
+        try {
+            if (target == null) {
+                FlightRecorderEvents.LazyProxyMaterialization event =
+                        FlightRecorderEvents.beginMaterialization();
+                Object bean = container.getBean(beanName);
+
+                if (field != null) {
+                    try {
+                        field.set(fieldOwner, bean);
+                    } catch (IllegalAccessException e) {
+                        throw new BeanLoadingException("Could not inject lazy bean " + beanName +
+                                " into field " + field.getName(), e);
+                    }
+                }
+
+                target = bean;
+
+                FlightRecorderEvents.endMaterialization(event, beanName,
+                        field == null ? null : field.getName());
+
+                BeanMetricsListener listener = container.getMetricsListener();
+
+                if (listener != null) {
+                    listener.lazyProxyMaterialized(beanName);
+                }
+            }
+
+            return target;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
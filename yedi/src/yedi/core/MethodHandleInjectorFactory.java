@@ -0,0 +1,251 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * MethodHandleInjectorFactory creates injectors backed by method handles. Each constructor,
+ * setter and field is unreflected once and adapted to an erased (Object[])Object or
+ * (Object, Object)void shape, so creation plans call it through invokeExact without boxing an
+ * argument array for every setter and without the access checks of the reflection API.
+ * <p>
+ * Every injector is a hidden class of its own, defined from the class file of
+ * {@link ConstantHandleInstantiator} or {@link ConstantHandleWriter} with the handle as class
+ * data. The handle is a static final constant of that class, so the JIT compiler inlines the
+ * member into the creation plan as if it were called directly. A handle held in an instance
+ * field would be invoked as an unknown handle on every call.
+ * <p>
+ * The injectors are cached per member, in a {@link ClassValue} of the class declaring it, so
+ * every bean of the same type shares them and the cache does not keep bean classes or their
+ * class loaders alive. Members that cannot be unreflected fall back to the reflection backend.
+ * 
+ * @author mnaglic
+ * @see ReflectionInjectorFactory
+ */
+final class MethodHandleInjectorFactory implements InjectorFactory {
+
+    private static final MethodHandleInjectorFactory instance =
+            new MethodHandleInjectorFactory();
+
+    private static final MethodType instantiatorType =
+            MethodType.methodType(Object.class, Object[].class);
+    private static final MethodType writerType =
+            MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private final byte[] instantiatorTemplate = readClassFile(ConstantHandleInstantiator.class);
+    private final byte[] writerTemplate = readClassFile(ConstantHandleWriter.class);
+    private final ClassValue<ConcurrentMap<Member, Object>> injectors =
+            new ClassValue<ConcurrentMap<Member, Object>>() {
+
+        @Override
+        protected ConcurrentMap<Member, Object> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<Member, Object>();
+        }
+    };
+
+    private MethodHandleInjectorFactory() {
+    }
+
+    static MethodHandleInjectorFactory getInstance() {
+        return instance;
+    }
+
+    @Override
+    public Instantiator createInstantiator(Constructor<?> constructor) {
+        ConcurrentMap<Member, Object> classInjectors =
+                injectors.get(constructor.getDeclaringClass());
+        Instantiator instantiator = (Instantiator) classInjectors.get(constructor);
+
+        if (instantiator == null) {
+            try {
+                MethodHandle handle = lookup.unreflectConstructor(constructor)
+                        .asSpreader(Object[].class, constructor.getParameterTypes().length)
+                        .asType(instantiatorType);
+                Object constantInstantiator = defineInjector(instantiatorTemplate, handle);
+                instantiator = constantInstantiator != null ?
+                        (Instantiator) constantInstantiator : new HandleInstantiator(handle);
+            } catch (IllegalAccessException e) {
+                instantiator = ReflectionInjectorFactory.getInstance()
+                        .createInstantiator(constructor);
+            }
+
+            classInjectors.putIfAbsent(constructor, instantiator);
+        }
+
+        return instantiator;
+    }
+
+    @Override
+    public PropertyWriter createSetterWriter(Method setter) {
+        ConcurrentMap<Member, Object> classInjectors = injectors.get(setter.getDeclaringClass());
+        PropertyWriter writer = (PropertyWriter) classInjectors.get(setter);
+
+        if (writer == null) {
+            try {
+                writer = createWriter(lookup.unreflect(setter).asType(writerType));
+            } catch (IllegalAccessException e) {
+                writer = ReflectionInjectorFactory.getInstance().createSetterWriter(setter);
+            }
+
+            classInjectors.putIfAbsent(setter, writer);
+        }
+
+        return writer;
+    }
+
+    @Override
+    public PropertyWriter createFieldWriter(Field field) {
+        ConcurrentMap<Member, Object> classInjectors = injectors.get(field.getDeclaringClass());
+        PropertyWriter writer = (PropertyWriter) classInjectors.get(field);
+
+        if (writer == null) {
+            try {
+                writer = createWriter(lookup.unreflectSetter(field).asType(writerType));
+            } catch (IllegalAccessException e) {
+                writer = ReflectionInjectorFactory.getInstance().createFieldWriter(field);
+            }
+
+            classInjectors.putIfAbsent(field, writer);
+        }
+
+        return writer;
+    }
+
+    private PropertyWriter createWriter(MethodHandle handle) {
+        Object constantWriter = defineInjector(writerTemplate, handle);
+
+        return constantWriter != null ? (PropertyWriter) constantWriter : new HandleWriter(handle);
+    }
+
+    /**
+     * Defines a hidden class from a template, with the handle as its class data, and creates
+     * its only instance.
+     * 
+     * @return The injector, or null if the class could not be defined.
+     */
+    private Object defineInjector(byte[] template, MethodHandle handle) {
+        if (template == null) {
+            return null;
+        }
+
+        try {
+            //Not strong, so the class is unloaded along with the last plan that uses it
+            Class<?> injectorClass = lookup.defineHiddenClassWithClassData(template, handle,
+                    true).lookupClass();
+
+            return injectorClass.getDeclaredConstructor().newInstance();
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The class file of a class of this package, or null if it cannot be read, for
+     * example in an image that does not keep class files.
+     */
+    private static byte[] readClassFile(Class<?> type) {
+        InputStream in = type.getResourceAsStream(type.getSimpleName() + ".class");
+
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Calls a handle held in a field, used where hidden classes cannot be defined.
+     */
+    private static final class HandleInstantiator implements Instantiator {
+
+        private final MethodHandle handle;
+
+        HandleInstantiator(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Object newInstance(Object[] arguments) throws InvocationTargetException {
+            try {
+                return (Object) handle.invokeExact(arguments);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    /**
+     * Calls a handle held in a field, used where hidden classes cannot be defined.
+     */
+    private static final class HandleWriter implements PropertyWriter {
+
+        private final MethodHandle handle;
+
+        HandleWriter(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public void write(Object bean, Object value) throws InvocationTargetException {
+            try {
+                handle.invokeExact(bean, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * OrderedShutdown destroys the singletons and idle pooled instances of a container when it
+ * closes. It is the reverse of the {@link EagerStartup}: a bean is destroyed only after every
+ * bean that depends on it, and independent beans are destroyed in parallel on a bounded number
+ * of worker threads. A worker that finishes a bean goes on with the next bean that became
+ * ready, so a chain of dependent beans is destroyed on a single thread without handing each
+ * bean over.
+ * <p>
+ * Every destroy callback gets a fixed time to finish. The thread running the shutdown only
+ * wakes up to check the deadlines. A callback that takes longer is interrupted and its worker
+ * is left behind, and the beans it depends on are destroyed without waiting for it any longer,
+ * so a single stuck bean cannot hold up the whole shutdown. Beans without a destroy callback
+ * are skipped right away.
+ * 
+ * @author mnaglic
+ * @see ShutdownReport
+ */
+final class OrderedShutdown {
+
+    private final int threads;
+    private final long timeout;
+    private final Map<String, Instance> instances = new LinkedHashMap<String, Instance>();
+
+    //The state of a running shutdown, guarded by the lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition finished = lock.newCondition();
+    private final Queue<Instance> ready = new ArrayDeque<Instance>();
+    private final List<Worker> workers = new ArrayList<Worker>();
+    private final Map<String, Long> destroyTimes = new LinkedHashMap<String, Long>();
+    private final List<String> timedOutBeans = new ArrayList<String>();
+    private final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+    private int unfinished;
+    private int maxThreads;
+    private ExecutorService executor;
+
+    /**
+     * @param threads The maximum number of destroy callbacks running at the same time.
+     * @param timeout The nanoseconds each destroy callback gets to finish.
+     */
+    OrderedShutdown(int threads, long timeout) {
+        this.threads = threads;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Adds an instance to destroy.
+     * 
+     * @param name The name of the instance in the report, unique within the shutdown.
+     * @param plan The plan the instance was created from.
+     * @param bean The instance.
+     * @param dependencies The names of the instances it depends on, which are destroyed after
+     * it. Names that are never added are ignored.
+     */
+    void add(String name, BeanPlan plan, Object bean, Collection<String> dependencies) {
+        instances.put(name, new Instance(name, plan, bean, dependencies));
+    }
+
+    /**
+     * Destroys all added instances. Failing destroy callbacks do not stop the shutdown, they are
+     * listed in the report. A shutdown can only be run once.
+     * 
+     * @return A report of the shutdown.
+     */
+    ShutdownReport run() {
+        boolean callbacks = false;
+
+        for (Instance instance : instances.values()) {
+            callbacks |= instance.plan.hasDestroyCallback(instance.bean);
+
+            for (String dependency : instance.dependencies) {
+                Instance dependencyInstance = instances.get(dependency);
+
+                if (dependencyInstance != null && dependencyInstance != instance) {
+                    dependencyInstance.pendingDependents++;
+                    instance.waitingDependencies.add(dependencyInstance);
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+
+        if (!callbacks) {
+            return new ShutdownReport(1, System.nanoTime() - start, destroyTimes, timedOutBeans,
+                    failures);
+        }
+
+        //Instances that were created last are destroyed first
+        List<Instance> reverseOrder = new ArrayList<Instance>(instances.values());
+        Collections.reverse(reverseOrder);
+
+        for (Instance instance : reverseOrder) {
+            if (instance.pendingDependents == 0) {
+                ready.add(instance);
+            }
+        }
+
+        lock.lock();
+
+        try {
+            unfinished = instances.size();
+            startWorkers(0);
+
+            while (unfinished > 0) {
+                long now = System.nanoTime();
+                //A callback started after this point cannot expire before the wake-up
+                long wakeUp = now + timeout;
+                List<Worker> expired = new ArrayList<Worker>();
+
+                for (Worker worker : workers) {
+                    if (worker.instance != null) {
+                        long deadline = worker.start + timeout;
+
+                        if (deadline - now <= 0) {
+                            expired.add(worker);
+                        } else if (deadline - wakeUp < 0) {
+                            wakeUp = deadline;
+                        }
+                    }
+                }
+
+                for (Worker worker : expired) {
+                    expire(worker);
+                }
+
+                if (expired.isEmpty()) {
+                    finished.awaitNanos(wakeUp - now);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BeanLoadingException("Interrupted while destroying beans", e);
+        } finally {
+            lock.unlock();
+
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        return new ShutdownReport(maxThreads, System.nanoTime() - start, destroyTimes,
+                timedOutBeans, failures);
+    }
+
+    /**
+     * Starts workers for the ready instances, up to the thread limit. Called with the lock
+     * held.
+     * 
+     * @param reserved The number of ready instances a running worker is about to take.
+     */
+    private void startWorkers(int reserved) {
+        while (workers.size() < threads && ready.size() > reserved) {
+            if (executor == null) {
+                executor = createExecutor();
+            }
+
+            Worker worker = new Worker(ready.poll());
+            workers.add(worker);
+            worker.future = executor.submit(worker);
+            maxThreads = Math.max(maxThreads, workers.size());
+        }
+    }
+
+    /**
+     * Gives up on the callback of a worker that ran past its deadline. Called with the lock
+     * held.
+     */
+    private void expire(Worker worker) {
+        Instance instance = worker.instance;
+        worker.abandoned = true;
+        worker.future.cancel(true);
+        workers.remove(worker);
+        timedOutBeans.add(instance.name);
+        destroyTimes.put(instance.name, timeout);
+        finish(instance);
+        startWorkers(0);
+    }
+
+    /**
+     * Marks an instance as destroyed, and makes every instance it depends on ready once all of
+     * its dependents are destroyed. Called with the lock held.
+     */
+    private void finish(Instance instance) {
+        for (Instance dependency : instance.waitingDependencies) {
+            if (--dependency.pendingDependents == 0) {
+                ready.add(dependency);
+            }
+        }
+
+        if (--unfinished == 0) {
+            finished.signal();
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        //Workers whose callbacks timed out stay busy, so the pool has to be able to grow
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                        "yedi-shutdown-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Destroys ready instances until there are none left. The lock is only released while a
+     * destroy callback runs.
+     */
+    private final class Worker implements Runnable {
+
+        private Instance next;
+        Future<?> future;
+        Instance instance;
+        long start;
+        boolean abandoned;
+
+        Worker(Instance first) {
+            this.next = first;
+        }
+
+        @Override
+        public void run() {
+            lock.lock();
+
+            try {
+                while (next != null) {
+                    Instance current = next;
+
+                    if (!current.plan.hasDestroyCallback(current.bean)) {
+                        finish(current);
+                    } else {
+                        instance = current;
+                        start = System.nanoTime();
+                        Throwable failure = null;
+                        lock.unlock();
+
+                        try {
+                            current.plan.destroy(current.bean);
+                        } catch (Throwable t) {
+                            failure = t;
+                        } finally {
+                            lock.lock();
+                        }
+
+                        if (abandoned) {
+                            //The shutdown already went on without this worker
+                            return;
+                        }
+
+                        instance = null;
+                        destroyTimes.put(current.name, System.nanoTime() - start);
+
+                        if (failure != null) {
+                            failures.put(current.name, failure);
+                        }
+
+                        finish(current);
+                    }
+
+                    startWorkers(1);
+                    next = ready.poll();
+                }
+
+                workers.remove(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * An instance to destroy.
+     */
+    private static final class Instance {
+
+        final String name;
+        final BeanPlan plan;
+        final Object bean;
+        final Collection<String> dependencies;
+        final List<Instance> waitingDependencies = new ArrayList<Instance>();
+        int pendingDependents;
+
+        Instance(String name, BeanPlan plan, Object bean, Collection<String> dependencies) {
+            this.name = name;
+            this.plan = plan;
+            this.bean = bean;
+            this.dependencies = dependencies;
+        }
+    }
+}
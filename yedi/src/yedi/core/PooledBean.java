@@ -0,0 +1,78 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * PooledBean is a bean borrowed from the pool of a pooled bean. The bean belongs to the borrower
+ * until the handle is closed, which returns the bean to its pool. Handles are meant to be used
+ * with try-with-resources:
+ * 
+ * <pre>
+ * try (PooledBean&lt;Parser&gt; parser = container.borrowBean("parser")) {
+ *     parser.get().parse(input);
+ * }
+ * </pre>
+ * 
+ * Handles are reused by the pool, so neither the handle nor the bean may be used after the
+ * handle is closed.
+ * 
+ * @author mnaglic
+ * @see BeanContainer#borrowBean(String)
+ *
+ * @param <T> The type of the bean.
+ */
+public final class PooledBean<T> implements AutoCloseable {
+
+    private final BeanPool pool;
+    private final T bean;
+
+    /**
+     * Whether the bean is borrowed. Only the borrower changes it, and handing the handle over
+     * through the pool makes the change visible to the next borrower.
+     */
+    boolean borrowed;
+
+    /**
+     * When the bean was last returned, in nanoseconds of System.nanoTime().
+     */
+    long returnTime;
+
+    PooledBean(BeanPool pool, T bean) {
+        this.pool = pool;
+        this.bean = bean;
+    }
+
+    /**
+     * @return The borrowed bean.
+     */
+    public T get() {
+        return bean;
+    }
+
+    /**
+     * Returns the bean to its pool. Closing a handle a second time has no effect.
+     */
+    @Override
+    public void close() {
+        if (borrowed) {
+            borrowed = false;
+            pool.giveBack(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * ReflectionInjectorFactory creates injectors that call Constructor.newInstance, Method.invoke
+ * and Field.set. It is the fallback for members the method handle backend cannot access.
+ * 
+ * @author mnaglic
+ * @see MethodHandleInjectorFactory
+ */
+final class ReflectionInjectorFactory implements InjectorFactory {
+
+    private static final ReflectionInjectorFactory instance = new ReflectionInjectorFactory();
+
+    private ReflectionInjectorFactory() {
+    }
+
+    static ReflectionInjectorFactory getInstance() {
+        return instance;
+    }
+
+    @Override
+    public Instantiator createInstantiator(final Constructor<?> constructor) {
+        return new Instantiator() {
+
+            @Override
+            public Object newInstance(Object[] arguments) throws InstantiationException,
+                    IllegalAccessException, InvocationTargetException {
+                return constructor.newInstance(arguments);
+            }
+        };
+    }
+
+    @Override
+    public PropertyWriter createSetterWriter(final Method setter) {
+        return new PropertyWriter() {
+
+            @Override
+            public void write(Object bean, Object value) throws IllegalAccessException,
+                    InvocationTargetException {
+                setter.invoke(bean, value);
+            }
+        };
+    }
+
+    @Override
+    public PropertyWriter createFieldWriter(final Field field) {
+        return new PropertyWriter() {
+
+            @Override
+            public void write(Object bean, Object value) throws IllegalAccessException {
+                field.set(bean, value);
+            }
+        };
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import yedi.core.InjectorFactory.Instantiator;
+import yedi.core.InjectorFactory.PropertyWriter;
+
+/**
+ * ReflectiveBeanPlan is the compiled, immutable form of a {@link BeanDescriptor}. It holds the
+ * resolved bean class, the constructor that was chosen together with its arguments, and the setter or
+ * field that each property is injected through. All reflective lookups are done once, when the
+ * plan is compiled, so creating a bean only executes the plan. Constructors, setters and fields
+ * are invoked through injectors created by the configured {@link InjectorBackend}. The init
+ * method of the bean, if it has one, is called once all properties are injected.
+ * 
+ * @author mnaglic
+ * @see BeanPlanCompiler
+ */
+final class ReflectiveBeanPlan extends BeanPlan {
+
+    private final Constructor<?> constructor;
+    private final Instantiator instantiator;
+    private final Object[] constructorArguments;
+    private final boolean constructorReferences;
+    private final PropertyInjection[] propertyInjections;
+    private final Method initMethod;
+
+    ReflectiveBeanPlan(String beanName, String scope, Class<?> beanClass, int poolSize,
+            long idleTimeout, Constructor<?> constructor, Instantiator instantiator,
+            Object[] constructorArguments, PropertyInjection[] propertyInjections,
+            Method initMethod, Method destroyMethod) {
+        super(beanName, scope, beanClass, poolSize, idleTimeout, destroyMethod);
+        this.constructor = constructor;
+        this.instantiator = instantiator;
+        this.constructorArguments = constructorArguments;
+        this.propertyInjections = propertyInjections;
+        this.initMethod = initMethod;
+
+        boolean references = false;
+
+        for (Object argument : constructorArguments) {
+            if (argument instanceof BeanReference ||
+                    argument instanceof BeanCollectionReference) {
+                references = true;
+                break;
+            }
+        }
+
+        this.constructorReferences = references;
+    }
+
+    Constructor<?> getConstructor() {
+        return constructor;
+    }
+
+    Object[] getConstructorArguments() {
+        return constructorArguments.clone();
+    }
+
+    PropertyInjection[] getPropertyInjections() {
+        return propertyInjections.clone();
+    }
+
+    /**
+     * @return The method called once the properties are injected, or null if there is none.
+     */
+    Method getInitMethod() {
+        return initMethod;
+    }
+
+    @Override
+    Object createBean(BeanContainer container) throws InstantiationException,
+            IllegalAccessException, InvocationTargetException {
+        Object[] arguments = constructorArguments;
+
+        if (constructorReferences) {
+            arguments = arguments.clone();
+
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] instanceof BeanReference) {
+                    arguments[i] = container.getBean(
+                            ((BeanReference) arguments[i]).getBeanName());
+                } else if (arguments[i] instanceof BeanCollectionReference) {
+                    arguments[i] = ((BeanCollectionReference) arguments[i]).resolve(container);
+                }
+            }
+        }
+
+        //Begins after the arguments, whose creations have events of their own
+        FlightRecorderEvents.BeanConstruction construction =
+                FlightRecorderEvents.beginConstruction();
+        Object bean = instantiator.newInstance(arguments);
+        FlightRecorderEvents.endConstruction(construction, getBeanName(), arguments.length);
+
+        FlightRecorderEvents.BeanInjection injectionEvent = FlightRecorderEvents.beginInjection();
+
+        for (PropertyInjection injection : propertyInjections) {
+            injection.inject(bean, container);
+        }
+
+        FlightRecorderEvents.endInjection(injectionEvent, getBeanName(),
+                propertyInjections.length);
+
+        if (initMethod != null) {
+            initMethod.invoke(bean);
+        }
+
+        return bean;
+    }
+
+    /**
+     * A single property of a bean, together with the writer for the setter or the field it is
+     * injected through. The value is either a literal from the configuration, a
+     * {@link BeanReference} or a {@link BeanCollectionReference}. Exactly one of the setter
+     * and the field is set.
+     */
+    static final class PropertyInjection {
+
+        private final String propertyName;
+        private final Object value;
+        private final PropertyWriter writer;
+        private final Method setter;
+        private final Field field;
+
+        PropertyInjection(String propertyName, Object value, PropertyWriter writer,
+                Method setter, Field field) {
+            this.propertyName = propertyName;
+            this.value = value;
+            this.writer = writer;
+            this.setter = setter;
+            this.field = field;
+        }
+
+        String getPropertyName() {
+            return propertyName;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        Method getSetter() {
+            return setter;
+        }
+
+        Field getField() {
+            return field;
+        }
+
+        void inject(Object bean, BeanContainer container) throws IllegalAccessException,
+                InvocationTargetException {
+            Object resolvedValue = value;
+
+            if (value instanceof BeanReference) {
+                BeanReference reference = (BeanReference) value;
+
+                if (reference.isLazy()) {
+                    resolvedValue = container.createProxy(field, bean, reference.getBeanName());
+                } else {
+                    resolvedValue = container.getBean(reference.getBeanName());
+                }
+            } else if (value instanceof BeanCollectionReference) {
+                resolvedValue = ((BeanCollectionReference) value).resolve(container);
+            }
+
+            writer.write(bean, resolvedValue);
+        }
+    }
+}
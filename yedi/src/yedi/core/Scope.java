@@ -0,0 +1,45 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+/**
+ * Scope decides which instance of a bean is returned when the bean is fetched. Beans defined
+ * with the name of a scope registered in the {@link ScopeRegistry} are fetched through it,
+ * which lets a scope keep one instance per thread, per request or per any other unit of work.
+ * <p>
+ * Instances have to be kept per factory rather than per bean name: every bean definition of a
+ * container has exactly one factory, and a bean that is rebuilt by a reload gets a new one.
+ * Implementations are shared by all containers and have to be thread-safe.
+ * 
+ * @author mnaglic
+ * @see ScopeRegistry
+ */
+public interface Scope {
+
+    /**
+     * Returns the instance of a bean in the current scope, creating it with the factory if
+     * there is none yet.
+     * 
+     * @param beanName The name of the bean, for error messages.
+     * @param factory The factory of the bean definition.
+     * @param container The container the bean is fetched from, to pass to the factory.
+     * @return The instance of the bean.
+     */
+    Object get(String beanName, BeanFactory<?> factory, BeanContainer container);
+}
@@ -0,0 +1,87 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import yedi.exceptions.ConfigurationException;
+
+/**
+ * ScopeRegistry holds the scopes that beans can be defined in besides the scopes built into the
+ * container, 'singleton', 'prototype' and 'pooled'. Two scopes are registered from the start:
+ * 'thread', which keeps one instance of a bean per thread, and 'scoped', which keeps one
+ * instance per {@link ScopedContext}.
+ * <p>
+ * Scopes have to be registered before a configuration using them is loaded.
+ * 
+ * @author mnaglic
+ * @see Scope
+ */
+public final class ScopeRegistry {
+
+    private static final ConcurrentMap<String, Scope> scopes =
+            new ConcurrentHashMap<String, Scope>();
+
+    static {
+        scopes.put("thread", new ThreadScope());
+        scopes.put("scoped", new ScopedContext.ContextScope());
+    }
+
+    private ScopeRegistry() {
+    }
+
+    /**
+     * Registers a scope under a name.
+     * 
+     * @param name The name beans refer to the scope by.
+     * @param scope The scope.
+     * @throws ConfigurationException If a scope of that name already exists.
+     */
+    public static void register(String name, Scope scope) {
+        if (scope == null) {
+            throw new ConfigurationException("Scope " + name + " is null");
+        }
+
+        if (BeanScope.forName(name) != null || scopes.putIfAbsent(name, scope) != null) {
+            throw new ConfigurationException("Scope " + name + " is already defined");
+        }
+    }
+
+    /**
+     * @param name The name of a scope.
+     * @return The registered scope of that name, or null if there is none.
+     */
+    static Scope forName(String name) {
+        return name == null ? null : scopes.get(name);
+    }
+
+    /**
+     * @param name The name of a scope.
+     * @throws ConfigurationException If there is neither a built-in nor a registered scope of
+     * that name.
+     */
+    static void checkScope(String name) {
+        if (BeanScope.forName(name) == null && forName(name) == null) {
+            throw new ConfigurationException("Illegal bean scope: " + name +
+                    ". Allowed values are 'singleton', 'prototype', 'pooled' and the names of " +
+                    "registered scopes, such as 'thread' and 'scoped'");
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * ScopedContext holds the instances of beans with the scope 'scoped' for one unit of work, such
+ * as a request. A context is bound for the duration of {@link #run(Runnable)} or
+ * {@link #call(Callable)}, and every scoped bean fetched while it is bound is created once for
+ * it and dropped with it:
+ * 
+ * <pre>
+ * ScopedContext.run(new Runnable() {
+ *     public void run() {
+ *         handle(container.&lt;Request&gt;getBean("request"));
+ *     }
+ * });
+ * </pre>
+ * 
+ * On Java versions with ScopedValue, the context is bound through a ScopedValue, which is cheap
+ * to bind and read on virtual threads and is inherited by subtasks of structured concurrency.
+ * Otherwise it is bound through a ThreadLocal that is reset when the task ends, so nothing
+ * lingers on threads that are reused.
+ * 
+ * @author mnaglic
+ * @see ScopeRegistry
+ */
+public final class ScopedContext {
+
+    private static final ThreadLocal<ScopedContext> threadContext =
+            new ThreadLocal<ScopedContext>();
+    private static final Object unbound = new Object();
+
+    /**
+     * ScopedValue.where(key, value), bound to the key. Null if ScopedValue is unavailable.
+     */
+    private static final MethodHandle where;
+    /**
+     * ScopedValue.Carrier.run(Runnable).
+     */
+    private static final MethodHandle run;
+    /**
+     * ScopedValue.orElse(Object), bound to the key.
+     */
+    private static final MethodHandle orElse;
+
+    static {
+        MethodHandle whereHandle = null;
+        MethodHandle runHandle = null;
+        MethodHandle orElseHandle = null;
+
+        try {
+            Class<?> scopedValueClass = Class.forName("java.lang.ScopedValue");
+            Class<?> carrierClass = Class.forName("java.lang.ScopedValue$Carrier");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Object key = lookup.findStatic(scopedValueClass, "newInstance",
+                    MethodType.methodType(scopedValueClass)).invoke();
+
+            whereHandle = lookup.findStatic(scopedValueClass, "where",
+                    MethodType.methodType(carrierClass, scopedValueClass, Object.class))
+                    .bindTo(key).asType(MethodType.methodType(Object.class, Object.class));
+            runHandle = lookup.findVirtual(carrierClass, "run",
+                    MethodType.methodType(void.class, Runnable.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Runnable.class));
+            orElseHandle = lookup.findVirtual(scopedValueClass, "orElse",
+                    MethodType.methodType(Object.class, Object.class))
+                    .bindTo(key).asType(MethodType.methodType(Object.class, Object.class));
+
+            //Preview versions of ScopedValue fail when they are used, not when they are found
+            Object carrier = whereHandle.invoke(unbound);
+            runHandle.invoke(carrier, new Runnable() {
+
+                @Override
+                public void run() {
+                }
+            });
+        } catch (Throwable t) {
+            whereHandle = null;
+            runHandle = null;
+            orElseHandle = null;
+        }
+
+        where = whereHandle;
+        run = runHandle;
+        orElse = orElseHandle;
+    }
+
+    private final ConcurrentMap<BeanFactory<?>, Object> instances =
+            new ConcurrentHashMap<BeanFactory<?>, Object>();
+
+    private ScopedContext() {
+    }
+
+    /**
+     * Runs a task in a new context.
+     * 
+     * @param task The task.
+     */
+    public static void run(Runnable task) {
+        ScopedContext context = new ScopedContext();
+
+        if (where == null) {
+            ScopedContext previous = threadContext.get();
+            threadContext.set(context);
+
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    threadContext.remove();
+                } else {
+                    threadContext.set(previous);
+                }
+            }
+
+            return;
+        }
+
+        try {
+            run.invokeExact((Object) where.invokeExact((Object) context), task);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            //Neither where nor run throw checked exceptions
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Calls a task in a new context.
+     * 
+     * @param task The task.
+     * @return The result of the task.
+     * @throws Exception The exception thrown by the task.
+     */
+    public static <T> T call(final Callable<T> task) throws Exception {
+        final Object[] result = new Object[1];
+        final Exception[] exception = new Exception[1];
+
+        run(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    result[0] = task.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    exception[0] = e;
+                }
+            }
+        });
+
+        if (exception[0] != null) {
+            throw exception[0];
+        }
+
+        @SuppressWarnings("unchecked")
+        T typedResult = (T) result[0];
+
+        return typedResult;
+    }
+
+    /**
+     * @return The context bound to the current thread, or null if there is none.
+     */
+    static ScopedContext current() {
+        if (orElse == null) {
+            return threadContext.get();
+        }
+
+        try {
+            Object context = (Object) orElse.invokeExact(unbound);
+
+            return context == unbound ? null : (ScopedContext) context;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * The scope 'scoped', which keeps one instance of a bean per bound context.
+     */
+    static final class ContextScope implements Scope {
+
+        @Override
+        public Object get(String beanName, BeanFactory<?> factory, BeanContainer container) {
+            ScopedContext context = current();
+
+            if (context == null) {
+                throw new BeanLoadingException("Could not load bean " + beanName + ": Bean " +
+                        beanName + " is scoped and can only be fetched within ScopedContext.run" +
+                        " or ScopedContext.call");
+            }
+
+            Object instance = context.instances.get(factory);
+
+            if (instance == null) {
+                Object newInstance = factory.create(container);
+                instance = context.instances.putIfAbsent(factory, newInstance);
+
+                if (instance == null) {
+                    instance = newInstance;
+                }
+            }
+
+            return instance;
+        }
+    }
+}
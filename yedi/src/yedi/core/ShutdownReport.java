@@ -0,0 +1,152 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShutdownReport describes how a container was closed: how long it took, how long the destroy
+ * callback of each bean ran, and which callbacks failed or timed out. Callbacks run in parallel
+ * where the dependencies allow it, so the slowest destroyers are the ones worth looking at when
+ * a shutdown runs over its deadline.
+ * <p>
+ * Idle pooled instances are listed under the name of their bean followed by '#' and a number.
+ * 
+ * @author mnaglic
+ * @see BeanContainer#getShutdownReport()
+ */
+public final class ShutdownReport {
+
+    private static final int SLOWEST_BEANS_SHOWN = 5;
+
+    private final int threads;
+    private final long totalTime;
+    private final Map<String, Long> destroyTimes;
+    private final List<String> timedOutBeans;
+    private final Map<String, Throwable> failures;
+
+    ShutdownReport(int threads, long totalTime, Map<String, Long> destroyTimes,
+            List<String> timedOutBeans, Map<String, Throwable> failures) {
+        this.threads = threads;
+        this.totalTime = totalTime;
+        this.destroyTimes = Collections.unmodifiableMap(destroyTimes);
+        this.timedOutBeans = Collections.unmodifiableList(timedOutBeans);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return The largest number of destroy callbacks that ran at the same time.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param unit The unit of the returned time.
+     * @return The wall-clock time of the whole shutdown.
+     */
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(totalTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The time the destroy callback of each bean ran, in nanoseconds, by bean name and
+     * in the order the callbacks finished. Beans without a destroy callback are left out, and
+     * callbacks that timed out are listed with the timeout.
+     */
+    public Map<String, Long> getDestroyTimes() {
+        return destroyTimes;
+    }
+
+    /**
+     * @return The names of the beans whose destroy callbacks did not finish in time.
+     */
+    public List<String> getTimedOutBeans() {
+        return timedOutBeans;
+    }
+
+    /**
+     * @return What the failed destroy callbacks threw, by bean name.
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @param count The maximum number of beans to return.
+     * @return The names of the beans whose destroy callbacks ran longest, slowest first.
+     */
+    public List<String> getSlowestBeans(int count) {
+        List<Entry<String, Long>> entries =
+                new ArrayList<Entry<String, Long>>(destroyTimes.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String, Long>>() {
+
+            @Override
+            public int compare(Entry<String, Long> first, Entry<String, Long> second) {
+                return second.getValue().compareTo(first.getValue());
+            }
+        });
+
+        List<String> slowestBeans = new ArrayList<String>();
+
+        for (Entry<String, Long> entry : entries.subList(0, Math.min(count, entries.size()))) {
+            slowestBeans.add(entry.getKey());
+        }
+
+        return slowestBeans;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("Destroyed ").append(destroyTimes.size()).append(" beans in ")
+                .append(format(totalTime)).append(" on ").append(threads).append(" thread")
+                .append(threads == 1 ? "" : "s");
+
+        if (!destroyTimes.isEmpty()) {
+            report.append("\nSlowest destroy callbacks:");
+
+            for (String beanName : getSlowestBeans(SLOWEST_BEANS_SHOWN)) {
+                report.append("\n  ").append(beanName).append(" ")
+                        .append(format(destroyTimes.get(beanName)));
+            }
+        }
+
+        for (String beanName : timedOutBeans) {
+            report.append("\nTimed out: ").append(beanName);
+        }
+
+        for (Entry<String, Throwable> failure : failures.entrySet()) {
+            report.append("\nFailed: ").append(failure.getKey()).append(" (")
+                    .append(failure.getValue()).append(")");
+        }
+
+        return report.toString();
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+}
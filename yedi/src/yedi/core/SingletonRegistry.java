@@ -0,0 +1,241 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import yedi.exceptions.BeanLoadingException;
+
+/**
+ * SingletonRegistry holds the singleton beans of a container. Reading a singleton that already
+ * exists is a single lock-free map lookup. Creating one is guarded by a lock of its own, so each
+ * singleton is created exactly once while independent singletons can be created in parallel.
+ * <p>
+ * A singleton may need other singletons while it is being created. Circular dependencies are
+ * detected instead of recursing forever or deadlocking: within a thread through the stack of
+ * beans it is creating, and across threads by following which thread is waiting for which bean
+ * before blocking. The registry uses no monitors, so virtual threads are never pinned to their
+ * carrier while waiting for a singleton.
+ * <p>
+ * Singletons are keyed by the plan they are created from. When a configuration is reloaded,
+ * unchanged beans keep their plans and therefore their singletons, while rebuilt beans get new
+ * plans and new singletons.
+ * <p>
+ * The registry remembers the order singletons were created in, so a container without a
+ * dependency graph can still destroy them in reverse order when it closes.
+ * 
+ * @author mnaglic
+ * @see BeanContainer
+ */
+final class SingletonRegistry {
+
+    private final ConcurrentMap<BeanPlan, Object> singletons =
+            new ConcurrentHashMap<BeanPlan, Object>();
+    private final Queue<BeanPlan> creationOrder = new ConcurrentLinkedQueue<BeanPlan>();
+    private final ConcurrentMap<BeanPlan, CreationLock> creationLocks =
+            new ConcurrentHashMap<BeanPlan, CreationLock>();
+    private final ConcurrentMap<Thread, BeanPlan> waitingThreads =
+            new ConcurrentHashMap<Thread, BeanPlan>();
+    private final ThreadLocal<List<String>> beansInCreation = new ThreadLocal<List<String>>() {
+
+        @Override
+        protected List<String> initialValue() {
+            return new ArrayList<String>();
+        }
+    };
+
+    /**
+     * @param plan The plan of a singleton bean.
+     * @return The singleton, or null if it was not created yet.
+     */
+    Object get(BeanPlan plan) {
+        return singletons.get(plan);
+    }
+
+    /**
+     * Returns a singleton, creating it if needed. Concurrent callers asking for the same
+     * singleton wait for the one that creates it.
+     * 
+     * @param plan The plan of the singleton bean.
+     * @param container The container creating the bean.
+     * @return The singleton.
+     */
+    Object getOrCreate(BeanPlan plan, BeanContainer container) {
+        String beanName = plan.getBeanName();
+        Object singleton = singletons.get(plan);
+
+        if (singleton != null) {
+            return singleton;
+        }
+
+        List<String> creationStack = beansInCreation.get();
+
+        if (creationStack.contains(beanName)) {
+            StringBuilder cycle = new StringBuilder();
+
+            for (String name : creationStack.subList(creationStack.indexOf(beanName),
+                    creationStack.size())) {
+                cycle.append(name).append(" -> ");
+            }
+
+            throw new BeanLoadingException("Could not load bean " + beanName +
+                    ": Circular dependency between singleton beans: " + cycle + beanName);
+        }
+
+        CreationLock lock = lockFor(plan);
+        acquire(lock, plan);
+
+        try {
+            singleton = singletons.get(plan);
+
+            if (singleton == null) {
+                creationStack.add(beanName);
+
+                try {
+                    singleton = container.createBean(plan);
+                } finally {
+                    creationStack.remove(creationStack.size() - 1);
+                }
+
+                singletons.put(plan, singleton);
+                creationOrder.add(plan);
+                //Everyone arriving from now on finds the singleton without locking
+                creationLocks.remove(plan, lock);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return singleton;
+    }
+
+    /**
+     * Forgets the singleton created from a plan that is no longer used.
+     * 
+     * @param plan The plan of a singleton bean.
+     * @return The singleton, or null if it was not created.
+     */
+    Object remove(BeanPlan plan) {
+        creationOrder.remove(plan);
+
+        return singletons.remove(plan);
+    }
+
+    /**
+     * @return The existing singletons by their plans, in the order they were created.
+     */
+    Map<BeanPlan, Object> getSingletons() {
+        Map<BeanPlan, Object> existingSingletons = new LinkedHashMap<BeanPlan, Object>();
+
+        for (BeanPlan plan : creationOrder) {
+            Object singleton = singletons.get(plan);
+
+            if (singleton != null) {
+                existingSingletons.put(plan, singleton);
+            }
+        }
+
+        return existingSingletons;
+    }
+
+    /**
+     * Forgets all singletons, once the container that created them is closed.
+     */
+    void clear() {
+        singletons.clear();
+        creationOrder.clear();
+    }
+
+    private CreationLock lockFor(BeanPlan plan) {
+        CreationLock lock = creationLocks.get(plan);
+
+        if (lock == null) {
+            CreationLock newLock = new CreationLock();
+            lock = creationLocks.putIfAbsent(plan, newLock);
+
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+
+        return lock;
+    }
+
+    /**
+     * Acquires the creation lock of a bean. Before blocking, the current thread announces the
+     * bean it waits for and follows the chain of lock owners and the beans they wait for. If the
+     * chain leads back to the current thread, waiting would deadlock, so the circular
+     * dependency is reported instead. Since every thread announces itself before checking, at
+     * least one thread of any cycle sees it.
+     */
+    private void acquire(CreationLock lock, BeanPlan plan) {
+        if (lock.tryLock()) {
+            return;
+        }
+
+        Thread currentThread = Thread.currentThread();
+        waitingThreads.put(currentThread, plan);
+
+        try {
+            Thread owner = lock.owner();
+            BeanPlan awaitedBean = plan;
+
+            while (owner != null) {
+                if (owner == currentThread) {
+                    throw new BeanLoadingException("Could not load bean " + plan.getBeanName() +
+                            ": Circular dependency between singleton beans created by " +
+                            "different threads, involving bean " + awaitedBean.getBeanName());
+                }
+
+                awaitedBean = waitingThreads.get(owner);
+
+                if (awaitedBean == null) {
+                    break;
+                }
+
+                CreationLock awaitedLock = creationLocks.get(awaitedBean);
+                owner = awaitedLock == null ? null : awaitedLock.owner();
+            }
+
+            lock.lock();
+        } finally {
+            waitingThreads.remove(currentThread);
+        }
+    }
+
+    /**
+     * A reentrant lock that exposes its owner for deadlock detection.
+     */
+    private static final class CreationLock extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        Thread owner() {
+            return getOwner();
+        }
+    }
+}
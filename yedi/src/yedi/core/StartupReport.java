@@ -0,0 +1,129 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StartupReport describes the eager startup of a container: how long it took, how long each
+ * singleton took to create, and the critical path, which is the chain of dependent singletons
+ * that took longest to create one after another. No matter how many threads are used, startup
+ * cannot be faster than its critical path, so the beans on it are the ones worth optimizing.
+ * 
+ * @author mnaglic
+ * @see BeanContainer#getStartupReport()
+ */
+public final class StartupReport {
+
+    private final int threads;
+    private final long totalTime;
+    private final Map<String, Long> creationTimes;
+    private final List<String> criticalPath;
+    private final long criticalPathTime;
+
+    StartupReport(int threads, long totalTime, Map<String, Long> creationTimes,
+            List<String> criticalPath, long criticalPathTime) {
+        this.threads = threads;
+        this.totalTime = totalTime;
+        this.creationTimes = Collections.unmodifiableMap(creationTimes);
+        this.criticalPath = Collections.unmodifiableList(criticalPath);
+        this.criticalPathTime = criticalPathTime;
+    }
+
+    /**
+     * @return The number of threads singletons were created on.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param unit The unit of the returned time.
+     * @return The wall-clock time of the whole startup.
+     */
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(totalTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The time each singleton took to create, in nanoseconds, by bean name. The time of
+     * a singleton does not include the singletons it depends on, which exist before it is
+     * created.
+     */
+    public Map<String, Long> getCreationTimes() {
+        return creationTimes;
+    }
+
+    /**
+     * @return The names of the beans on the critical path, dependencies first.
+     */
+    public List<String> getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * @param unit The unit of the returned time.
+     * @return The sum of the creation times of the beans on the critical path.
+     */
+    public long getCriticalPathTime(TimeUnit unit) {
+        return unit.convert(criticalPathTime, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("Created ").append(creationTimes.size()).append(" singletons in ")
+                .append(format(totalTime)).append(" on ").append(threads).append(" thread")
+                .append(threads == 1 ? "" : "s").append("\nCritical path (")
+                .append(format(criticalPathTime)).append("):");
+
+        for (String beanName : criticalPath) {
+            report.append("\n  ").append(beanName).append(" ")
+                    .append(format(creationTimes.get(beanName)));
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * @return The name of the singleton that took longest to create, or null if there were
+     * none.
+     */
+    public String getSlowestBean() {
+        String slowestBean = null;
+        long slowestTime = -1;
+
+        for (Entry<String, Long> creationTime : creationTimes.entrySet()) {
+            if (creationTime.getValue() > slowestTime) {
+                slowestBean = creationTime.getKey();
+                slowestTime = creationTime.getValue();
+            }
+        }
+
+        return slowestBean;
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+}
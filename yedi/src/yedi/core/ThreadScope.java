@@ -0,0 +1,60 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * ThreadScope keeps one instance of a bean per thread. Instances live as long as their thread,
+ * so threads that are reused for unrelated work, such as pooled threads, keep them as well. Use
+ * the 'scoped' scope to bind instances to a unit of work instead.
+ * <p>
+ * Every bean plan has a factory of its own, and threads key their instances weakly by that
+ * factory. Once a reload replaces a plan, or its container is no longer reachable, a thread
+ * drops its instance of the bean the next time it uses this scope, instead of keeping it for
+ * the rest of its life.
+ * 
+ * @author mnaglic
+ * @see ScopeRegistry
+ */
+final class ThreadScope implements Scope {
+
+    private final ThreadLocal<Map<BeanFactory<?>, Object>> instances =
+            new ThreadLocal<Map<BeanFactory<?>, Object>>() {
+
+        @Override
+        protected Map<BeanFactory<?>, Object> initialValue() {
+            return new WeakHashMap<BeanFactory<?>, Object>();
+        }
+    };
+
+    @Override
+    public Object get(String beanName, BeanFactory<?> factory, BeanContainer container) {
+        Map<BeanFactory<?>, Object> threadInstances = instances.get();
+        Object instance = threadInstances.get(factory);
+
+        if (instance == null) {
+            instance = factory.create(container);
+            threadInstances.put(factory, instance);
+        }
+
+        return instance;
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ Copyright 2012 Matej Naglić
+
+    This file is part of Yedi.
+
+    Yedi is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Yedi is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Yedi.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package yedi.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * TypeIndex maps every class and interface to the beans of that type: the beans of the class
+ * itself, of its subclasses and of the classes implementing it. The index is built when a
+ * configuration is loaded. Bean classes are loaded without being initialized, and no bean is
+ * created, so looking beans up by type costs a single map lookup.
+ * <p>
+ * Beans whose class cannot be found are left out of the index. They fail when they are fetched.
+ * <p>
+ * The index of a child container only holds the types of the beans the child defines, and of
+ * the beans of the parent they replace. The bean names of those types are merged with the ones
+ * of the parent index when they are first looked up. All other types are looked up in the
+ * parent index.
+ * 
+ * @author mnaglic
+ * @see BeanContainer#getBeansOfType(Class)
+ */
+final class TypeIndex {
+
+    private final Map<Class<?>, List<String>> beanNamesByType =
+            new HashMap<Class<?>, List<String>>();
+    private final Map<String, Class<?>> typesByName = new HashMap<String, Class<?>>();
+    private final TypeIndex parent;
+    private final Set<String> childBeanNames;
+    private final ConcurrentMap<Class<?>, List<String>> mergedBeanNames;
+
+    /**
+     * @param beanClasses The class of every bean, by bean name, in the order of the
+     * configuration.
+     */
+    private TypeIndex(Map<String, Class<?>> beanClasses) {
+        this(beanClasses, null, Collections.<String>emptySet(),
+                Collections.<Class<?>>emptySet());
+    }
+
+    /**
+     * @param beanClasses The class of every bean the index holds, by bean name, in the order of
+     * the configuration.
+     * @param parent The index of the parent container, or null.
+     * @param childBeanNames The names of all beans of the child container, including the ones
+     * whose class cannot be found.
+     * @param replacedTypes The types of the beans of the parent that the child defines again.
+     */
+    private TypeIndex(Map<String, Class<?>> beanClasses, TypeIndex parent,
+            Set<String> childBeanNames, Set<Class<?>> replacedTypes) {
+        this.parent = parent;
+        this.childBeanNames = childBeanNames;
+        this.mergedBeanNames = parent == null ? null :
+            new ConcurrentHashMap<Class<?>, List<String>>();
+
+        for (Class<?> replacedType : replacedTypes) {
+            typesByName.put(replacedType.getName(), replacedType);
+        }
+
+        Map<Class<?>, Set<Class<?>>> supertypes = new HashMap<Class<?>, Set<Class<?>>>();
+
+        for (Entry<String, Class<?>> beanClass : beanClasses.entrySet()) {
+            Set<Class<?>> types = supertypes.get(beanClass.getValue());
+
+            if (types == null) {
+                types = new LinkedHashSet<Class<?>>();
+                collectTypes(beanClass.getValue(), types);
+                supertypes.put(beanClass.getValue(), types);
+            }
+
+            for (Class<?> type : types) {
+                List<String> beanNames = beanNamesByType.get(type);
+
+                if (beanNames == null) {
+                    beanNames = new ArrayList<String>(1);
+                    beanNamesByType.put(type, beanNames);
+                    typesByName.put(type.getName(), type);
+                }
+
+                beanNames.add(beanClass.getKey());
+            }
+        }
+
+        for (Entry<Class<?>, List<String>> beanNames : beanNamesByType.entrySet()) {
+            beanNames.setValue(Collections.unmodifiableList(beanNames.getValue()));
+        }
+    }
+
+    /**
+     * Builds the index of beans defined in YAML.
+     * 
+     * @param descriptorMap The descriptors by bean name.
+     */
+    static TypeIndex forDescriptors(Map<String, BeanDescriptor> descriptorMap) {
+        Map<String, String> beanTypes = new LinkedHashMap<String, String>();
+
+        for (Entry<String, BeanDescriptor> descriptor : descriptorMap.entrySet()) {
+            beanTypes.put(descriptor.getKey(), descriptor.getValue().getType());
+        }
+
+        return forTypes(beanTypes);
+    }
+
+    /**
+     * Builds the index of beans whose descriptors may not be parsed yet.
+     * 
+     * @param beanTypes The class name of every bean, by bean name.
+     */
+    static TypeIndex forTypes(Map<String, String> beanTypes) {
+        return new TypeIndex(loadClasses(beanTypes));
+    }
+
+    /**
+     * Builds the index of a child container.
+     * 
+     * @param parent The index of the parent container.
+     * @param beanTypes The class name of every bean the child defines, by bean name.
+     * @param replacedTypes The class names of the beans of the parent that the child defines
+     * again.
+     */
+    static TypeIndex forChild(TypeIndex parent, Map<String, String> beanTypes,
+            Collection<String> replacedTypes) {
+        Set<Class<?>> replacedSupertypes = new LinkedHashSet<Class<?>>();
+
+        for (String replacedType : replacedTypes) {
+            collectTypes(loadClass(replacedType), replacedSupertypes);
+        }
+
+        return new TypeIndex(loadClasses(beanTypes), parent,
+                new HashSet<String>(beanTypes.keySet()), replacedSupertypes);
+    }
+
+    /**
+     * Loads the class of every bean, leaving out the beans whose class cannot be found.
+     */
+    private static Map<String, Class<?>> loadClasses(Map<String, String> beanTypes) {
+        Map<String, Class<?>> beanClasses = new LinkedHashMap<String, Class<?>>();
+        Map<String, Class<?>> classesByName = new HashMap<String, Class<?>>();
+
+        for (Entry<String, String> beanType : beanTypes.entrySet()) {
+            String type = beanType.getValue();
+            Class<?> beanClass = classesByName.get(type);
+
+            if (beanClass == null && !classesByName.containsKey(type)) {
+                beanClass = loadClass(type);
+                classesByName.put(type, beanClass);
+            }
+
+            if (beanClass != null) {
+                beanClasses.put(beanType.getKey(), beanClass);
+            }
+        }
+
+        return beanClasses;
+    }
+
+    /**
+     * Builds the index of beans created from plans.
+     * 
+     * @param plans The plans by bean name.
+     */
+    static TypeIndex forPlans(Map<String, BeanPlan> plans) {
+        Map<String, Class<?>> beanClasses = new LinkedHashMap<String, Class<?>>();
+
+        for (Entry<String, BeanPlan> plan : plans.entrySet()) {
+            beanClasses.put(plan.getKey(), plan.getValue().getBeanClass());
+        }
+
+        return new TypeIndex(beanClasses);
+    }
+
+    /**
+     * @param type A class or interface.
+     * @return The names of the beans of that type, in the order of the configuration.
+     */
+    List<String> getBeanNames(Class<?> type) {
+        List<String> beanNames = beanNamesByType.get(type);
+
+        if (parent == null) {
+            return beanNames == null ? Collections.<String>emptyList() : beanNames;
+        } else if (!typesByName.containsKey(type.getName())) {
+            return parent.getBeanNames(type);
+        }
+
+        List<String> merged = mergedBeanNames.get(type);
+
+        if (merged == null) {
+            merged = new ArrayList<String>();
+
+            //Beans of the parent keep their place if the child defines them with the same type
+            for (String beanName : parent.getBeanNames(type)) {
+                if (!childBeanNames.contains(beanName) ||
+                        (beanNames != null && beanNames.contains(beanName))) {
+                    merged.add(beanName);
+                }
+            }
+
+            if (beanNames != null) {
+                for (String beanName : beanNames) {
+                    if (!merged.contains(beanName)) {
+                        merged.add(beanName);
+                    }
+                }
+            }
+
+            merged = Collections.unmodifiableList(merged);
+            mergedBeanNames.putIfAbsent(type, merged);
+        }
+
+        return merged;
+    }
+
+    /**
+     * @param typeName The name of a class or interface.
+     * @return The names of the beans of that type, in the order of the configuration.
+     */
+    List<String> getBeanNames(String typeName) {
+        Class<?> type = typesByName.get(typeName);
+
+        if (type == null) {
+            return parent == null ? Collections.<String>emptyList() :
+                parent.getBeanNames(typeName);
+        }
+
+        return getBeanNames(type);
+    }
+
+    /**
+     * @return The names of the types the index holds beans of. For the index of a child
+     * container, these are the types whose beans differ from the ones of the parent.
+     */
+    Set<String> getTypeNames() {
+        return Collections.unmodifiableSet(typesByName.keySet());
+    }
+
+    /**
+     * @return The class of the given name, loaded without initializing it, or null if it
+     * cannot be found.
+     */
+    static Class<?> loadClass(String className) {
+        FlightRecorderEvents.BeanClassLoad event = FlightRecorderEvents.beginClassLoad();
+        Class<?> loadedClass;
+
+        try {
+            loadedClass = Class.forName(className, false, TypeIndex.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            loadedClass = null;
+        } catch (LinkageError e) {
+            loadedClass = null;
+        }
+
+        FlightRecorderEvents.endClassLoad(event, className, loadedClass, false);
+
+        return loadedClass;
+    }
+
+    private static void collectTypes(Class<?> type, Set<Class<?>> types) {
+        if (type != null && types.add(type)) {
+            collectTypes(type.getSuperclass(), types);
+
+            for (Class<?> implementedInterface : type.getInterfaces()) {
+                collectTypes(implementedInterface, types);
+            }
+        }
+    }
+}